@@ -1,9 +1,12 @@
 package nl.uva.morlb;
 
+import java.io.File;
+
 import nl.uva.morlb.rg.agent.momcts.MOMCTSAgent;
 import nl.uva.morlb.rg.environment.ResourceGatheringEnv;
 import nl.uva.morlb.rg.environment.SdpCollection;
 import nl.uva.morlb.rg.environment.model.Parameters;
+import nl.uva.morlb.util.Metrics;
 
 import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.types.Action;
@@ -20,11 +23,18 @@ public class GlueWrapper {
     /** The maximum amount of steps allowed in each episode **/
     private static final int MAX_STEPS_PER_EPISODE = 1000;
 
+    /** The file that metric snapshots are written to when metrics are enabled **/
+    private static final File METRICS_FILE = new File("metrics.txt");
+
+    /** The time between metric snapshots in milliseconds **/
+    private static final long METRICS_INTERVAL = 10000;
+
     public static void main(final String[] args) {
         // Prepare the environment and agent
         final Parameters parameters = SdpCollection.getLargeProblem();
         ResourceGatheringEnv environment = new ResourceGatheringEnv(parameters);
         final AgentInterface agent = new MOMCTSAgent();
+        Metrics.startDumping(METRICS_FILE, METRICS_INTERVAL);
 
         agent.agent_init(environment.env_init());
 
@@ -45,6 +55,7 @@ public class GlueWrapper {
         }
 
         agent.agent_cleanup();
+        Metrics.stopDumping();
     }
 
 }
@@ -6,6 +6,7 @@ import java.util.Arrays;
 import nl.uva.morlb.rg.environment.model.DiscreteAction;
 import nl.uva.morlb.rg.experiment.model.Solution;
 import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.rg.experiment.model.SolutionSetCodec;
 import nl.uva.morlb.util.Log;
 
 import org.rlcommunity.rlglue.codec.AgentInterface;
@@ -26,6 +27,8 @@ public class RandomAgent implements AgentInterface {
     private boolean mWentUp;
     /** The solution set found in this test */
     private SolutionSet mSolutionSet;
+    /** The encoder answering the requests for the solution set */
+    private final SolutionSetCodec.Encoder mSolutionSetEncoder = new SolutionSetCodec.Encoder();
     /** The return this episode */
     private double[] mReturn;
 
@@ -69,9 +72,7 @@ public class RandomAgent implements AgentInterface {
     @Override
     public Action agent_start(final Observation observation) {
         mReturn = new double[mReturn.length];
-        final Action action = new Action(1, 0);
-        action.setInt(0, getAction());
-        return action;
+        return DiscreteAction.fromOrdinal(getAction()).convertToRLGlueAction();
     }
 
     /**
@@ -89,9 +90,7 @@ public class RandomAgent implements AgentInterface {
         Log.d("AGENT: Got a reward of " + Arrays.toString(reward.doubleArray));
         incrementReturn(reward);
 
-        final Action action = new Action(1, 0);
-        action.setInt(0, getAction());
-        return action;
+        return DiscreteAction.fromOrdinal(getAction()).convertToRLGlueAction();
     }
 
     /**
@@ -135,6 +134,9 @@ public class RandomAgent implements AgentInterface {
      */
     @Override
     public String agent_message(final String message) {
+        if (SolutionSetCodec.Encoder.isRequest(message)) {
+            return mSolutionSetEncoder.encode(mSolutionSet, message);
+        }
         if (message.equals("getSolutionSet")) {
             System.out.println(mSolutionSet.toString());
             return mSolutionSet.toString();
@@ -1,11 +1,11 @@
 package nl.uva.morlb.rg.agent;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import nl.uva.morlb.util.Log;
 import nl.uva.morlb.util.Util;
 
-import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.types.Action;
 import org.rlcommunity.rlglue.codec.types.Observation;
 import org.rlcommunity.rlglue.codec.types.Reward;
@@ -13,7 +13,18 @@ import org.rlcommunity.rlglue.codec.types.Reward;
 /**
  * A sanity check agent that just runs to the top-right.
  */
-public class RandomContinuousAgent implements AgentInterface {
+public class RandomContinuousAgent implements SeedableAgent {
+
+    /** The random number generator picking the actions */
+    private Random mRandom = Util.RNG;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setRandom(final Random random) {
+        mRandom = random;
+    }
 
     /**
      * Called when preparing the problem.
@@ -25,7 +36,7 @@ public class RandomContinuousAgent implements AgentInterface {
      * @return The action to perform next
      */
     public double[] getAction() {
-        return new double[] { Util.RNG.nextDouble(), Util.RNG.nextDouble() };
+        return new double[] { mRandom.nextDouble(), mRandom.nextDouble() };
     }
 
     /**
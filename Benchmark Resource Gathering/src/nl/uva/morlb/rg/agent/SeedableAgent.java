@@ -0,0 +1,20 @@
+package nl.uva.morlb.rg.agent;
+
+import java.util.Random;
+
+import org.rlcommunity.rlglue.codec.AgentInterface;
+
+/**
+ * An agent whose random decisions come from a random number generator that can be replaced, so that runs can be
+ * reproduced and agents running simultaneously do not share a generator.
+ */
+public interface SeedableAgent extends AgentInterface {
+
+    /**
+     * Replaces the random number generator of the agent. Has to be called before the agent is initialised.
+     *
+     * @param random
+     *            The random number generator used for all random decisions of the agent
+     */
+    void setRandom(Random random);
+}
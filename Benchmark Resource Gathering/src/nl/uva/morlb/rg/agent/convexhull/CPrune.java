@@ -1,13 +1,14 @@
 package nl.uva.morlb.rg.agent.convexhull;
 
-import java.util.LinkedList;
-
 import lpsolve.LpSolve;
 import lpsolve.LpSolveException;
+import nl.uva.morlb.rg.experiment.model.ColumnarSolutionSet;
 import nl.uva.morlb.rg.experiment.model.LinearScalarisation;
 import nl.uva.morlb.rg.experiment.model.Scalarisation;
 import nl.uva.morlb.rg.experiment.model.Solution;
 import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.util.EventTrace;
+import nl.uva.morlb.util.Metrics;
 
 /**
  * A pruner that converts solution sets to convex hulls
@@ -16,71 +17,259 @@ public class CPrune {
 
     /**
      * Prunes a solution set to the convex coverage set.
-     * 
+     *
      * @param solutionSet
      *            The solution set to prune
-     * 
+     *
      * @return The pruned solution set
      */
     public static SolutionSet prune(final SolutionSet solutionSet) {
+        return prune(new ColumnarSolutionSet(solutionSet)).toSolutionSet();
+    }
+
+    /**
+     * Prunes a columnar solution set to the convex coverage set. The solutions are referred to by their index so that
+     * their values never have to be copied.
+     *
+     * @param solutionSet
+     *            The solution set to prune
+     *
+     * @return The pruned solution set
+     */
+    public static ColumnarSolutionSet prune(final ColumnarSolutionSet solutionSet) {
+        final long startTime = Metrics.start();
+        final long traceStartTime = EventTrace.begin();
+
+        final double[] values = solutionSet.getValues();
+        final int numObjectives = solutionSet.getNumObjectives();
+
         // Make sure we're only dealing with the Pareto front
-        final SolutionSet paretoFront = solutionSet.copy();
-        paretoFront.pruneDominatedSolutions();
-        final LinkedList<Solution> solutions = new LinkedList<Solution>(paretoFront.getSolutions());
+        final int[] solutions = new int[solutionSet.getNumSolutions()];
+        int numSolutions = collectParetoFront(solutionSet, solutions);
 
-        final int numObjectives = paretoFront.getNumObjectives();
-        final SolutionSet convexCoverageSet = new SolutionSet(numObjectives);
+        final int[] convexCoverageSet = new int[numSolutions];
+        int numCoverageSolutions = 0;
 
         // Collect the solutions that are best for a single objective
-        for (int i = 0; i < numObjectives; i++) {
-            Solution bestSolution = null;
-            for (final Solution solution : solutions) {
-                if (bestSolution == null || solution.getValues()[i] > bestSolution.getValues()[i]) {
-                    bestSolution = solution;
+        if (numSolutions > 0) {
+            for (int i = 0; i < numObjectives; i++) {
+                int bestSolution = solutions[0];
+                for (int s = 1; s < numSolutions; ++s) {
+                    if (solutionSet.getValue(solutions[s], i) > solutionSet.getValue(bestSolution, i)) {
+                        bestSolution = solutions[s];
+                    }
+                }
+
+                if (indexOf(convexCoverageSet, numCoverageSolutions, bestSolution) == -1) {
+                    convexCoverageSet[numCoverageSolutions++] = bestSolution;
                 }
             }
-            convexCoverageSet.addSolution(bestSolution);
         }
-        solutions.removeAll(convexCoverageSet.getSolutions());
+        for (int i = 0; i < numCoverageSolutions; ++i) {
+            numSolutions = remove(solutions, numSolutions, convexCoverageSet[i]);
+        }
 
         // Find the weights for each solution and save ones composing the convex hull
-        final Scalarisation scalarisation = new LinearScalarisation(solutionSet.getNumObjectives());
-        while (!solutions.isEmpty()) {
-            Solution target = solutions.peekFirst();
-            final double[] weights = findWeights(target, convexCoverageSet);
+        final Scalarisation scalarisation = new LinearScalarisation(numObjectives);
+        while (numSolutions > 0) {
+            int target = solutions[0];
+            final double[] weights = findWeights(values, numObjectives, target, convexCoverageSet,
+                    numCoverageSolutions);
             if (weights != null) {
                 // Find which solution is the best for the current weights
                 double bestScalar = Double.MIN_VALUE;
-                for (final Solution solution : solutions) {
-                    final double scalar = scalarisation.scalarise(solution.getValues(), weights);
+                for (int s = 0; s < numSolutions; ++s) {
+                    final double scalar = scalarisation.scalarise(values, solutionSet.getOffset(solutions[s]),
+                            weights);
                     if (scalar > bestScalar) {
-                        target = solution;
+                        target = solutions[s];
                         bestScalar = scalar;
                     }
                 }
 
-                convexCoverageSet.addSolution(target);
+                convexCoverageSet[numCoverageSolutions++] = target;
+            }
+
+            numSolutions = remove(solutions, numSolutions, target);
+        }
+
+        // Gather the values of the convex coverage set in the order the solutions were added
+        final double[] coverageValues = new double[numCoverageSolutions * numObjectives];
+        for (int i = 0; i < numCoverageSolutions; ++i) {
+            System.arraycopy(values, solutionSet.getOffset(convexCoverageSet[i]), coverageValues, i * numObjectives,
+                    numObjectives);
+        }
+
+        Metrics.CPRUNE.stop(startTime);
+        EventTrace.cprune(traceStartTime, solutionSet.getNumSolutions(), numCoverageSolutions);
+        return new ColumnarSolutionSet(numObjectives, coverageValues, numCoverageSolutions);
+    }
+
+    /**
+     * Collects the solutions that are not dominated by any other solution, skipping duplicates. The original order of
+     * the solutions is kept.
+     *
+     * @param solutionSet
+     *            The solution set to filter
+     * @param paretoFront
+     *            The array to store the indices of the non-dominated solutions in
+     *
+     * @return The amount of non-dominated solutions
+     */
+    private static int collectParetoFront(final ColumnarSolutionSet solutionSet, final int[] paretoFront) {
+        final double[] values = solutionSet.getValues();
+        final int numObjectives = solutionSet.getNumObjectives();
+
+        int numFront = 0;
+        solutionCheck:
+        for (int i = 0; i < solutionSet.getNumSolutions(); ++i) {
+            final int offset = solutionSet.getOffset(i);
+
+            // Skip solutions that are equal to an earlier one
+            for (int f = 0; f < numFront; ++f) {
+                if (isEqual(values, offset, solutionSet.getOffset(paretoFront[f]), numObjectives)) {
+                    continue solutionCheck;
+                }
+            }
+
+            otherCheck:
+            for (int j = 0; j < solutionSet.getNumSolutions(); ++j) {
+                final int otherOffset = solutionSet.getOffset(j);
+                if (isEqual(values, offset, otherOffset, numObjectives)) {
+                    continue;
+                }
+
+                for (int dim = 0; dim < numObjectives; ++dim) {
+                    if (values[otherOffset + dim] < values[offset + dim]) {
+                        continue otherCheck;
+                    }
+                }
+
+                continue solutionCheck;
+            }
+
+            paretoFront[numFront++] = i;
+        }
+
+        return numFront;
+    }
+
+    /**
+     * Checks if two solutions stored in the same array have equal values.
+     *
+     * @param values
+     *            The values of the solutions
+     * @param offset
+     *            The index at which the first solution starts
+     * @param otherOffset
+     *            The index at which the second solution starts
+     * @param numObjectives
+     *            The amount of values per solution
+     *
+     * @return True iff all values are equal
+     */
+    private static boolean isEqual(final double[] values, final int offset, final int otherOffset,
+            final int numObjectives) {
+        for (int dim = 0; dim < numObjectives; ++dim) {
+            if (Double.doubleToLongBits(values[offset + dim]) != Double.doubleToLongBits(values[otherOffset + dim])) {
+                return false;
             }
+        }
+
+        return true;
+    }
 
-            solutions.remove(target);
+    /**
+     * Finds the position of a solution index in a list of indices.
+     *
+     * @param indices
+     *            The list of indices
+     * @param size
+     *            The amount of indices in the list
+     * @param index
+     *            The index to find
+     *
+     * @return The position of the index, or -1 if it is not in the list
+     */
+    private static int indexOf(final int[] indices, final int size, final int index) {
+        for (int i = 0; i < size; ++i) {
+            if (indices[i] == index) {
+                return i;
+            }
         }
 
-        return convexCoverageSet;
+        return -1;
+    }
+
+    /**
+     * Removes a solution index from a list of indices while keeping the order of the others.
+     *
+     * @param indices
+     *            The list of indices
+     * @param size
+     *            The amount of indices in the list
+     * @param index
+     *            The index to remove
+     *
+     * @return The new amount of indices in the list
+     */
+    private static int remove(final int[] indices, final int size, final int index) {
+        final int position = indexOf(indices, size, index);
+        if (position == -1) {
+            return size;
+        }
+
+        System.arraycopy(indices, position + 1, indices, position, size - position - 1);
+        return size - 1;
     }
 
     /**
      * Find the weights for a target in a solution set
-     * 
+     *
      * @param target
      *            The target solution to base the weights on
      * @param solutionSet
      *            The solution set to find the weights for
-     * 
+     *
      * @return The weights
      */
     public static double[] findWeights(final Solution target, final SolutionSet solutionSet) {
-        double[] result = null;
         final int numObjectives = target.getNumObjectives();
+        final int numSolutions = solutionSet.getNumSolutions();
+
+        // Place the target behind the solutions so that they can all be referred to by index
+        final double[] values = new double[(numSolutions + 1) * numObjectives];
+        System.arraycopy(new ColumnarSolutionSet(solutionSet).getValues(), 0, values, 0, numSolutions * numObjectives);
+        System.arraycopy(target.getValues(), 0, values, numSolutions * numObjectives, numObjectives);
+
+        final int[] solutions = new int[numSolutions];
+        for (int i = 0; i < numSolutions; ++i) {
+            solutions[i] = i;
+        }
+
+        return findWeights(values, numObjectives, numSolutions, solutions, numSolutions);
+    }
+
+    /**
+     * Find the weights for a target in a solution set, where all solutions are stored in a single array
+     *
+     * @param values
+     *            The values of the solutions, one solution after the other
+     * @param numObjectives
+     *            The amount of values per solution
+     * @param target
+     *            The index of the target solution to base the weights on
+     * @param solutions
+     *            The indices of the solutions to find the weights for
+     * @param numSolutions
+     *            The amount of indices to use
+     *
+     * @return The weights
+     */
+    private static double[] findWeights(final double[] values, final int numObjectives, final int target,
+            final int[] solutions, final int numSolutions) {
+        double[] result = null;
+        final int targetOffset = target * numObjectives;
 
         LpSolve solver = null;
         try {
@@ -88,17 +277,17 @@ public class CPrune {
             solver.setVerbose(1);
 
             // Add constraint per solution based on the difference in each dimension
-            for (final Solution solution : solutionSet.getSolutions()) {
-                final double[] constraint = new double[numObjectives + 2];
+            final double[] constraint = new double[numObjectives + 2];
+            for (int s = 0; s < numSolutions; ++s) {
+                final int offset = solutions[s] * numObjectives;
                 for (int dim = 0; dim < numObjectives; ++dim) {
-                    constraint[dim + 1] = (target.getValues()[dim] - solution.getValues()[dim]);
+                    constraint[dim + 1] = (values[targetOffset + dim] - values[offset + dim]);
                 }
                 constraint[numObjectives + 1] = -1;
                 solver.addConstraint(constraint, LpSolve.GE, 0);
             }
 
             // Add a fixed constraint
-            final double[] constraint = new double[numObjectives + 2];
             for (int j = 0; j <= numObjectives; ++j) {
                 constraint[j + 1] = 1;
             }
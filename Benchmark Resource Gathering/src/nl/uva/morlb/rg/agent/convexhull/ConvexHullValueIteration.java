@@ -2,29 +2,38 @@ package nl.uva.morlb.rg.agent.convexhull;
 
 import java.security.InvalidParameterException;
 import java.util.HashMap;
+import java.util.Random;
 
+import nl.uva.morlb.rg.agent.SeedableAgent;
+import nl.uva.morlb.rg.agent.model.ObservationDecoder;
 import nl.uva.morlb.rg.agent.model.QTableEntry;
 import nl.uva.morlb.rg.environment.model.DiscreteAction;
 import nl.uva.morlb.rg.environment.model.Location;
 import nl.uva.morlb.rg.environment.model.State;
+import nl.uva.morlb.rg.experiment.model.NDTreeSolutionSet;
 import nl.uva.morlb.rg.experiment.model.Solution;
 import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.rg.experiment.model.SolutionSetCodec;
+import nl.uva.morlb.util.Metrics;
 import nl.uva.morlb.util.Util;
 
-import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
 import org.rlcommunity.rlglue.codec.types.Action;
 import org.rlcommunity.rlglue.codec.types.Observation;
 import org.rlcommunity.rlglue.codec.types.Reward;
 import org.rlcommunity.rlglue.codec.util.AgentLoader;
 
-public class ConvexHullValueIteration implements AgentInterface {
+public class ConvexHullValueIteration implements SeedableAgent {
 
     /** The discount factor of Q table updates */
     private static final double DISCOUNT = 1;
     /** The amount of times the solution set has to be the same before converging */
     private static final int REPEAT_CONVERGE_LIMIT = 50;
+    /** The maximum difference per objective for Q values to be considered unchanged */
+    private static final double CONVERGE_EPSILON = 1e-6;
 
+    /** The random number generator picking the actions */
+    private Random mRandom = Util.RNG;
     /** The Q table to store values for state-action pairs */
     private final HashMap<QTableEntry, SolutionSet> mQTable = new HashMap<>();
     /** The Q value to use when it has not been set yet */
@@ -35,13 +44,35 @@ public class ConvexHullValueIteration implements AgentInterface {
     private int mMinAction;
     /** The maximum action possible */
     private int mMaxAction;
+    /** The decoder mapping observations to state keys */
+    private ObservationDecoder mDecoder;
+    /** The Q table entries indexed by state key and action, created once per pair to reuse them as keys */
+    private QTableEntry[] mEntries;
+    /** The encoder answering the requests for the solution set */
+    private final SolutionSetCodec.Encoder mSolutionSetEncoder = new SolutionSetCodec.Encoder();
 
     /** The Q table entry that should be updated next */
     private QTableEntry mLastEntry;
     /** The amount of times the same solution set has been returned */
     private int mRepeatCount = 0;
     /** The solution set previous returned */
-    private String mPrevSolutionSet = "";
+    private SolutionSet mPrevSolutionSet;
+    /** The version of the Q table, increased whenever a Q value changes in any way */
+    private long mQTableVersion = 0;
+    /** The Q table version at which the previous convergence check was done */
+    private long mConvergeCheckVersion = -1;
+    /** The solution set of the initial state as calculated for {@link #mSolutionSetVersion} */
+    private SolutionSet mSolutionSet;
+    /** The Q table version at which the cached solution set was calculated */
+    private long mSolutionSetVersion = -1;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setRandom(final Random random) {
+        mRandom = random;
+    }
 
     /**
      * Called when preparing the problem.
@@ -53,6 +84,8 @@ public class ConvexHullValueIteration implements AgentInterface {
         mNumObjectives = tSpec.getNumOfObjectives();
         mMinAction = tSpec.getDiscreteActionRange(0).getMin();
         mMaxAction = tSpec.getDiscreteActionRange(0).getMax();
+        mDecoder = new ObservationDecoder(tSpec);
+        mEntries = new QTableEntry[mDecoder.getNumKeys() * (mMaxAction + 1)];
 
         mDefaultQValue = new SolutionSet(mNumObjectives);
         final double[] solutionValues = new double[mNumObjectives];
@@ -70,9 +103,9 @@ public class ConvexHullValueIteration implements AgentInterface {
      */
     @Override
     public Action agent_start(final Observation observation) {
-        final State state = generateState(observation);
+        final int stateKey = mDecoder.getKey(observation);
         final DiscreteAction action = getRandomAction();
-        mLastEntry = new QTableEntry(state, action);
+        mLastEntry = getEntry(stateKey, action);
 
         return action.convertToRLGlueAction();
     }
@@ -89,13 +122,13 @@ public class ConvexHullValueIteration implements AgentInterface {
      */
     @Override
     public Action agent_step(final Reward reward, final Observation observation) {
-        final State state = generateState(observation);
+        final long startTime = Metrics.start();
+        final int stateKey = mDecoder.getKey(observation);
 
-        // Union the Q values of the state over the actions
-        final SolutionSet union = new SolutionSet(mNumObjectives);
+        // Union the Q values of the state over the actions, keeping only the non-dominated ones
+        final SolutionSet union = new NDTreeSolutionSet(mNumObjectives);
         for (int i = mMinAction; i <= mMaxAction; ++i) {
-            final QTableEntry entry = new QTableEntry(state, DiscreteAction.values()[i]);
-            union.addSolutionSet(getQValue(entry));
+            union.addSolutionSet(getQValue(getEntry(stateKey, DiscreteAction.fromOrdinal(i))));
         }
 
         // Convert the union to a convex coverage set
@@ -115,12 +148,13 @@ public class ConvexHullValueIteration implements AgentInterface {
         }
 
         // Save the new Q value
-        mQTable.put(mLastEntry, newQValue);
+        setQValue(mLastEntry, newQValue);
 
         // Perform the next action
         final DiscreteAction action = getRandomAction();
-        mLastEntry = new QTableEntry(state, action);
+        mLastEntry = getEntry(stateKey, action);
 
+        Metrics.AGENT_STEP.stop(startTime);
         return action.convertToRLGlueAction();
     }
 
@@ -136,7 +170,7 @@ public class ConvexHullValueIteration implements AgentInterface {
         final SolutionSet newQValue = new SolutionSet(mNumObjectives);
         newQValue.addSolution(new Solution(reward.doubleArray));
 
-        mQTable.put(mLastEntry, newQValue);
+        setQValue(mLastEntry, newQValue);
     }
 
     /**
@@ -147,7 +181,11 @@ public class ConvexHullValueIteration implements AgentInterface {
         // Do the actual clean up work
         mQTable.clear();
         mRepeatCount = 0;
-        mPrevSolutionSet = "";
+        mPrevSolutionSet = null;
+        mQTableVersion = 0;
+        mConvergeCheckVersion = -1;
+        mSolutionSet = null;
+        mSolutionSetVersion = -1;
     }
 
     /**
@@ -158,39 +196,70 @@ public class ConvexHullValueIteration implements AgentInterface {
      */
     @Override
     public String agent_message(final String message) {
+        if (SolutionSetCodec.Encoder.isRequest(message)) {
+            return mSolutionSetEncoder.encode(getSolutionSet(), message);
+        }
+
         switch (message) {
             case "getSolutionSet":
                 return getSolutionSet().toString();
 
             case "isConverged":
-                final String solutionSetString = getSolutionSet().toString();
-                if (mPrevSolutionSet.equals(solutionSetString)) {
-                    ++mRepeatCount;
-                    if (mRepeatCount == REPEAT_CONVERGE_LIMIT) {
-                        return Boolean.TRUE.toString();
-                    }
-                } else {
-                    mRepeatCount = 0;
-                    mPrevSolutionSet = solutionSetString;
-                }
-                return Boolean.FALSE.toString();
+                return Boolean.toString(isConverged());
         }
 
         throw new InvalidParameterException("Unknown message: " + message);
     }
 
     /**
-     * Unions the solutions sets of the initial state-actions to return the full Pareto front.
+     * Checks whether the solution set has remained the same for enough consecutive checks. Only recalculates the
+     * solution set when the Q table changed since the previous check.
+     *
+     * @return True iff the solution set is considered converged
+     */
+    private boolean isConverged() {
+        if (mQTableVersion != mConvergeCheckVersion) {
+            mConvergeCheckVersion = mQTableVersion;
+
+            final SolutionSet solutionSet = getSolutionSet();
+            if (mPrevSolutionSet == null || !mPrevSolutionSet.isEquivalent(solutionSet, CONVERGE_EPSILON)) {
+                mRepeatCount = 0;
+                mPrevSolutionSet = solutionSet;
+                return false;
+            }
+        }
+
+        ++mRepeatCount;
+        return mRepeatCount == REPEAT_CONVERGE_LIMIT;
+    }
+
+    /**
+     * Unions the solutions sets of the initial state-actions to return the full Pareto front. The result is cached
+     * until the Q table changes.
      *
      * @return The solution set
      */
     private SolutionSet getSolutionSet() {
-        final SolutionSet union = new SolutionSet(mNumObjectives);
+        if (mSolutionSet == null || mSolutionSetVersion != mQTableVersion) {
+            mSolutionSet = calculateSolutionSet();
+            mSolutionSetVersion = mQTableVersion;
+        }
+
+        return mSolutionSet;
+    }
 
-        // Union the Q values of the state over the actions
+    /**
+     * Unions the solutions sets of the initial state-actions and prunes them to the convex coverage set.
+     *
+     * @return The solution set
+     */
+    private SolutionSet calculateSolutionSet() {
+        final SolutionSet union = new NDTreeSolutionSet(mNumObjectives);
+
+        // Union the Q values of the state over the actions, keeping only the non-dominated ones
         final State initState = new State(new Location(0, 0), new boolean[mLastEntry.state.getPickedUp().length]);
         for (int i = mMinAction; i <= mMaxAction; ++i) {
-            final QTableEntry entry = new QTableEntry(initState, DiscreteAction.values()[i]);
+            final QTableEntry entry = new QTableEntry(initState, DiscreteAction.fromOrdinal(i));
             union.addSolutionSet(getQValue(entry));
         }
 
@@ -213,6 +282,26 @@ public class ConvexHullValueIteration implements AgentInterface {
         }
     }
 
+    /**
+     * Saves a Q value and increases the Q table version if it differs from the previously saved one at all. Small
+     * changes are only ignored by the convergence check on the solution set of the initial state, so that the cached
+     * solution set never falls behind the Q table.
+     *
+     * @param key
+     *            The state-action pair to save the Q value for
+     * @param qValue
+     *            The new Q value
+     */
+    private void setQValue(final QTableEntry key, final SolutionSet qValue) {
+        final SolutionSet oldQValue = mQTable.put(key, qValue);
+        if (oldQValue == null) {
+            Metrics.Q_TABLE_ENTRIES.increment();
+        }
+        if (oldQValue == null || !oldQValue.isEquivalent(qValue, 0)) {
+            ++mQTableVersion;
+        }
+    }
+
     /**
      * Generates a state based on the given observation.
      *
@@ -222,22 +311,35 @@ public class ConvexHullValueIteration implements AgentInterface {
      * @return The state corresponding to the observation
      */
     public State generateState(final Observation observation) {
-        final double[] obsVals = observation.doubleArray;
+        return mDecoder.getState(mDecoder.getKey(observation));
+    }
 
-        final Location currentLocation = new Location(obsVals[0], obsVals[1]);
-        final boolean[] pickedUp = new boolean[(obsVals.length - 4) / 3];
-        for (int i = 0; i < pickedUp.length; ++i) {
-            pickedUp[i] = Double.isNaN(obsVals[i * 3 + 4]);
+    /**
+     * Gets the Q table entry of a state-action pair, creating it the first time the pair is used
+     *
+     * @param stateKey
+     *            The key of the state
+     * @param action
+     *            The action
+     *
+     * @return The Q table entry
+     */
+    private QTableEntry getEntry(final int stateKey, final DiscreteAction action) {
+        final int index = stateKey * (mMaxAction + 1) + action.ordinal();
+        QTableEntry entry = mEntries[index];
+        if (entry == null) {
+            entry = new QTableEntry(mDecoder.getState(stateKey), action);
+            mEntries[index] = entry;
         }
 
-        return new State(currentLocation, pickedUp);
+        return entry;
     }
 
     /**
      * @return A random action to perform
      */
     public DiscreteAction getRandomAction() {
-        return DiscreteAction.values()[Util.RNG.nextInt(mMaxAction - mMinAction + 1) + mMinAction];
+        return DiscreteAction.fromOrdinal(mRandom.nextInt(mMaxAction - mMinAction + 1) + mMinAction);
     }
 
     public static void main(final String[] args) {
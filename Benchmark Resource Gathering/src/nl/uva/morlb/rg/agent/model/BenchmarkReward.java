@@ -1,12 +1,10 @@
 package nl.uva.morlb.rg.agent.model;
 
-import java.util.Arrays;
-
 import nl.uva.morlb.rg.environment.model.RewardRange;
 import nl.uva.morlb.rg.experiment.model.Solution;
 
 /**
- * Represents the reward array
+ * Represents the reward array. Every operation returns a new reward, see {@link VectorMath} for in-place arithmetic.
  */
 public class BenchmarkReward {
 
@@ -50,17 +48,7 @@ public class BenchmarkReward {
      * @return this
      */
     public BenchmarkReward add(final BenchmarkReward other, final double discount) {
-        if (other.getDimension() != getDimension()) {
-            throw new RuntimeException("Dimensions are not aligned");
-        }
-
-        final double[] newReward = Arrays.copyOf(mReward, mReward.length);
-
-        for (int i = 0; i < mReward.length; ++i) {
-            newReward[i] += discount * other.mReward[i];
-        }
-
-        return new BenchmarkReward(newReward);
+        return new BenchmarkReward(VectorMath.addScaled(new double[mReward.length], mReward, other.mReward, discount));
     }
 
     /**
@@ -70,17 +58,7 @@ public class BenchmarkReward {
      * @return this
      */
     public BenchmarkReward sub(final BenchmarkReward other, final double discount) {
-        if (other.getDimension() != getDimension()) {
-            throw new RuntimeException("Dimensions are not aligned");
-        }
-
-        final double[] newReward = Arrays.copyOf(mReward, mReward.length);
-
-        for (int i = 0; i < mReward.length; ++i) {
-            newReward[i] -= discount * other.mReward[i];
-        }
-
-        return new BenchmarkReward(newReward);
+        return new BenchmarkReward(VectorMath.subScaled(new double[mReward.length], mReward, other.mReward, discount));
     }
 
     /**
@@ -89,13 +67,7 @@ public class BenchmarkReward {
      * @return The multiplied reward
      */
     public BenchmarkReward mult(final double multiplicant) {
-        final double[] newReward = Arrays.copyOf(mReward, mReward.length);
-
-        for (int i = 0; i < mReward.length; ++i) {
-            newReward[i] *= multiplicant;
-        }
-
-        return new BenchmarkReward(newReward);
+        return new BenchmarkReward(VectorMath.mult(new double[mReward.length], mReward, multiplicant));
     }
 
     /**
@@ -104,17 +76,7 @@ public class BenchmarkReward {
      * @return The scalarised reward
      */
     public BenchmarkReward scalarise(final double[] scalar) {
-        if (scalar.length != mReward.length) {
-            throw new RuntimeException("Dimensions do not align");
-        }
-
-        final double[] scalarisedReward = Arrays.copyOf(mReward, mReward.length);
-
-        for (int i = 0; i < scalar.length; ++i) {
-            scalarisedReward[i] *= scalar[i];
-        }
-
-        return new BenchmarkReward(scalarisedReward);
+        return new BenchmarkReward(VectorMath.multPointwise(new double[mReward.length], mReward, scalar));
     }
 
     /**
@@ -122,12 +84,7 @@ public class BenchmarkReward {
      * @return The sum of the reward
      */
     public double getSum() {
-        double result = 0;
-        for (final double d : mReward) {
-            result += d;
-        }
-
-        return result;
+        return VectorMath.sum(mReward);
     }
 
     /**
@@ -180,14 +137,7 @@ public class BenchmarkReward {
      * @return The smallest reward entry
      */
     public double getMinimumRewardEntry() {
-        double minimum = Double.POSITIVE_INFINITY;
-        for(double rewardEntry : mReward) {
-            if(rewardEntry < minimum) {
-                minimum = rewardEntry;
-            }
-        }
-
-        return minimum;
+        return VectorMath.minimum(mReward);
     }
 
     /**
@@ -195,12 +145,7 @@ public class BenchmarkReward {
      * @return The length of this vector
      */
     public double getLength() {
-        double result = 0;
-        for(double entry : mReward) {
-            result += Math.pow(entry, 2.0);
-        }
-
-        return Math.sqrt(result);
+        return VectorMath.length(mReward);
     }
 
 }
@@ -0,0 +1,171 @@
+package nl.uva.morlb.rg.agent.model;
+
+import java.security.InvalidParameterException;
+
+import nl.uva.morlb.rg.environment.model.Location;
+import nl.uva.morlb.rg.environment.model.State;
+
+import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
+import org.rlcommunity.rlglue.codec.types.Observation;
+
+/**
+ * Maps observations of discrete problems to compact integer state keys without allocating. A key consists of the index
+ * of the observed agent location followed by a fixed amount of flag bits, which are either the resources that are no
+ * longer observed or flags supplied by the agent, such as the resource types it has collected. The state object of a
+ * key is created once and shared afterwards.
+ */
+public class ObservationDecoder {
+
+    /** The index in the observation values of the first resource **/
+    private static final int RESOURCE_OFFSET = 4;
+
+    /** The amount of observation values per resource **/
+    private static final int RESOURCE_STRIDE = 3;
+
+    /** The smallest observable coordinates **/
+    private final int mMinX, mMinY;
+
+    /** The amount of observable columns **/
+    private final int mWidth;
+
+    /** The amount of flag bits in a key **/
+    private final int mNumFlags;
+
+    /** The amount of resources in the observations **/
+    private final int mNumResources;
+
+    /** The state objects of the keys that have been requested so far **/
+    private final State[] mStates;
+
+    /**
+     * Creates a decoder of which the flags are the resources that are no longer observed, i.e. picked up in fully
+     * observable problems.
+     *
+     * @param taskSpec
+     *            The task spec of the problem
+     */
+    public ObservationDecoder(final TaskSpecVRLGLUE3 taskSpec) {
+        this(taskSpec, getNumResources(taskSpec));
+    }
+
+    /**
+     * Creates a decoder for keys with the given amount of flags
+     *
+     * @param taskSpec
+     *            The task spec of the problem
+     * @param numFlags
+     *            The amount of flag bits in a key
+     */
+    public ObservationDecoder(final TaskSpecVRLGLUE3 taskSpec, final int numFlags) {
+        mMinX = (int) taskSpec.getContinuousObservationRange(0).getMin();
+        mMinY = (int) taskSpec.getContinuousObservationRange(1).getMin();
+        mWidth = (int) taskSpec.getContinuousObservationRange(0).getMax() - mMinX + 1;
+        final int height = (int) taskSpec.getContinuousObservationRange(1).getMax() - mMinY + 1;
+
+        final long numKeys = ((long) mWidth * height) << numFlags;
+        if (numFlags < 0 || numFlags > 30 || numKeys > Integer.MAX_VALUE) {
+            throw new InvalidParameterException("The state space is too large to be indexed by keys");
+        }
+
+        mNumFlags = numFlags;
+        mNumResources = getNumResources(taskSpec);
+        mStates = new State[(int) numKeys];
+    }
+
+    /**
+     * Determines the amount of resources described by the observations of a problem
+     *
+     * @param taskSpec
+     *            The task spec of the problem
+     *
+     * @return The amount of resources
+     */
+    private static int getNumResources(final TaskSpecVRLGLUE3 taskSpec) {
+        return (taskSpec.getNumContinuousObsDims() - RESOURCE_OFFSET) / RESOURCE_STRIDE;
+    }
+
+    /**
+     * Determines the key of an observation, using the resources that are no longer observed as flags
+     *
+     * @param observation
+     *            The observation as given by the environment
+     *
+     * @return The state key
+     */
+    public int getKey(final Observation observation) {
+        return getKey(observation, getHiddenResources(observation));
+    }
+
+    /**
+     * Determines the key of an observation combined with the given flags
+     *
+     * @param observation
+     *            The observation as given by the environment
+     * @param flags
+     *            The flags with one bit per flag
+     *
+     * @return The state key
+     */
+    public int getKey(final Observation observation, final int flags) {
+        final double[] values = observation.doubleArray;
+        final int x = (int) values[0] - mMinX;
+        final int y = (int) values[1] - mMinY;
+
+        return ((y * mWidth + x) << mNumFlags) | flags;
+    }
+
+    /**
+     * Determines which resources are not in the observation
+     *
+     * @param observation
+     *            The observation as given by the environment
+     *
+     * @return The hidden resources with one bit per resource
+     */
+    public int getHiddenResources(final Observation observation) {
+        final double[] values = observation.doubleArray;
+
+        int hidden = 0;
+        for (int resource = 0; resource < mNumResources; ++resource) {
+            if (Double.isNaN(values[RESOURCE_OFFSET + RESOURCE_STRIDE * resource])) {
+                hidden |= 1 << resource;
+            }
+        }
+
+        return hidden;
+    }
+
+    /**
+     * Gets the state of a key, consisting of the agent location and the flags as picked up values. The state is only
+     * created the first time it is requested.
+     *
+     * @param key
+     *            The state key
+     *
+     * @return The state
+     */
+    public State getState(final int key) {
+        State state = mStates[key];
+        if (state == null) {
+            final int location = key >>> mNumFlags;
+            final boolean[] flags = new boolean[mNumFlags];
+            for (int i = 0; i < mNumFlags; ++i) {
+                flags[i] = ((key >>> i) & 1) != 0;
+            }
+
+            state = new State(new Location(location % mWidth + mMinX, location / mWidth + mMinY), flags);
+            mStates[key] = state;
+        }
+
+        return state;
+    }
+
+    /**
+     * Get the amount of distinct keys
+     *
+     * @return The amount of keys
+     */
+    public int getNumKeys() {
+        return mStates.length;
+    }
+}
@@ -0,0 +1,212 @@
+package nl.uva.morlb.rg.agent.model;
+
+/**
+ * Arithmetic on reward vectors stored as plain arrays. Every operation writes into a given result array, which may be
+ * one of the operands, so that hot loops can work on accumulators and scratch buffers without allocating.
+ */
+public class VectorMath {
+
+    /**
+     * Adds another vector to a vector in place
+     *
+     * @param vector The vector to add to
+     * @param other The vector to add
+     * @return The given vector
+     */
+    public static double[] add(final double[] vector, final double[] other) {
+        return addScaled(vector, vector, other, 1.0d);
+    }
+
+    /**
+     * Calculates vector + factor * other
+     *
+     * @param result The array to store the result in, may be one of the operands
+     * @param vector The vector to add to
+     * @param other The vector to scale and add
+     * @param factor The factor to scale the other vector with
+     * @return The result array
+     */
+    public static double[] addScaled(final double[] result, final double[] vector, final double[] other,
+            final double factor) {
+        checkDimensions(vector, other);
+
+        for (int i = 0; i < vector.length; ++i) {
+            result[i] = vector[i] + factor * other[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * Calculates vector - factor * other
+     *
+     * @param result The array to store the result in, may be one of the operands
+     * @param vector The vector to subtract from
+     * @param other The vector to scale and subtract
+     * @param factor The factor to scale the other vector with
+     * @return The result array
+     */
+    public static double[] subScaled(final double[] result, final double[] vector, final double[] other,
+            final double factor) {
+        checkDimensions(vector, other);
+
+        for (int i = 0; i < vector.length; ++i) {
+            result[i] = vector[i] - factor * other[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * Multiplies a vector by a scalar value
+     *
+     * @param result The array to store the result in, may be the vector itself
+     * @param vector The vector to multiply
+     * @param multiplicant The scalar value
+     * @return The result array
+     */
+    public static double[] mult(final double[] result, final double[] vector, final double multiplicant) {
+        for (int i = 0; i < vector.length; ++i) {
+            result[i] = vector[i] * multiplicant;
+        }
+
+        return result;
+    }
+
+    /**
+     * Multiplies two vectors entry by entry
+     *
+     * @param result The array to store the result in, may be one of the operands
+     * @param vector The first vector
+     * @param other The second vector
+     * @return The result array
+     */
+    public static double[] multPointwise(final double[] result, final double[] vector, final double[] other) {
+        checkDimensions(vector, other);
+
+        for (int i = 0; i < vector.length; ++i) {
+            result[i] = vector[i] * other[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * Sums all entries of a vector
+     *
+     * @param vector The vector
+     * @return The sum of the entries
+     */
+    public static double sum(final double[] vector) {
+        double result = 0;
+        for (final double entry : vector) {
+            result += entry;
+        }
+
+        return result;
+    }
+
+    /**
+     * Calculates the dot product of two vectors without storing their pointwise product
+     *
+     * @param vector The first vector
+     * @param other The second vector
+     * @return The dot product
+     */
+    public static double dot(final double[] vector, final double[] other) {
+        checkDimensions(vector, other);
+
+        double result = 0;
+        for (int i = 0; i < vector.length; ++i) {
+            result += vector[i] * other[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the smallest entry of a vector
+     *
+     * @param vector The vector
+     * @return The smallest entry
+     */
+    public static double minimum(final double[] vector) {
+        double minimum = Double.POSITIVE_INFINITY;
+        for (final double entry : vector) {
+            if (entry < minimum) {
+                minimum = entry;
+            }
+        }
+
+        return minimum;
+    }
+
+    /**
+     * Calculates the Euclidean length of a vector
+     *
+     * @param vector The vector
+     * @return The length of the vector
+     */
+    public static double length(final double[] vector) {
+        double result = 0;
+        for (final double entry : vector) {
+            result += entry * entry;
+        }
+
+        return Math.sqrt(result);
+    }
+
+    /**
+     * Calculates the distance between a vector and its projection on the Pareto cube of a front, i.e. the vector scaled
+     * away from the reference point until it reaches the boundary of the space dominated by the front. This fuses the
+     * pointwise division, minimum and maximum over the front, projection and length without intermediate vectors.
+     *
+     * @param shiftedFront The points of the front minus the reference point
+     * @param numPoints The amount of points to consider from the start of the front
+     * @param vector The vector to project
+     * @param referencePoint The reference point to scale from
+     * @return The length of the difference between the projection and the vector
+     */
+    public static double paretoCubeProjectionDistance(final double[][] shiftedFront, final int numPoints,
+            final double[] vector, final double[] referencePoint) {
+        checkDimensions(vector, referencePoint);
+
+        // The largest factor that still keeps the scaled vector within the dominated space of a point
+        double maxGradient = Double.NEGATIVE_INFINITY;
+        for (int point = 0; point < numPoints; ++point) {
+            final double[] shiftedPoint = shiftedFront[point];
+
+            double gradient = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < vector.length; ++i) {
+                final double entryGradient = shiftedPoint[i] / (vector[i] - referencePoint[i]);
+                if (entryGradient < gradient) {
+                    gradient = entryGradient;
+                }
+            }
+
+            if (maxGradient < gradient) {
+                maxGradient = gradient;
+            }
+        }
+
+        double result = 0;
+        for (int i = 0; i < vector.length; ++i) {
+            final double difference = ((vector[i] - referencePoint[i]) * maxGradient + referencePoint[i]) - vector[i];
+            result += difference * difference;
+        }
+
+        return Math.sqrt(result);
+    }
+
+    /**
+     * Ensures that two vectors have the same dimension
+     *
+     * @param vector The first vector
+     * @param other The second vector
+     */
+    private static void checkDimensions(final double[] vector, final double[] other) {
+        if (vector.length != other.length) {
+            throw new RuntimeException("Dimensions are not aligned");
+        }
+    }
+}
@@ -1,20 +1,33 @@
 package nl.uva.morlb.rg.agent.momcts;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
-import nl.uva.morlb.rg.agent.model.BenchmarkReward;
+import nl.uva.morlb.rg.agent.SeedableAgent;
+import nl.uva.morlb.rg.agent.model.ObservationDecoder;
+import nl.uva.morlb.rg.agent.model.VectorMath;
 import nl.uva.morlb.rg.environment.model.DiscreteAction;
-import nl.uva.morlb.rg.environment.model.Location;
+import nl.uva.morlb.rg.environment.model.Parameters;
 import nl.uva.morlb.rg.environment.model.State;
-import nl.uva.morlb.rg.experiment.Judge;
 import nl.uva.morlb.rg.experiment.model.Solution;
-import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.rg.experiment.model.SolutionSetCodec;
+import nl.uva.morlb.util.Log;
+import nl.uva.morlb.util.Metrics;
 import nl.uva.morlb.util.Util;
 
-import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
 import org.rlcommunity.rlglue.codec.types.Action;
 import org.rlcommunity.rlglue.codec.types.Observation;
@@ -24,44 +37,85 @@ import org.rlcommunity.rlglue.codec.util.AgentLoader;
 /**
  * Multi-Objective Monte-Carlo Tree Search
  */
-public class MOMCTSAgent implements AgentInterface {
+public class MOMCTSAgent implements SeedableAgent {
 
     /** The initial reward values **/
-    public static double[] sInitialReward;
+    private double[] mInitialReward;
+
+    /** The random number generator for the tree building steps, random walks and rollouts **/
+    private Random mRandom = Util.RNG;
 
     /** The search tree used by our tree walks **/
-    private final SearchTree mSearchTree = new SearchTree();
+    private final SearchTree mSearchTree;
 
     /** The RL-Glue multi-objective task spec **/
     private TaskSpecVRLGLUE3 mTaskSpec;
 
     /** The list of available actions defined by the environment **/
-    private final List<DiscreteAction> mAvailableActions = new LinkedList<DiscreteAction>();
+    private final List<DiscreteAction> mAvailableActions = new ArrayList<DiscreteAction>();
 
     /*
      * State specific values
      */
-    /** The current inventory **/
-    private boolean[] mInventory;
+    /** The current inventory with one bit per resource type **/
+    private int mInventory;
+
+    /** The decoder mapping observations and the inventory to states **/
+    private ObservationDecoder mDecoder;
 
     /*
      * Tree walk values
      */
 
     /** The action history of the current tree walk **/
-    private final List<DiscreteAction> mActionHistory = new LinkedList<DiscreteAction>();
+    private final List<DiscreteAction> mActionHistory = new ArrayList<DiscreteAction>();
 
     /** The state history of the current tree walk **/
-    private final List<TreeNode> mStateHistory = new LinkedList<TreeNode>();
+    private final List<TreeNode> mStateHistory = new ArrayList<TreeNode>();
 
     /** The accumulated reward over the whole episode **/
-    private BenchmarkReward mR_u;
+    private double[] mR_u;
+
+    /** The buffer that action rewards are copied into during selection **/
+    private double[] mActionReward;
+
+    /** The pareto front and its hypervolume indicator **/
+    private ParetoArchive mParetoArchive;
+
+    /** The encoder answering the requests for the solution set **/
+    private final SolutionSetCodec.Encoder mSolutionSetEncoder = new SolutionSetCodec.Encoder();
+
+    /*
+     * Simulated rollout values
+     */
+
+    /** The parameters of the problem used to simulate rollouts, null if rollouts are not simulated **/
+    private final Parameters mModel;
+
+    /** The amount of rollouts simulated after each tree building step **/
+    private final int mNumRollouts;
+
+    /** The engine simulating the rollouts, mirroring the real problem's state during the tree walk **/
+    private RolloutEngine mRolloutEngine;
+
+    /** The mean return of the rollouts simulated during the current episode **/
+    private double[] mRolloutReturn;
+
+    /** Whether rollouts were simulated during the current episode **/
+    private boolean mHasRolloutReturn = false;
+
+    /*
+     * Checkpoint values
+     */
 
-    /** The pareto front **/
-    private SolutionSet mParetoFront;
+    /** The file to restore the search from on initialisation and to save it to, null if not used **/
+    private File mCheckpointFile;
 
-    /** The current hypervolume indicator **/
-    private double mHypervolumeIndicator = Double.NEGATIVE_INFINITY;
+    /** The amount of episodes between saves of the checkpoint, 0 to only save on cleanup **/
+    private int mCheckpointInterval = 0;
+
+    /** The amount of episodes completed since initialisation **/
+    private int mNumEpisodes = 0;
 
     /**
      * Defines the random walk phase
@@ -75,40 +129,206 @@ public class MOMCTSAgent implements AgentInterface {
     /** Are we in the random walk phase **/
     private RandomWalkPhase mRandomWalk = RandomWalkPhase.OUT;
 
+    /**
+     * Creates an agent whose search tree may grow without bounds
+     */
+    public MOMCTSAgent() {
+        this(SearchTree.UNLIMITED_NODES, false);
+    }
+
+    /**
+     * Creates an agent whose search tree recycles its least visited subtrees once it holds the given amount of nodes
+     *
+     * @param nodeBudget
+     *            The maximum amount of nodes in the search tree
+     * @param useTranspositions
+     *            Whether the search tree should share nodes for the same state reached at the same depth
+     */
+    public MOMCTSAgent(final long nodeBudget, final boolean useTranspositions) {
+        mSearchTree = new SearchTree(nodeBudget, useTranspositions);
+        mModel = null;
+        mNumRollouts = 0;
+    }
+
+    /**
+     * Creates an agent that simulates a batch of rollouts on a model of the problem after each tree building step. The
+     * mean return of the batch is backed up together with the return of the real episode, and the non-dominated
+     * returns of the batch are added to the Pareto front.
+     *
+     * @param model
+     *            The parameters of the discrete, fully observable problem that the agent is run on
+     * @param numRollouts
+     *            The amount of rollouts to simulate after each tree building step
+     * @param nodeBudget
+     *            The maximum amount of nodes in the search tree
+     * @param useTranspositions
+     *            Whether the search tree should share nodes for the same state reached at the same depth
+     */
+    public MOMCTSAgent(final Parameters model, final int numRollouts, final long nodeBudget,
+            final boolean useTranspositions) {
+        if (!model.fullyObservable) {
+            throw new InvalidParameterException("Rollouts can only be simulated for fully observable problems");
+        }
+        if (numRollouts < 1) {
+            throw new InvalidParameterException("At least one rollout is required");
+        }
+
+        mSearchTree = new SearchTree(nodeBudget, useTranspositions);
+        mModel = model;
+        mNumRollouts = numRollouts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setRandom(final Random random) {
+        mRandom = random;
+    }
+
     @Override
     public void agent_init(final String taskSpec) {
         mTaskSpec = new TaskSpecVRLGLUE3(taskSpec);
-        mParetoFront = new SolutionSet(mTaskSpec.getNumOfObjectives());
+        mParetoArchive = new ParetoArchive(mTaskSpec.getNumOfObjectives());
 
         for (int action = mTaskSpec.getDiscreteActionRange(0).getMin(); action <= mTaskSpec.getDiscreteActionRange(0)
                 .getMax(); action++) {
-            mAvailableActions.add(DiscreteAction.values()[action]);
+            mAvailableActions.add(DiscreteAction.fromOrdinal(action));
+        }
+
+        mDecoder = new ObservationDecoder(mTaskSpec, mTaskSpec.getNumOfObjectives() - 1);
+        mActionReward = new double[mTaskSpec.getNumOfObjectives()];
+
+        mInitialReward = createInitialReward(mTaskSpec.getNumOfObjectives());
+
+        if (mModel != null) {
+            mRolloutEngine = new RolloutEngine(mModel, mAvailableActions, mRandom);
+            mRolloutReturn = new double[mTaskSpec.getNumOfObjectives()];
+        }
+
+        mNumEpisodes = 0;
+        if (mCheckpointFile != null && mCheckpointFile.exists()) {
+            try {
+                loadCheckpoint(mCheckpointFile);
+            } catch (final IOException ex) {
+                Log.e("Could not restore the MOMCTS checkpoint " + mCheckpointFile + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Makes the agent warm-start from a checkpoint file if it exists during initialisation and save to it during
+     * cleanup and after every given amount of episodes
+     *
+     * @param checkpointFile
+     *            The file to restore from and save to, null to stop using checkpoints
+     * @param checkpointInterval
+     *            The amount of episodes between saves, 0 to only save on cleanup
+     */
+    public void setCheckpointFile(final File checkpointFile, final int checkpointInterval) {
+        if (checkpointInterval < 0) {
+            throw new InvalidParameterException("The checkpoint interval may not be negative");
+        }
+
+        mCheckpointFile = checkpointFile;
+        mCheckpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Streams the search tree and Pareto front to a file. The checkpoint is written to a temporary file first and then
+     * moved into place, so an interrupted save leaves the previous checkpoint intact. May only be called in between
+     * episodes.
+     *
+     * @param file
+     *            The file to save to
+     * @throws IOException
+     *             When writing fails
+     */
+    public void saveCheckpoint(final File file) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            mSearchTree.writeCheckpoint(out);
+            mParetoArchive.writeCheckpoint(out);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException ex) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Replaces the search tree with the one from a checkpoint file and adds its Pareto front to the current one. Must
+     * be called after initialisation and in between episodes.
+     *
+     * @param file
+     *            The file to restore from
+     * @throws IOException
+     *             When reading fails or the checkpoint is invalid
+     */
+    public void loadCheckpoint(final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            mSearchTree.readCheckpoint(in);
+            mParetoArchive.readCheckpoint(in);
+        }
+    }
+
+    /**
+     * Saves the checkpoint to the checkpoint file, logging failures rather than interrupting the experiment
+     *
+     * @return True iff the checkpoint was saved
+     */
+    private boolean saveCheckpoint() {
+        if (mCheckpointFile == null) {
+            return false;
         }
 
-        mInventory = new boolean[mTaskSpec.getNumOfObjectives() - 1];
+        try {
+            saveCheckpoint(mCheckpointFile);
+            return true;
+        } catch (final IOException ex) {
+            Log.e("Could not save the MOMCTS checkpoint " + mCheckpointFile + ": " + ex.getMessage());
+            return false;
+        }
+    }
 
-        sInitialReward = new double[mTaskSpec.getNumOfObjectives()];
-        for (int i = 0; i < sInitialReward.length; ++i) {
-            if (i == 0) sInitialReward[i] = -6;
+    /**
+     * Creates the reward that actions start out with before being evaluated
+     *
+     * @param numObjectives
+     *            The amount of objectives
+     * @return The initial reward
+     */
+    static double[] createInitialReward(final int numObjectives) {
+        final double[] initialReward = new double[numObjectives];
+        for (int i = 0; i < initialReward.length; ++i) {
+            if (i == 0) initialReward[i] = -6;
 
-            sInitialReward[i] = 1;
+            initialReward[i] = 1;
         }
+
+        return initialReward;
     }
 
     @Override
     public Action agent_start(final Observation observation) {
         mRandomWalk = RandomWalkPhase.OUT;
         resetInventory();
-        final State currentState = generateState(observation, mInventory);
+        final State currentState = generateState(observation);
+        if (mRolloutEngine != null) {
+            mRolloutEngine.reset();
+        }
 
         if (!mSearchTree.isInitialised()) {
-            mSearchTree.initialise(currentState);
+            mSearchTree.initialise(currentState, mInitialReward);
         } else {
             mSearchTree.reset();
         }
 
         // start a new r_u
-        mR_u = new BenchmarkReward(new double[mTaskSpec.getNumOfObjectives()]);
+        mR_u = new double[mTaskSpec.getNumOfObjectives()];
 
         mStateHistory.add(mSearchTree.getCurrentNode());
         final DiscreteAction actionToTake = treeWalk(currentState);
@@ -119,18 +339,25 @@ public class MOMCTSAgent implements AgentInterface {
 
     @Override
     public Action agent_step(final Reward reward, final Observation observation) {
-        mR_u = handleReward(reward);
+        final long startTime = Metrics.start();
+        handleReward(reward);
+        if (mRolloutEngine != null && mRandomWalk != RandomWalkPhase.IN) {
+            mRolloutEngine.observe(observation.doubleArray[0], observation.doubleArray[1], reward.doubleArray);
+        }
 
-        final State currentState = generateState(observation, mInventory);
+        final State currentState = generateState(observation);
         final TreeNode currentNode = mSearchTree.getCurrentNode();
 
+        final long treeWalkStartTime = Metrics.start();
         final DiscreteAction actionToTake = treeWalk(currentState);
+        Metrics.TREE_WALK.stop(treeWalkStartTime);
 
         if (mRandomWalk != RandomWalkPhase.IN) {
             mActionHistory.add(actionToTake);
             mStateHistory.add(currentNode);
         }
 
+        Metrics.AGENT_STEP.stop(startTime);
         return actionToTake.convertToRLGlueAction();
     }
 
@@ -142,50 +369,53 @@ public class MOMCTSAgent implements AgentInterface {
                 // Tree building step 2, save the resulting state
                 mSearchTree.completeTreeBuilding(currentState);
                 mRandomWalk = RandomWalkPhase.IN;
+
+                if (mRolloutEngine != null) {
+                    simulateRollouts();
+                }
             }
 
             return randomWalk();
-        } else if (mSearchTree.getPerformedActionsForCurrentNode().size() == mAvailableActions.size()
-                || !mSearchTree.isLeafNode() && !progressiveWidening()) {
+        }
+
+        final TreeNode currentNode = mSearchTree.getCurrentNode();
+        final int numPerformedActions = currentNode.getNumPerformedActions();
+        if (numPerformedActions == mAvailableActions.size() || !currentNode.isLeaf() && !progressiveWidening()) {
 
-            final List<DiscreteAction> availableActions = mSearchTree.getPerformedActionsForCurrentNode();
             DiscreteAction choosenAction = null;
             double bestLookingActionValue = Double.NEGATIVE_INFINITY;
 
-            if (availableActions.size() > 1) {
-
-                for (final DiscreteAction consideredAction : availableActions) {
-                    final BenchmarkReward actionReward = mSearchTree.getCurrentNode().getRewardForAction(
-                            consideredAction);
-
-                    if (mParetoFront.isDominated(new Solution(actionReward.getRewardVector()))) {
-                        final double actionValue = mHypervolumeIndicator
-                                - calculateParetoCubeProjection(actionReward).sub(actionReward).getLength();
-                        if (actionValue > bestLookingActionValue) {
-                            bestLookingActionValue = actionValue;
-                            choosenAction = consideredAction;
-                        }
-                    } else {
-                        if (mHypervolumeIndicator > bestLookingActionValue) {
-                            bestLookingActionValue = mHypervolumeIndicator;
-                            choosenAction = consideredAction;
-                        }
+            if (numPerformedActions > 1) {
+
+                for (int i = 0; i < numPerformedActions; ++i) {
+                    final DiscreteAction consideredAction = currentNode.getPerformedAction(i);
+                    currentNode.copyRewardForAction(consideredAction, mActionReward);
+
+                    final double actionValue = mParetoArchive.getActionValue(mActionReward);
+                    if (actionValue > bestLookingActionValue) {
+                        bestLookingActionValue = actionValue;
+                        choosenAction = consideredAction;
                     }
                 }
 
             } else {
-                choosenAction = availableActions.get(0);
+                choosenAction = currentNode.getPerformedAction(0);
             }
 
             mSearchTree.performActionOnCurrentNode(choosenAction);
 
             return choosenAction;
         } else {
-            final List<DiscreteAction> nonAvailableActions = mSearchTree.getPerformedActionsForCurrentNode();
-            final List<DiscreteAction> availableActions = new ArrayList<DiscreteAction>(mAvailableActions);
-            availableActions.removeAll(nonAvailableActions);
+            // Pick a random action among the ones that were not performed yet
+            int choice = mRandom.nextInt(mAvailableActions.size() - numPerformedActions);
+            DiscreteAction choosenAction = null;
+            for (final DiscreteAction action : mAvailableActions) {
+                if (!currentNode.hasPerformedAction(action) && choice-- == 0) {
+                    choosenAction = action;
+                    break;
+                }
+            }
 
-            final DiscreteAction choosenAction = availableActions.get(Util.RNG.nextInt(availableActions.size()));
             // Tree building step 1, save the action
             mSearchTree.saveTreeBuildingAction(choosenAction);
             mRandomWalk = RandomWalkPhase.STARTED;
@@ -194,13 +424,28 @@ public class MOMCTSAgent implements AgentInterface {
         }
     }
 
+    /**
+     * Simulates a batch of rollouts from the state reached by the tree building step. The non-dominated returns are
+     * added to the Pareto front right away, while the mean return is kept to be backed up at the end of the episode.
+     */
+    private void simulateRollouts() {
+        mRolloutEngine.rollout(mNumRollouts, mR_u);
+
+        System.arraycopy(mRolloutEngine.getMeanReturn(), 0, mRolloutReturn, 0, mRolloutReturn.length);
+        mHasRolloutReturn = true;
+
+        for (int i = 0; i < mRolloutEngine.getNumNonDominatedReturns(); ++i) {
+            mParetoArchive.addSolution(new Solution(mRolloutEngine.getNonDominatedReturn(i).clone()));
+        }
+    }
+
     /**
      * Get the next random walk action
      *
      * @return The next action determined by random walk
      */
     private DiscreteAction randomWalk() {
-        return mAvailableActions.get(Util.RNG.nextInt(mAvailableActions.size()));
+        return mAvailableActions.get(mRandom.nextInt(mAvailableActions.size()));
     }
 
     /**
@@ -213,53 +458,21 @@ public class MOMCTSAgent implements AgentInterface {
         return (int) Math.pow(v_s + 1, 0.5) != (int) Math.pow(v_s, 0.5);
     }
 
-    /**
-     * Calculates the projection on the pareto front
-     *
-     * @param reward
-     *            The reward to project
-     * @return The projected point
-     */
-    private BenchmarkReward calculateParetoCubeProjection(final BenchmarkReward reward) {
-        double maxGradient = Double.NEGATIVE_INFINITY;
-        final BenchmarkReward referencePoint = new BenchmarkReward(Judge.standardReferencepoint(
-                mTaskSpec.getNumOfObjectives(), Integer.MAX_VALUE - 1));
-
-        for (final Solution solution : mParetoFront.getSolutions()) {
-            final BenchmarkReward solutionTemp = new BenchmarkReward(solution.getValues());
-            final BenchmarkReward gradients = pointwiseDivision(solutionTemp.sub(referencePoint),
-                    reward.sub(referencePoint));
-            final double gradient = gradients.getMinimumRewardEntry();
-
-            if (maxGradient < gradient) {
-                maxGradient = gradient;
-            }
-        }
-
-        return reward.sub(referencePoint).mult(maxGradient).add(referencePoint);
-    }
-
-    /**
-     * Calculates the pointwise division of a reward with a solution
-     *
-     * @param solution
-     *            The solution set
-     * @param reward
-     *            The reward
-     * @return A pointwise division from the reward with the solution
-     */
-    private BenchmarkReward pointwiseDivision(final BenchmarkReward solution, final BenchmarkReward reward) {
-        final double[] result = new double[reward.getDimension()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = solution.getRewardForObjective(i) / reward.getRewardForObjective(i);
-        }
-
-        return new BenchmarkReward(result);
-    }
-
     @Override
     public void agent_end(final Reward reward) {
-        mR_u = handleReward(reward);
+        handleReward(reward);
+
+        // The real return counts as one more rollout next to the simulated ones
+        final double[] backupReturn;
+        if (mHasRolloutReturn) {
+            for (int i = 0; i < mRolloutReturn.length; ++i) {
+                mRolloutReturn[i] = (mRolloutReturn[i] * mNumRollouts + mR_u[i]) / (mNumRollouts + 1);
+            }
+            backupReturn = mRolloutReturn;
+            mHasRolloutReturn = false;
+        } else {
+            backupReturn = mR_u;
+        }
 
         // Update r*head*_s,a
         for (int historyPosition = 0; historyPosition < mStateHistory.size(); ++historyPosition) {
@@ -267,13 +480,7 @@ public class MOMCTSAgent implements AgentInterface {
 
             final DiscreteAction takenAction = mActionHistory.get(historyPosition);
 
-            final BenchmarkReward oldReward = toEvaluateNode.getRewardForAction(takenAction);
-            final int actionCounter = toEvaluateNode.getNumOfTimesActionWasTaken(takenAction);
-
-            final BenchmarkReward newReward = oldReward.mult(actionCounter).add(mR_u).mult(1.0d / (actionCounter + 1));
-            toEvaluateNode.setRewardForAction(takenAction, newReward);
-
-            toEvaluateNode.increaseActionCounterFor(takenAction);
+            toEvaluateNode.addReturnForAction(takenAction, backupReturn);
             toEvaluateNode.increaseVisitationCount();
         }
 
@@ -281,23 +488,30 @@ public class MOMCTSAgent implements AgentInterface {
         mActionHistory.clear();
 
         // Build pareto front
-        final Solution currentSolution = mR_u.toSolution();
-        if (!mParetoFront.isDominated(currentSolution) && mParetoFront.addSolution(currentSolution)) {
-            mParetoFront.pruneDominatedSolutions();
-            mHypervolumeIndicator = Judge.hypervolume(mParetoFront, Integer.MAX_VALUE - 1);
-        }
+        mParetoArchive.addSolution(new Solution(mR_u));
 
         mRandomWalk = RandomWalkPhase.OUT;
         mR_u = null;
+
+        ++mNumEpisodes;
+        if (mCheckpointInterval > 0 && mNumEpisodes % mCheckpointInterval == 0) {
+            saveCheckpoint();
+        }
     }
 
     @Override
     public String agent_message(final String message) {
+        if (SolutionSetCodec.Encoder.isRequest(message)) {
+            return mSolutionSetEncoder.encode(mParetoArchive.getParetoFront(), message);
+        }
+
         switch (message) {
             case "isConverged":
                 return "false";
             case "getSolutionSet":
-                return mParetoFront.toString();
+                return mParetoArchive.toString();
+            case "saveCheckpoint":
+                return Boolean.toString(saveCheckpoint());
             default:
                 return "Cannot parse message";
         }
@@ -305,6 +519,7 @@ public class MOMCTSAgent implements AgentInterface {
 
     @Override
     public void agent_cleanup() {
+        saveCheckpoint();
         resetInventory();
 
         mStateHistory.clear();
@@ -312,50 +527,47 @@ public class MOMCTSAgent implements AgentInterface {
 
         mRandomWalk = RandomWalkPhase.OUT;
         mR_u = null;
+        mHasRolloutReturn = false;
+        mRolloutEngine = null;
 
         mAvailableActions.clear();
         mSearchTree.clear();
     }
 
     /**
-     * Calculate the appropriate reward and the current inventory based on the last observed reward
+     * Accumulate the last observed reward and calculate the current inventory based on it
      *
      * @param reward
      *            The last observed reward
-     * @return The last observed reward
      */
-    private BenchmarkReward handleReward(final Reward reward) {
+    private void handleReward(final Reward reward) {
         // Calculate the current inventory
         for (int i = 1; i < reward.doubleArray.length; ++i) {
             if (reward.doubleArray[i] != 0) {
-                mInventory[i - 1] = true;
+                mInventory |= 1 << (i - 1);
             }
         }
 
-        return mR_u.add(new BenchmarkReward(reward.doubleArray));
+        VectorMath.add(mR_u, reward.doubleArray);
     }
 
     /**
-     * Generate the current state from the observation and the current inventory
+     * Generate the current state from the observation and the current inventory. States are shared between steps, so
+     * only the first visit of a state allocates it.
      *
      * @param observation
      *            The current observation
      * @return The current state
      */
-    public State generateState(final Observation observation, final boolean[] inventory) {
-        final double[] observationArray = observation.doubleArray;
-
-        final Location currentLocation = new Location(observationArray[0], observationArray[1]);
-        return new State(currentLocation, Arrays.copyOf(inventory, inventory.length));
+    public State generateState(final Observation observation) {
+        return mDecoder.getState(mDecoder.getKey(observation, mInventory));
     }
 
     /**
      * Resets the inventory to empty
      */
     private void resetInventory() {
-        for (int i = 0; i < mInventory.length; ++i) {
-            mInventory[i] = false;
-        }
+        mInventory = 0;
     }
 
     public static void main(final String[] args) {
@@ -0,0 +1,392 @@
+package nl.uva.morlb.rg.agent.momcts;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.uva.morlb.rg.agent.model.VectorMath;
+import nl.uva.morlb.rg.environment.ResourceGathering;
+import nl.uva.morlb.rg.environment.SdpCollection;
+import nl.uva.morlb.rg.environment.model.DiscreteAction;
+import nl.uva.morlb.rg.environment.model.Parameters;
+import nl.uva.morlb.rg.experiment.model.Solution;
+import nl.uva.morlb.util.Log;
+import nl.uva.morlb.util.Util;
+
+/**
+ * Multi-Objective Monte-Carlo Tree Search running tree walks in parallel. Every worker simulates episodes on its own
+ * copy of the resource gathering problem, while all workers share one search tree and Pareto archive. Walks in progress
+ * count as virtual losses for the actions they take so that concurrent walks spread over different actions. After each
+ * tree building step, a batch of random walks is simulated by a {@link RolloutEngine}.
+ */
+public class ParallelMOMCTS {
+
+    /** The amount of episodes per worker between two enforcements of the node budget **/
+    private static final int EPISODES_PER_ROUND = 1000;
+
+    /** The parameters of the simulated problem **/
+    private final Parameters mParameters;
+
+    /** The amount of rollouts simulated after each tree building step **/
+    private final int mNumRollouts;
+
+    /** The search tree shared by all workers **/
+    private final SearchTree mSearchTree;
+
+    /** The Pareto front shared by all workers **/
+    private final ParetoArchive mParetoArchive;
+
+    /** The actions available in the problem **/
+    private final List<DiscreteAction> mAvailableActions = new ArrayList<DiscreteAction>();
+
+    /** The return assumed for walks that are still in progress: timing out without collecting anything **/
+    private final double[] mVirtualLossReturn;
+
+    /** The workers running the tree walks **/
+    private final List<Worker> mWorkers = new ArrayList<Worker>();
+
+    /** The thread pool the workers run on **/
+    private final ExecutorService mExecutor;
+
+    /** The amount of episodes left in the current round **/
+    private final AtomicLong mRoundEpisodesLeft = new AtomicLong();
+
+    /** The total amount of episodes completed **/
+    private final AtomicLong mNumEpisodes = new AtomicLong();
+
+    /**
+     * Creates a parallel search for a discrete problem that simulates a single rollout after each tree building step
+     *
+     * @param parameters
+     *            The parameters of the problem to simulate
+     * @param numWorkers
+     *            The amount of concurrent tree walks
+     * @param nodeBudget
+     *            The maximum amount of nodes in the search tree
+     * @param useTranspositions
+     *            Whether the search tree should share nodes for the same state reached at the same depth
+     */
+    public ParallelMOMCTS(final Parameters parameters, final int numWorkers, final long nodeBudget,
+            final boolean useTranspositions) {
+        this(parameters, numWorkers, 1, nodeBudget, useTranspositions);
+    }
+
+    /**
+     * Creates a parallel search for a discrete problem
+     *
+     * @param parameters
+     *            The parameters of the problem to simulate
+     * @param numWorkers
+     *            The amount of concurrent tree walks
+     * @param numRollouts
+     *            The amount of rollouts to simulate after each tree building step
+     * @param nodeBudget
+     *            The maximum amount of nodes in the search tree
+     * @param useTranspositions
+     *            Whether the search tree should share nodes for the same state reached at the same depth
+     */
+    public ParallelMOMCTS(final Parameters parameters, final int numWorkers, final int numRollouts,
+            final long nodeBudget, final boolean useTranspositions) {
+        if (parameters.continuousStatesActions) {
+            throw new InvalidParameterException("Parallel MOMCTS only supports discrete problems");
+        }
+        if (numWorkers < 1) {
+            throw new InvalidParameterException("At least one worker is required");
+        }
+        if (numRollouts < 1) {
+            throw new InvalidParameterException("At least one rollout is required");
+        }
+
+        mParameters = parameters;
+        mNumRollouts = numRollouts;
+        final int numObjectives = parameters.numResourceTypes + 1;
+
+        for (int action = (parameters.pickUpOnCollect ? 1 : 0); action <= parameters.actionMax; ++action) {
+            mAvailableActions.add(DiscreteAction.fromOrdinal(action));
+        }
+
+        mVirtualLossReturn = new double[numObjectives];
+        mVirtualLossReturn[0] = -parameters.horizon;
+
+        mParetoArchive = new ParetoArchive(numObjectives);
+        mSearchTree = new SearchTree(nodeBudget, useTranspositions);
+        mSearchTree.initialise(new ResourceGathering(parameters).getCurrentState(),
+                MOMCTSAgent.createInitialReward(numObjectives));
+
+        for (int i = 0; i < numWorkers; ++i) {
+            mWorkers.add(new Worker(new Random(Util.RNG.nextLong())));
+        }
+        mExecutor = Executors.newFixedThreadPool(numWorkers);
+    }
+
+    /**
+     * Runs the given amount of episodes spread over all workers. Returns early when interrupted.
+     *
+     * @param numEpisodes
+     *            The amount of episodes to run
+     */
+    public void run(final long numEpisodes) {
+        long episodesLeft = numEpisodes;
+        while (episodesLeft > 0) {
+            final long roundEpisodes = Math.min(episodesLeft, (long) EPISODES_PER_ROUND * mWorkers.size());
+            mRoundEpisodesLeft.set(roundEpisodes);
+
+            try {
+                for (final Future<Void> result : mExecutor.invokeAll(mWorkers)) {
+                    result.get();
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
+            }
+
+            // No walks are in progress in between rounds, so subtrees can safely be recycled
+            mSearchTree.enforceNodeBudget();
+            episodesLeft -= roundEpisodes;
+        }
+    }
+
+    /**
+     * Stops the worker threads, the search cannot be run afterwards
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Get the Pareto front found so far
+     * @return The Pareto archive
+     */
+    public ParetoArchive getParetoArchive() {
+        return mParetoArchive;
+    }
+
+    /**
+     * Get the search tree shared by the workers
+     * @return The search tree
+     */
+    public SearchTree getSearchTree() {
+        return mSearchTree;
+    }
+
+    /**
+     * Get the total amount of completed episodes
+     * @return The amount of episodes
+     */
+    public long getNumEpisodes() {
+        return mNumEpisodes.get();
+    }
+
+    /**
+     * A worker that runs episodes with its own problem instance and random number generator
+     */
+    private class Worker implements Callable<Void> {
+
+        /** The random number generator for the tree and random walks **/
+        private final Random mRng;
+
+        /** The problem this worker simulates **/
+        private final ResourceGathering mProblem;
+
+        /** The engine simulating the rollouts after the tree walk **/
+        private final RolloutEngine mRolloutEngine;
+
+        /** The nodes visited by the tree walk of the current episode **/
+        private final List<TreeNode> mNodeHistory = new ArrayList<TreeNode>();
+
+        /** The actions taken by the tree walk of the current episode **/
+        private final List<DiscreteAction> mActionHistory = new ArrayList<DiscreteAction>();
+
+        /** The actions that have not been expanded yet in the current node **/
+        private final DiscreteAction[] mCandidateActions = new DiscreteAction[TreeNode.NUM_ACTIONS];
+
+        /** The accumulated reward over the current episode **/
+        private final double[] mReturn;
+
+        /** The buffer that action rewards are copied into during selection **/
+        private final double[] mActionReward;
+
+        /**
+         * Creates a worker
+         *
+         * @param rng
+         *            The random number generator for the problem and the walks
+         */
+        public Worker(final Random rng) {
+            mRng = rng;
+            mProblem = new ResourceGathering(mParameters, rng);
+            mRolloutEngine = new RolloutEngine(mParameters, mAvailableActions, rng);
+            mReturn = new double[mVirtualLossReturn.length];
+            mActionReward = new double[mVirtualLossReturn.length];
+        }
+
+        @Override
+        public Void call() {
+            while (mRoundEpisodesLeft.getAndDecrement() > 0) {
+                runEpisode();
+                mNumEpisodes.incrementAndGet();
+            }
+
+            return null;
+        }
+
+        /**
+         * Runs a single episode consisting of a tree walk followed by a batch of simulated rollouts, after which the
+         * statistics of the walk are backed up
+         */
+        private void runEpisode() {
+            mProblem.reset();
+            for (int i = 0; i < mReturn.length; ++i) {
+                mReturn[i] = 0;
+            }
+
+            TreeNode node = mSearchTree.getRootNode();
+            boolean expanded = false;
+            int stepCount = 0;
+            while (!mProblem.isTerminal(mProblem.getCurrentState()) && stepCount++ < mParameters.horizon) {
+                // Gather the actions that can still be expanded
+                int numCandidates = 0;
+                final int numPerformedActions = node.getNumPerformedActions();
+                if (numPerformedActions == 0 || progressiveWidening(node)) {
+                    for (final DiscreteAction action : mAvailableActions) {
+                        if (!node.hasPerformedAction(action)) {
+                            mCandidateActions[numCandidates++] = action;
+                        }
+                    }
+                }
+
+                if (numCandidates == 0) {
+                    // Follow the tree policy
+                    final DiscreteAction action = selectAction(node, numPerformedActions);
+                    visit(node, action);
+                    performAction(action);
+                    node = node.getNextNodeForAction(action);
+                } else {
+                    // Tree building step, the rollouts start afterwards
+                    final DiscreteAction action = mCandidateActions[mRng.nextInt(numCandidates)];
+                    visit(node, action);
+                    performAction(action);
+                    mSearchTree.expand(node, action, mProblem.getCurrentState());
+                    expanded = true;
+                    break;
+                }
+            }
+
+            final double[] backupReturn;
+            if (expanded) {
+                mRolloutEngine.setState(mProblem.getCurrentState(), stepCount);
+                mRolloutEngine.rollout(mNumRollouts, mReturn);
+                backupReturn = mRolloutEngine.getMeanReturn();
+
+                for (int i = 0; i < mRolloutEngine.getNumNonDominatedReturns(); ++i) {
+                    mParetoArchive.addSolution(new Solution(mRolloutEngine.getNonDominatedReturn(i).clone()));
+                }
+            } else {
+                backupReturn = mReturn;
+                mParetoArchive.addSolution(new Solution(mReturn.clone()));
+            }
+
+            // Update r*head*_s,a and release the virtual losses
+            for (int historyPosition = 0; historyPosition < mNodeHistory.size(); ++historyPosition) {
+                mNodeHistory.get(historyPosition).completeVirtualVisit(mActionHistory.get(historyPosition),
+                        backupReturn);
+            }
+            mNodeHistory.clear();
+            mActionHistory.clear();
+        }
+
+        /**
+         * Selects the performed action with the best value according to the Pareto archive
+         *
+         * @param node
+         *            The node to select an action in
+         * @param numPerformedActions
+         *            The amount of performed actions to consider
+         * @return The selected action
+         */
+        private DiscreteAction selectAction(final TreeNode node, final int numPerformedActions) {
+            DiscreteAction choosenAction = node.getPerformedAction(0);
+            double bestLookingActionValue = Double.NEGATIVE_INFINITY;
+
+            if (numPerformedActions > 1) {
+                for (int i = 0; i < numPerformedActions; ++i) {
+                    final DiscreteAction consideredAction = node.getPerformedAction(i);
+                    node.copyRewardForAction(consideredAction, mVirtualLossReturn, mActionReward);
+                    final double actionValue = mParetoArchive.getActionValue(mActionReward);
+                    if (actionValue > bestLookingActionValue) {
+                        bestLookingActionValue = actionValue;
+                        choosenAction = consideredAction;
+                    }
+                }
+            }
+
+            return choosenAction;
+        }
+
+        /**
+         * Registers a tree walk step as in progress
+         *
+         * @param node
+         *            The node the action is taken in
+         * @param action
+         *            The action taken
+         */
+        private void visit(final TreeNode node, final DiscreteAction action) {
+            node.addVirtualLoss(action);
+            mNodeHistory.add(node);
+            mActionHistory.add(action);
+        }
+
+        /**
+         * Performs an action in the problem and accumulates the reward
+         *
+         * @param action
+         *            The action to perform
+         */
+        private void performAction(final DiscreteAction action) {
+            VectorMath.add(mReturn, mProblem.performAction(action));
+        }
+
+        /**
+         * Calculates if the progressive widening condition is met
+         *
+         * @param node
+         *            The node to check
+         * @return True if we should do progressive widening, false if not
+         */
+        private boolean progressiveWidening(final TreeNode node) {
+            final int v_s = node.getVisitationCount();
+            return (int) Math.pow(v_s + 1, 0.5) != (int) Math.pow(v_s, 0.5);
+        }
+    }
+
+    public static void main(final String[] args) {
+        final int numWorkers = (args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime()
+                .availableProcessors());
+        final long numEpisodes = (args.length > 1 ? Long.parseLong(args[1]) : 100000);
+        final int numRollouts = (args.length > 2 ? Integer.parseInt(args[2]) : 1);
+
+        final ParallelMOMCTS search = new ParallelMOMCTS(SdpCollection.getLargeProblem(), numWorkers, numRollouts,
+                SearchTree.UNLIMITED_NODES, false);
+
+        final long startTime = System.currentTimeMillis();
+        search.run(numEpisodes);
+        final long duration = Math.max(1, System.currentTimeMillis() - startTime);
+
+        Log.i("Episodes: " + search.getNumEpisodes() + " (" + (search.getNumEpisodes() * 1000 / duration) + "/s)");
+        Log.i("Nodes: " + search.getSearchTree().getNumNodes());
+        Log.i("Solution set: " + search.getParetoArchive());
+
+        search.shutdown();
+    }
+
+}
@@ -0,0 +1,257 @@
+package nl.uva.morlb.rg.agent.momcts;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import nl.uva.morlb.rg.agent.model.VectorMath;
+import nl.uva.morlb.rg.experiment.IncrementalHypervolume;
+import nl.uva.morlb.rg.experiment.Judge;
+import nl.uva.morlb.rg.experiment.model.NDTreeSolutionSet;
+import nl.uva.morlb.rg.experiment.model.Solution;
+import nl.uva.morlb.rg.experiment.model.SolutionSet;
+
+/**
+ * The Pareto front of returns found by MOMCTS together with its hypervolume indicator. Additions are serialised, while
+ * readers see a consistent snapshot of the front and indicator, so the archive can be shared by concurrent tree walks.
+ * Additions only discard the snapshot, which the first reader afterwards recreates from the solutions of the front, so
+ * a series of additions without reads in between costs no more than the additions themselves. Readers only lock while
+ * the snapshot is recreated. The indicator is updated with the exclusive contribution of every new return rather than
+ * recalculated for the whole front.
+ */
+public class ParetoArchive {
+
+    /** The horizon used for the hypervolume reference point **/
+    private static final int REFERENCE_HORIZON = Integer.MAX_VALUE - 1;
+
+    /** The reference point of the hypervolume indicator **/
+    private final double[] mReferencePoint;
+
+    /** The hypervolume indicator of the front, updated on every addition **/
+    private final IncrementalHypervolume mHypervolumeIndicator;
+
+    /** The front in which additions are tested for dominance, only accessed while adding **/
+    private final NDTreeSolutionSet mArchive;
+
+    /** The current front and indicator, or null if it has to be recreated after a change **/
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * Creates an empty archive
+     *
+     * @param numObjectives The amount of objectives of the returns
+     */
+    public ParetoArchive(final int numObjectives) {
+        mReferencePoint = Judge.standardReferencepoint(numObjectives, REFERENCE_HORIZON);
+        mHypervolumeIndicator = new IncrementalHypervolume(mReferencePoint);
+        mArchive = new NDTreeSolutionSet(numObjectives);
+        mSnapshot = null;
+    }
+
+    /**
+     * Adds a return to the front if it is not dominated and adds its contribution to the hypervolume indicator
+     *
+     * @param solution The return to add
+     * @return True iff the front changed
+     */
+    public synchronized boolean addSolution(final Solution solution) {
+        if (!mArchive.addSolution(solution)) {
+            return false;
+        }
+
+        mHypervolumeIndicator.add(solution.getValues());
+        mSnapshot = null;
+        return true;
+    }
+
+    /**
+     * Get the snapshot of the current front and indicator, recreating it if the front changed since the last one
+     *
+     * @return The snapshot
+     */
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = mSnapshot;
+                if (snapshot == null) {
+                    final double hypervolume = (mArchive.getNumSolutions() == 0 ? Double.NEGATIVE_INFINITY
+                            : mHypervolumeIndicator.getHypervolume());
+                    snapshot = new Snapshot(mArchive.getSolutions(), mReferencePoint.length, hypervolume,
+                            mReferencePoint);
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the solutions of the current front to a checkpoint
+     *
+     * @param out The checkpoint to write to
+     * @throws IOException When writing fails
+     */
+    public void writeCheckpoint(final DataOutput out) throws IOException {
+        final double[][] front = getSnapshot().front;
+        out.writeInt(mReferencePoint.length);
+        out.writeInt(front.length);
+        for (final double[] values : front) {
+            for (final double value : values) {
+                out.writeDouble(value);
+            }
+        }
+    }
+
+    /**
+     * Adds the solutions from a checkpoint written by {@link #writeCheckpoint(DataOutput)} to this archive
+     *
+     * @param in The checkpoint to read from
+     * @throws IOException When reading fails or the checkpoint does not match the amount of objectives
+     */
+    public void readCheckpoint(final DataInput in) throws IOException {
+        if (in.readInt() != mReferencePoint.length) {
+            throw new IOException("Pareto archive checkpoint has a different amount of objectives");
+        }
+
+        final int numSolutions = in.readInt();
+        for (int i = 0; i < numSolutions; ++i) {
+            final double[] values = new double[mReferencePoint.length];
+            for (int dim = 0; dim < values.length; ++dim) {
+                values[dim] = in.readDouble();
+            }
+            addSolution(new Solution(values));
+        }
+    }
+
+    /**
+     * Get the current Pareto front, which may not be modified
+     * @return The Pareto front
+     */
+    public SolutionSet getParetoFront() {
+        return getSnapshot().getParetoFront();
+    }
+
+    /**
+     * Get the hypervolume indicator of the current Pareto front
+     * @return The hypervolume indicator
+     */
+    public double getHypervolume() {
+        return getSnapshot().hypervolume;
+    }
+
+    /**
+     * Calculates the value of an action's average reward used by the tree policy. Non-dominated rewards get the
+     * hypervolume indicator, dominated rewards are penalised by their distance to the Pareto cube. Does not allocate.
+     *
+     * @param actionReward The average reward of the action
+     * @return The value of the action
+     */
+    public double getActionValue(final double[] actionReward) {
+        final Snapshot snapshot = getSnapshot();
+        if (snapshot.isDominated(actionReward)) {
+            return snapshot.hypervolume
+                    - VectorMath.paretoCubeProjectionDistance(snapshot.shiftedFront, snapshot.shiftedFront.length,
+                            actionReward, mReferencePoint);
+        } else {
+            return snapshot.hypervolume;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getParetoFront().toString();
+    }
+
+    /**
+     * An immutable combination of a front and its hypervolume indicator, with the front's values laid out for the tree
+     * policy
+     */
+    private static class Snapshot {
+
+        /** The solutions in the front, which are not modified anymore **/
+        private final List<Solution> solutions;
+
+        /** The amount of objectives of the solutions **/
+        private final int numObjectives;
+
+        /** The Pareto front as a solution set, or null if it was not requested yet **/
+        private volatile SolutionSet paretoFront = null;
+
+        /** The hypervolume indicator of the front **/
+        private final double hypervolume;
+
+        /** The values of the solutions in the front **/
+        private final double[][] front;
+
+        /** The values of the solutions in the front minus the reference point **/
+        private final double[][] shiftedFront;
+
+        /**
+         * Creates a snapshot of a front
+         *
+         * @param solutions The solutions in the front, which may not be modified anymore
+         * @param numObjectives The amount of objectives of the solutions
+         * @param hypervolume The hypervolume indicator of the front
+         * @param referencePoint The reference point of the hypervolume indicator
+         */
+        public Snapshot(final List<Solution> solutions, final int numObjectives, final double hypervolume,
+                final double[] referencePoint) {
+            this.solutions = solutions;
+            this.numObjectives = numObjectives;
+            this.hypervolume = hypervolume;
+
+            front = new double[solutions.size()][];
+            shiftedFront = new double[solutions.size()][];
+            for (int i = 0; i < front.length; ++i) {
+                front[i] = solutions.get(i).getValues();
+                shiftedFront[i] = VectorMath.subScaled(new double[front[i].length], front[i], referencePoint, 1.0d);
+            }
+        }
+
+        /**
+         * Get the front as a solution set, which is created when first requested
+         *
+         * @return The Pareto front, which may not be modified
+         */
+        public SolutionSet getParetoFront() {
+            SolutionSet result = paretoFront;
+            if (result == null) {
+                // The solutions are mutually non-dominated, so the tree only has to index them
+                result = new NDTreeSolutionSet(numObjectives);
+                for (final Solution solution : solutions) {
+                    result.addSolution(solution);
+                }
+                paretoFront = result;
+            }
+            return result;
+        }
+
+        /**
+         * Checks if a vector is dominated by a different solution in the front, like
+         * {@link SolutionSet#isDominated(Solution)}
+         *
+         * @param values The vector to check
+         * @return True iff another solution in the front is at least as good in every objective
+         */
+        public boolean isDominated(final double[] values) {
+            solutionCheck:
+            for (final double[] otherValues : front) {
+                boolean equal = true;
+                for (int dim = 0; dim < values.length; ++dim) {
+                    if (otherValues[dim] < values[dim]) {
+                        continue solutionCheck;
+                    }
+                    equal &= (otherValues[dim] == values[dim]);
+                }
+
+                if (!equal) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
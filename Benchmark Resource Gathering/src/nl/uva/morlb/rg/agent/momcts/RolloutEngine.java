@@ -0,0 +1,373 @@
+package nl.uva.morlb.rg.agent.momcts;
+
+import java.security.InvalidParameterException;
+import java.util.List;
+import java.util.Random;
+
+import nl.uva.morlb.rg.environment.model.DiscreteAction;
+import nl.uva.morlb.rg.environment.model.Location;
+import nl.uva.morlb.rg.environment.model.Parameters;
+import nl.uva.morlb.rg.environment.model.Resource;
+import nl.uva.morlb.rg.environment.model.State;
+
+/**
+ * Runs the random walk phase of MOMCTS directly on a copy of the resource gathering dynamics. The problem is unpacked
+ * into primitive arrays so that a batch of random walks from the same state runs in a tight loop without creating any
+ * states, locations or reward objects. The transitions and rewards follow those of the resource gathering problem for
+ * discrete, fully observable problems.
+ */
+public class RolloutEngine {
+
+    /** The parameters of the simulated problem **/
+    private final Parameters mParameters;
+
+    /** The random number generator for the walks, action failures and stochastic rewards **/
+    private final Random mRng;
+
+    /** The amount of objectives **/
+    private final int mNumObjectives;
+
+    /** The ordinals of the actions the random walk picks from **/
+    private final int[] mAvailableActions;
+
+    /** The x and y changes of every action, indexed by ordinal **/
+    private final double[] mActionX;
+    private final double[] mActionY;
+
+    /** The locations, objectives and reward ranges of the resources **/
+    private final double[] mResourceX;
+    private final double[] mResourceY;
+    private final int[] mResourceObjective;
+    private final double[] mResourceMin;
+    private final double[] mResourceMax;
+
+    /** The index of the first resource at the same location as a resource, used to count picked up locations **/
+    private final int[] mResourceLocation;
+
+    /** The agent's location of the state to start the walks from **/
+    private double mStartX;
+    private double mStartY;
+
+    /** The picked up resources of the state to start the walks from **/
+    private final boolean[] mStartPickedUp;
+
+    /** The amount of steps taken before the state to start the walks from **/
+    private int mStartStepCount;
+
+    /** The picked up resources during a walk **/
+    private final boolean[] mPickedUp;
+
+    /** The per objective reward range collected in a single step **/
+    private final double[] mStepMin;
+    private final double[] mStepMax;
+
+    /** Scratch space for counting picked up locations **/
+    private final boolean[] mLocationCounted;
+
+    /** The returns of the last batch of walks **/
+    private double[][] mReturns = new double[0][];
+
+    /** The mean return of the last batch of walks **/
+    private final double[] mMeanReturn;
+
+    /** The indices of the non-dominated returns of the last batch of walks **/
+    private int[] mNonDominated = new int[0];
+
+    /** The amount of non-dominated returns of the last batch of walks **/
+    private int mNumNonDominated = 0;
+
+    /**
+     * Creates an engine simulating the given problem
+     *
+     * @param parameters The parameters of a discrete problem
+     * @param availableActions The actions the random walk picks from
+     * @param rng The random number generator for the walks and the problem's stochasticity
+     */
+    public RolloutEngine(final Parameters parameters, final List<DiscreteAction> availableActions, final Random rng) {
+        if (parameters.continuousStatesActions) {
+            throw new InvalidParameterException("Rollouts can only be simulated for discrete problems");
+        }
+
+        mParameters = parameters;
+        mRng = rng;
+        mNumObjectives = parameters.numResourceTypes + 1;
+
+        mAvailableActions = new int[availableActions.size()];
+        for (int i = 0; i < mAvailableActions.length; ++i) {
+            mAvailableActions[i] = availableActions.get(i).ordinal();
+        }
+
+        final DiscreteAction[] actions = DiscreteAction.values();
+        mActionX = new double[actions.length];
+        mActionY = new double[actions.length];
+        for (final DiscreteAction action : actions) {
+            mActionX[action.ordinal()] = action.getLocation().x;
+            mActionY[action.ordinal()] = action.getLocation().y;
+        }
+
+        final int numResources = parameters.resources.size();
+        mResourceX = new double[numResources];
+        mResourceY = new double[numResources];
+        mResourceObjective = new int[numResources];
+        mResourceMin = new double[numResources];
+        mResourceMax = new double[numResources];
+        mResourceLocation = new int[numResources];
+        for (int i = 0; i < numResources; ++i) {
+            final Resource resource = parameters.resources.get(i);
+            mResourceX[i] = resource.getLocation().x;
+            mResourceY[i] = resource.getLocation().y;
+            mResourceObjective[i] = resource.getType() + 1;
+            mResourceMin[i] = resource.getReward().min;
+            mResourceMax[i] = resource.getReward().max;
+
+            mResourceLocation[i] = i;
+            for (int other = 0; other < i; ++other) {
+                if (resource.getLocation().equals(parameters.resources.get(other).getLocation())) {
+                    mResourceLocation[i] = other;
+                    break;
+                }
+            }
+        }
+
+        mStartPickedUp = new boolean[numResources];
+        mPickedUp = new boolean[numResources];
+        mLocationCounted = new boolean[numResources];
+        mStepMin = new double[mNumObjectives];
+        mStepMax = new double[mNumObjectives];
+        mMeanReturn = new double[mNumObjectives];
+    }
+
+    /**
+     * Sets the state to start the walks from to the initial state of the problem
+     */
+    public void reset() {
+        mStartX = 0;
+        mStartY = 0;
+        for (int i = 0; i < mStartPickedUp.length; ++i) {
+            mStartPickedUp[i] = false;
+        }
+        mStartStepCount = 0;
+    }
+
+    /**
+     * Sets the state to start the walks from to a state of the problem
+     *
+     * @param state The state of the problem
+     * @param stepCount The amount of steps taken to reach the state
+     */
+    public void setState(final State state, final int stepCount) {
+        final Location agent = state.getAgent();
+        mStartX = agent.x;
+        mStartY = agent.y;
+        for (int i = 0; i < mStartPickedUp.length; ++i) {
+            mStartPickedUp[i] = state.isPickedUp(i);
+        }
+        mStartStepCount = stepCount;
+    }
+
+    /**
+     * Advances the state to start the walks from along an observed transition of the real problem. The agent's location
+     * is taken from the observation, while resources are marked as picked up when the reward of their objective shows
+     * they were collected.
+     *
+     * @param x The observed x coordinate of the agent
+     * @param y The observed y coordinate of the agent
+     * @param reward The reward received for the transition
+     */
+    public void observe(final double x, final double y, final double[] reward) {
+        if (mParameters.pickUpOnCollect) {
+            for (int i = 0; i < mStartPickedUp.length; ++i) {
+                if (!mStartPickedUp[i] && reward[mResourceObjective[i]] != 0 && isCollected(i, x, y)) {
+                    mStartPickedUp[i] = true;
+                }
+            }
+        }
+
+        mStartX = x;
+        mStartY = y;
+        ++mStartStepCount;
+    }
+
+    /**
+     * Runs a batch of random walks from the current start state until a terminal state or the horizon is reached. The
+     * results are available through {@link #getMeanReturn()} and {@link #getNonDominatedReturn(int)}.
+     *
+     * @param numRollouts The amount of walks to run
+     * @param prefixReturn The return accumulated before the start state, added to every walk's return
+     */
+    public void rollout(final int numRollouts, final double[] prefixReturn) {
+        if (numRollouts < 1) {
+            throw new InvalidParameterException("At least one rollout is required");
+        }
+
+        if (mReturns.length < numRollouts) {
+            mReturns = new double[numRollouts][mNumObjectives];
+            mNonDominated = new int[numRollouts];
+        }
+
+        for (int i = 0; i < mNumObjectives; ++i) {
+            mMeanReturn[i] = 0;
+        }
+
+        for (int rollout = 0; rollout < numRollouts; ++rollout) {
+            final double[] episodeReturn = mReturns[rollout];
+            System.arraycopy(prefixReturn, 0, episodeReturn, 0, mNumObjectives);
+            simulate(episodeReturn);
+
+            for (int i = 0; i < mNumObjectives; ++i) {
+                mMeanReturn[i] += episodeReturn[i] / numRollouts;
+            }
+        }
+
+        // Keep the returns that are not dominated by another one in the batch
+        mNumNonDominated = 0;
+        returnCheck:
+        for (int rollout = 0; rollout < numRollouts; ++rollout) {
+            for (int other = 0; other < numRollouts; ++other) {
+                if (other != rollout && dominates(mReturns[other], mReturns[rollout], other < rollout)) {
+                    continue returnCheck;
+                }
+            }
+            mNonDominated[mNumNonDominated++] = rollout;
+        }
+    }
+
+    /**
+     * Simulates a single random walk from the start state
+     *
+     * @param episodeReturn The return to accumulate the rewards in
+     */
+    private void simulate(final double[] episodeReturn) {
+        double x = mStartX;
+        double y = mStartY;
+        System.arraycopy(mStartPickedUp, 0, mPickedUp, 0, mPickedUp.length);
+
+        for (int step = mStartStepCount; step < mParameters.horizon && !isTerminal(x, y); ++step) {
+            final int action = mAvailableActions[mRng.nextInt(mAvailableActions.length)];
+
+            // Add the failure action like the problem does
+            double moveX = mActionX[action];
+            double moveY = mActionY[action];
+            if (mRng.nextDouble() < mParameters.actionFailProb) {
+                final int failure = mRng.nextInt(mParameters.actionMax - 1) + 1;
+                moveX += mActionX[failure];
+                moveY += mActionY[failure];
+            }
+            x = Math.max(Math.min(x + moveX, mParameters.maxX), 0);
+            y = Math.max(Math.min(y + moveY, mParameters.maxY), 0);
+
+            // Sum the reward ranges of the collected resources per objective
+            for (int i = 1; i < mNumObjectives; ++i) {
+                mStepMin[i] = 0;
+                mStepMax[i] = 0;
+            }
+            final boolean canPickUp = countPickedUpLocations() < mParameters.maxPickedUp;
+            if (canPickUp) {
+                for (int i = 0; i < mPickedUp.length; ++i) {
+                    if (!mPickedUp[i] && isCollected(i, x, y)) {
+                        mStepMin[mResourceObjective[i]] += mResourceMin[i];
+                        mStepMax[mResourceObjective[i]] += mResourceMax[i];
+                        mPickedUp[i] = mParameters.pickUpOnCollect;
+                    }
+                }
+            }
+
+            final double discount = Math.pow(mParameters.discountFactor, step);
+            episodeReturn[0] -= discount;
+            for (int i = 1; i < mNumObjectives; ++i) {
+                final double range = mStepMax[i] - mStepMin[i];
+                final double reward = (range == 0 ? mStepMin[i] : mRng.nextDouble() * range + mStepMin[i]);
+                episodeReturn[i] += reward * discount;
+            }
+        }
+    }
+
+    /**
+     * Counts the distinct locations of the resources picked up during the current walk
+     *
+     * @return The amount of picked up locations
+     */
+    private int countPickedUpLocations() {
+        int count = 0;
+        for (int i = 0; i < mPickedUp.length; ++i) {
+            mLocationCounted[i] = false;
+        }
+        for (int i = 0; i < mPickedUp.length; ++i) {
+            if (mPickedUp[i] && !mLocationCounted[mResourceLocation[i]]) {
+                mLocationCounted[mResourceLocation[i]] = true;
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Checks if a resource is collected at a location, like {@link Resource#isCollected(Location)}
+     *
+     * @param resource The index of the resource
+     * @param x The x coordinate of the agent
+     * @param y The y coordinate of the agent
+     * @return True iff the agent is near enough to collect the resource
+     */
+    private boolean isCollected(final int resource, final double x, final double y) {
+        return Math.abs(x - mResourceX[resource]) + Math.abs(y - mResourceY[resource]) < 1;
+    }
+
+    /**
+     * Checks if the agent reached the goal
+     *
+     * @param x The x coordinate of the agent
+     * @param y The y coordinate of the agent
+     * @return True iff the location is terminal
+     */
+    private boolean isTerminal(final double x, final double y) {
+        return x == mParameters.maxX && y == mParameters.maxY;
+    }
+
+    /**
+     * Checks if one return weakly dominates another. Equal returns only count as dominating when the dominating one
+     * comes first, so that exactly one copy of duplicates is kept.
+     *
+     * @param first The possibly dominating return
+     * @param second The possibly dominated return
+     * @param dominateEqual Whether an equal return counts as dominating
+     * @return True iff the first return dominates the second
+     */
+    private boolean dominates(final double[] first, final double[] second, final boolean dominateEqual) {
+        boolean better = false;
+        for (int i = 0; i < mNumObjectives; ++i) {
+            if (first[i] < second[i]) {
+                return false;
+            }
+            better |= (first[i] > second[i]);
+        }
+
+        return better || dominateEqual;
+    }
+
+    /**
+     * Get the mean return of the last batch of walks, which is overwritten by the next batch
+     * @return The mean return
+     */
+    public double[] getMeanReturn() {
+        return mMeanReturn;
+    }
+
+    /**
+     * Get the amount of returns of the last batch that are not dominated by another return in the batch
+     * @return The amount of non-dominated returns
+     */
+    public int getNumNonDominatedReturns() {
+        return mNumNonDominated;
+    }
+
+    /**
+     * Get a non-dominated return of the last batch, which is overwritten by the next batch
+     * @param index The index between 0 and {@link #getNumNonDominatedReturns()}
+     * @return The return
+     */
+    public double[] getNonDominatedReturn(final int index) {
+        return mReturns[mNonDominated[index]];
+    }
+}
@@ -1,12 +1,35 @@
 package nl.uva.morlb.rg.agent.momcts;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import nl.uva.morlb.rg.environment.model.DiscreteAction;
+import nl.uva.morlb.rg.environment.model.Location;
 import nl.uva.morlb.rg.environment.model.State;
+import nl.uva.morlb.util.Metrics;
 
 public class SearchTree {
 
+    /** The node budget indicating the tree may grow without bounds **/
+    public static final long UNLIMITED_NODES = Long.MAX_VALUE;
+
+    /** The fraction of the node budget that remains after recycling subtrees **/
+    private static final double RECYCLE_TARGET = 0.9;
+
+    /** The first bytes of a search tree checkpoint: "MCTS" **/
+    private static final int CHECKPOINT_MAGIC = 0x4D435453;
+
+    /** The version of the checkpoint format **/
+    private static final int CHECKPOINT_VERSION = 1;
+
     private boolean mInitialised = false;
 
     /** The root node of the tree **/
@@ -21,24 +44,163 @@ public class SearchTree {
     /** The total amount of nodes in this search tree **/
     private long mNodeCounter = 0;
 
+    /** The maximum amount of nodes in this search tree **/
+    private final long mNodeBudget;
+
+    /** The pool providing the nodes of this tree **/
+    private TreeNodePool mNodePool;
+
+    /** The nodes shared between transpositions of a state at the same depth, null if transpositions are not used **/
+    private final HashMap<NodeKey, TreeNode> mTranspositions;
+
+    /** The mark of the most recent scan over all nodes **/
+    private int mScanMark = 0;
+
+    /** The nodes that still have to be processed by a scan or release **/
+    private final ArrayDeque<TreeNode> mNodeQueue = new ArrayDeque<TreeNode>();
+
+    /**
+     * Creates a search tree that may grow without bounds
+     */
+    public SearchTree() {
+        this(UNLIMITED_NODES, false);
+    }
+
+    /**
+     * Creates a search tree that recycles its least visited subtrees once it holds the given amount of nodes
+     *
+     * @param nodeBudget The maximum amount of nodes, at least 2
+     * @param useTranspositions Whether nodes for the same state at the same depth should be shared
+     */
+    public SearchTree(final long nodeBudget, final boolean useTranspositions) {
+        if (nodeBudget < 2) {
+            throw new InvalidParameterException("The node budget must allow at least 2 nodes");
+        }
+
+        mNodeBudget = nodeBudget;
+        mTranspositions = (useTranspositions ? new HashMap<NodeKey, TreeNode>() : null);
+    }
+
     /**
      * Initialise the search tree with the root node
      *
      * @param initialState The root node
+     * @param initialReward The reward nodes start out with for every action
      */
-    public void initialise(final State initialState) {
-        mRootNode = mCurrentNode = new TreeNode(initialState);
-        mNodeCounter = 0;
+    public void initialise(final State initialState, final double[] initialReward) {
+        if (mNodePool == null || !mNodePool.isCompatible(initialReward)) {
+            mNodePool = new TreeNodePool(initialReward.length, initialReward);
+        }
+
+        mRootNode = mCurrentNode = mNodePool.obtain(initialState, 0);
+        mNodeCounter = 1;
+        if (mTranspositions != null) {
+            mTranspositions.put(new NodeKey(initialState, 0), mRootNode);
+        }
         mInitialised = true;
     }
 
     /**
-     * Resets the search tree to start from the root node again
+     * Resets the search tree to start from the root node again. Recycles the least visited subtrees when the node
+     * budget has been reached, which is safe here as no nodes of a previous walk are in use anymore.
      */
     public void reset() {
+        enforceNodeBudget();
         mCurrentNode = mRootNode;
     }
 
+    /**
+     * Recycles the least visited subtrees when the node budget has been reached. May only be called while no tree
+     * walks are in progress.
+     */
+    public synchronized void enforceNodeBudget() {
+        if (mNodeCounter >= mNodeBudget) {
+            recycleLeastVisitedSubtrees((long) (mNodeBudget * RECYCLE_TARGET));
+        }
+    }
+
+    /**
+     * Releases the subtrees with the lowest visitation counts to the node pool until the tree holds at most the target
+     * amount of nodes. The statistics of the parent for the released action are kept, so the action may be expanded
+     * again later on.
+     *
+     * @param targetNodes The amount of nodes to keep at most
+     */
+    private void recycleLeastVisitedSubtrees(final long targetNodes) {
+        // Gather all edges below the root in breadth-first order, shared nodes are only expanded once
+        TreeNode[] parents = new TreeNode[(int) mNodeCounter];
+        DiscreteAction[] actions = new DiscreteAction[parents.length];
+        long[] sortKeys = new long[parents.length];
+
+        final int scanMark = ++mScanMark;
+        mRootNode.mark(scanMark);
+        mNodeQueue.add(mRootNode);
+        int numEdges = 0;
+        while (!mNodeQueue.isEmpty()) {
+            final TreeNode node = mNodeQueue.poll();
+            for (int i = 0; i < node.getNumPerformedActions(); ++i) {
+                final DiscreteAction action = node.getPerformedAction(i);
+                final TreeNode child = node.getNextNodeForAction(action);
+
+                if (numEdges == parents.length) {
+                    parents = Arrays.copyOf(parents, numEdges * 2);
+                    actions = Arrays.copyOf(actions, numEdges * 2);
+                    sortKeys = Arrays.copyOf(sortKeys, numEdges * 2);
+                }
+                parents[numEdges] = node;
+                actions[numEdges] = action;
+                ++numEdges;
+
+                if (child.mark(scanMark)) {
+                    mNodeQueue.add(child);
+                }
+            }
+        }
+
+        // Sort on visitation count first and prefer the deepest nodes on ties
+        for (int edge = 0; edge < numEdges; ++edge) {
+            final TreeNode child = parents[edge].getNextNodeForAction(actions[edge]);
+            sortKeys[edge] = ((long) child.getVisitationCount() << 32) | (numEdges - 1 - edge);
+        }
+        Arrays.sort(sortKeys, 0, numEdges);
+
+        // Release the least visited subtrees first
+        for (int i = 0; i < numEdges && mNodeCounter > targetNodes; ++i) {
+            final int index = numEdges - 1 - (int) (sortKeys[i] & 0xFFFFFFFFL);
+            final TreeNode parent = parents[index];
+
+            // Parents that were already released along with one of their ancestors have no children left
+            final TreeNode child = parent.removeChild(actions[index]);
+            if (child != null && child.getNumParents() == 0) {
+                releaseSubtree(child);
+            }
+        }
+    }
+
+    /**
+     * Returns a detached node and all descendants that are not reachable through other parents to the node pool.
+     *
+     * @param root The root of the subtree to release
+     */
+    private void releaseSubtree(final TreeNode root) {
+        mNodeQueue.add(root);
+        while (!mNodeQueue.isEmpty()) {
+            final TreeNode node = mNodeQueue.poll();
+            while (!node.isLeaf()) {
+                final TreeNode child = node.removeChild(node.getPerformedAction(node.getNumPerformedActions() - 1));
+                if (child.getNumParents() == 0) {
+                    mNodeQueue.add(child);
+                }
+            }
+
+            if (mTranspositions != null) {
+                mTranspositions.remove(new NodeKey(node.getState(), node.getDepth()));
+            }
+            mNodePool.release(node);
+            --mNodeCounter;
+        }
+    }
+
     /**
      * Was the search tree already initialised
      * @return True if already initialised, false if not
@@ -68,13 +230,46 @@ public class SearchTree {
      * @param currentState The resulting state from the tree building step
      */
     public void completeTreeBuilding(final State currentState) {
-        TreeNode treeNode = new TreeNode(currentState);
+        mCurrentNode = expand(mCurrentNode, mActionForTreeBuilding, currentState);
+        mActionForTreeBuilding = null;
+    }
+
+    /**
+     * Adds the node of the state resulting from performing an action on a node. May be called by concurrent tree
+     * walks, in which case the node of the walk that expanded the action first is returned.
+     *
+     * @param parent The node the action was performed on
+     * @param action The performed action
+     * @param resultingState The state resulting from the action
+     * @return The node that the action leads to
+     */
+    public synchronized TreeNode expand(final TreeNode parent, final DiscreteAction action, final State resultingState) {
+        final TreeNode existingNode = parent.getNextNodeForAction(action);
+        if (existingNode != null) {
+            return existingNode;
+        }
 
-        mCurrentNode.addChild(mActionForTreeBuilding, treeNode);
-        mNodeCounter++;
-        performActionOnCurrentNode(mActionForTreeBuilding);
+        final int depth = parent.getDepth() + 1;
 
-        mActionForTreeBuilding = null;
+        // Share the node of a transposition if one exists
+        TreeNode treeNode = null;
+        NodeKey key = null;
+        if (mTranspositions != null) {
+            key = new NodeKey(resultingState, depth);
+            treeNode = mTranspositions.get(key);
+        }
+
+        if (treeNode == null) {
+            treeNode = mNodePool.obtain(resultingState, depth);
+            mNodeCounter++;
+            Metrics.TREE_NODES.increment();
+            if (key != null) {
+                mTranspositions.put(key, treeNode);
+            }
+        }
+
+        parent.addChild(action, treeNode);
+        return treeNode;
     }
 
     /**
@@ -85,14 +280,6 @@ public class SearchTree {
         mCurrentNode = mCurrentNode.getNextNodeForAction(action);
     }
 
-    /**
-     * Get all already performed actions on the current node
-     * @return A list of all already performed actions on the current node
-     */
-    public List<DiscreteAction> getPerformedActionsForCurrentNode() {
-        return mCurrentNode.getListOfPerformedActions();
-    }
-
     /**
      * Get the current active node
      * @return The current active node
@@ -110,16 +297,273 @@ public class SearchTree {
     }
 
     /**
-     * Resets the search tree to an empty uninitialised one
+     * Get the amount of nodes currently in the tree
+     * @return The amount of live nodes
+     */
+    public synchronized long getNumNodes() {
+        return mNodeCounter;
+    }
+
+    /**
+     * Get the maximum amount of nodes in the tree
+     * @return The node budget
+     */
+    public long getNodeBudget() {
+        return mNodeBudget;
+    }
+
+    /**
+     * Estimates the heap space taken by the nodes currently in the tree, including their states
+     * @return The estimated amount of bytes
+     */
+    public synchronized long getEstimatedBytes() {
+        if (mRootNode == null) {
+            return 0;
+        }
+
+        return mNodeCounter * TreeNode.estimateSize(mNodePool.getNumObjectives(), mRootNode.getState());
+    }
+
+    /**
+     * Get the amount of nodes that are shared by multiple parents through transpositions
+     * @return The amount of shared nodes
+     */
+    public synchronized long getNumSharedNodes() {
+        if (mTranspositions == null) {
+            return 0;
+        }
+
+        long sharedNodes = 0;
+        for (final TreeNode node : mTranspositions.values()) {
+            if (node.getNumParents() > 1) {
+                ++sharedNodes;
+            }
+        }
+
+        return sharedNodes;
+    }
+
+    /**
+     * Resets the search tree to an empty uninitialised one, keeping the released nodes for reuse
      */
-    public void clear() {
+    public synchronized void clear() {
+        if (mRootNode != null) {
+            releaseSubtree(mRootNode);
+        }
+
+        mNodeCounter = 0;
         mRootNode = mCurrentNode = null;
         mActionForTreeBuilding = null;
         mInitialised = false;
     }
 
+    /**
+     * Streams the tree to a checkpoint in breadth-first order, so that only the nodes on the frontier are held in
+     * memory besides the tree itself. Each node is written as its state, depth, statistics and the actions and ids of
+     * its children, where ids are given in the order nodes are written. May only be called while no tree walks are in
+     * progress.
+     *
+     * @param out The checkpoint to write to
+     * @throws IOException When writing fails
+     */
+    public synchronized void writeCheckpoint(final DataOutput out) throws IOException {
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeInt(CHECKPOINT_VERSION);
+        out.writeBoolean(mInitialised);
+        if (!mInitialised) {
+            return;
+        }
+
+        final double[] initialReward = mNodePool.getInitialReward();
+        out.writeInt(initialReward.length);
+        for (final double reward : initialReward) {
+            out.writeDouble(reward);
+        }
+        final int numResources = mRootNode.getState().getPickedUp().length;
+        out.writeInt(numResources);
+        out.writeLong(mNodeCounter);
+
+        // Only nodes with multiple parents can be reached again after they were given an id
+        final IdentityHashMap<TreeNode, Integer> sharedNodeIds = new IdentityHashMap<TreeNode, Integer>();
+        int numIds = 1;
+
+        mNodeQueue.add(mRootNode);
+        while (!mNodeQueue.isEmpty()) {
+            final TreeNode node = mNodeQueue.poll();
+            writeState(out, node.getState(), numResources);
+            node.writeCheckpoint(out);
+
+            final int numChildren = node.getNumPerformedActions();
+            out.writeByte(numChildren);
+            for (int i = 0; i < numChildren; ++i) {
+                final DiscreteAction action = node.getPerformedAction(i);
+                final TreeNode child = node.getNextNodeForAction(action);
+
+                Integer childId = (child.getNumParents() > 1 ? sharedNodeIds.get(child) : null);
+                if (childId == null) {
+                    childId = numIds++;
+                    if (child.getNumParents() > 1) {
+                        sharedNodeIds.put(child, childId);
+                    }
+                    mNodeQueue.add(child);
+                }
+
+                out.writeByte(action.ordinal());
+                out.writeInt(childId);
+            }
+        }
+    }
+
+    /**
+     * Replaces the tree with the one streamed from a checkpoint written by {@link #writeCheckpoint(DataOutput)}. The
+     * node budget of this tree is enforced on the next reset.
+     *
+     * @param in The checkpoint to read from
+     * @throws IOException When reading fails or the checkpoint is invalid
+     */
+    public synchronized void readCheckpoint(final DataInput in) throws IOException {
+        if (in.readInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("Not a search tree checkpoint");
+        }
+        if (in.readInt() != CHECKPOINT_VERSION) {
+            throw new IOException("Unsupported search tree checkpoint version");
+        }
+
+        clear();
+        if (!in.readBoolean()) {
+            return;
+        }
+
+        final double[] initialReward = new double[in.readInt()];
+        for (int i = 0; i < initialReward.length; ++i) {
+            initialReward[i] = in.readDouble();
+        }
+        if (mNodePool == null || !mNodePool.isCompatible(initialReward)) {
+            mNodePool = new TreeNodePool(initialReward.length, initialReward);
+        }
+        final int numResources = in.readInt();
+        final long numNodes = in.readLong();
+
+        // Children are created when referenced and filled in once their own record is read
+        final List<TreeNode> nodes = new ArrayList<TreeNode>();
+        nodes.add(mNodePool.obtain(null, 0));
+        for (int nodeId = 0; nodeId < nodes.size(); ++nodeId) {
+            final TreeNode node = nodes.get(nodeId);
+            node.readCheckpoint(readState(in, numResources), in);
+            if (mTranspositions != null) {
+                mTranspositions.put(new NodeKey(node.getState(), node.getDepth()), node);
+            }
+
+            final int numChildren = in.readUnsignedByte();
+            for (int i = 0; i < numChildren; ++i) {
+                final DiscreteAction action = DiscreteAction.fromOrdinal(in.readUnsignedByte());
+                final int childId = in.readInt();
+                if (childId == nodes.size()) {
+                    nodes.add(mNodePool.obtain(null, 0));
+                } else if (childId > nodes.size()) {
+                    throw new IOException("Invalid child reference in search tree checkpoint");
+                }
+                node.addChild(action, nodes.get(childId));
+            }
+        }
+
+        if (nodes.size() != numNodes) {
+            throw new IOException("Search tree checkpoint contains " + nodes.size() + " nodes instead of " + numNodes);
+        }
+
+        mRootNode = mCurrentNode = nodes.get(0);
+        mNodeCounter = nodes.size();
+        mInitialised = true;
+    }
+
+    /**
+     * Writes a state as its location followed by the picked up flags packed into bytes
+     *
+     * @param out The checkpoint to write to
+     * @param state The state to write
+     * @param numResources The amount of picked up flags
+     * @throws IOException When writing fails
+     */
+    private static void writeState(final DataOutput out, final State state, final int numResources)
+            throws IOException {
+        final Location agent = state.getAgent();
+        out.writeDouble(agent.x);
+        out.writeDouble(agent.y);
+
+        for (int offset = 0; offset < numResources; offset += 8) {
+            int flags = 0;
+            for (int i = offset; i < Math.min(offset + 8, numResources); ++i) {
+                if (state.isPickedUp(i)) {
+                    flags |= 1 << (i - offset);
+                }
+            }
+            out.writeByte(flags);
+        }
+    }
+
+    /**
+     * Reads a state written by {@link #writeState(DataOutput, State, int)}
+     *
+     * @param in The checkpoint to read from
+     * @param numResources The amount of picked up flags
+     * @return The state
+     * @throws IOException When reading fails
+     */
+    private static State readState(final DataInput in, final int numResources) throws IOException {
+        final Location agent = new Location(in.readDouble(), in.readDouble());
+
+        final boolean[] pickedUp = new boolean[numResources];
+        for (int offset = 0; offset < pickedUp.length; offset += 8) {
+            final int flags = in.readUnsignedByte();
+            for (int i = offset; i < Math.min(offset + 8, pickedUp.length); ++i) {
+                pickedUp[i] = (flags & (1 << (i - offset))) != 0;
+            }
+        }
+
+        return new State(agent, pickedUp);
+    }
+
     @Override
     public String toString() {
         return mNodeCounter +"";
     }
+
+    /**
+     * The key of a node in the transposition table. Includes the depth so that the shared nodes form a directed acyclic
+     * graph, even though states can be revisited within an episode.
+     */
+    private static class NodeKey {
+
+        /** The state of the node **/
+        private final State mState;
+
+        /** The depth of the node **/
+        private final int mDepth;
+
+        /**
+         * Creates a key for the node of a state at a certain depth
+         *
+         * @param state The state of the node
+         * @param depth The depth of the node
+         */
+        public NodeKey(final State state, final int depth) {
+            mState = state;
+            mDepth = depth;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof NodeKey)) {
+                return false;
+            }
+
+            final NodeKey key = (NodeKey) other;
+            return mDepth == key.mDepth && mState.equals(key.mState);
+        }
+
+        @Override
+        public int hashCode() {
+            return mState.hashCode() * 31 + mDepth;
+        }
+    }
 }
@@ -1,43 +1,170 @@
 package nl.uva.morlb.rg.agent.momcts;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import nl.uva.morlb.rg.agent.model.BenchmarkReward;
 import nl.uva.morlb.rg.environment.model.DiscreteAction;
 import nl.uva.morlb.rg.environment.model.State;
 
+/**
+ * A node in the MOMCTS search tree. All per-action statistics are kept in fixed-size arrays indexed by the action's
+ * ordinal so that nodes can be recycled through a {@link TreeNodePool} without any further allocation.
+ *
+ * Concurrent tree walks share nodes without locking them. The statistics of every action are kept in atomic arrays
+ * and guarded by a sequence number per action, which is odd while an update is in progress. Updates of the same action
+ * wait for each other, while readers retry until they read the statistics without an update in between, so that they
+ * always see the counter and reward of the same moment. Children are only appended while walks are running and are
+ * published through the volatile amount of children, so readers see every child up to the amount they read. Children
+ * are only removed when no walks are running.
+ */
 public class TreeNode {
 
-    /** The state representing the current node **/
-    private final State mState;
+    /** All possible actions, indexed by their ordinal **/
+    private static final DiscreteAction[] ACTIONS = DiscreteAction.values();
+
+    /** The amount of action slots every node has **/
+    public static final int NUM_ACTIONS = ACTIONS.length;
+
+    /** The assumed size of object headers in bytes **/
+    private static final int OBJECT_HEADER_BYTES = 12;
+    /** The assumed size of array headers in bytes **/
+    private static final int ARRAY_HEADER_BYTES = 16;
+    /** The assumed size of (compressed) references in bytes **/
+    private static final int REFERENCE_BYTES = 4;
+
+    /** Updates the visitation count of nodes atomically **/
+    private static final AtomicIntegerFieldUpdater<TreeNode> VISITATION_COUNT = AtomicIntegerFieldUpdater.newUpdater(
+            TreeNode.class, "mVisitationCount");
+    /** Updates the amount of parents of nodes atomically **/
+    private static final AtomicIntegerFieldUpdater<TreeNode> NUM_PARENTS = AtomicIntegerFieldUpdater.newUpdater(
+            TreeNode.class, "mNumParents");
+
+    /** The amount of objectives of each reward vector **/
+    private final int mNumObjectives;
 
-    /** The reward given this state and an action **/
-    private final HashMap<DiscreteAction, BenchmarkReward> mActionReward = new HashMap<>();
+    /** The sequence number of the statistics of each action, odd while they are being updated **/
+    private final AtomicIntegerArray mActionSequence;
+
+    /** The bits of the reward given this state and an action, one block of objectives per action ordinal **/
+    private final AtomicLongArray mActionReward;
 
     /** The number of times a given action was taken in this state **/
-    private final HashMap<DiscreteAction, Integer> mActionCounter = new HashMap<>();
+    private final AtomicIntegerArray mActionCounter;
+
+    /** The number of tree walks currently evaluating a given action in this state **/
+    private final AtomicIntegerArray mVirtualLoss;
 
     /** The resulting tree nodes given this state and an action **/
-    private final HashMap<DiscreteAction, TreeNode> mChildrens = new HashMap<>();
+    private final AtomicReferenceArray<TreeNode> mChildren;
+
+    /** The ordinals of the actions that have a child, in the order they were added **/
+    private final byte[] mPerformedActions;
+
+    /** The amount of children under this node, written after the children themselves **/
+    private volatile int mNumChildren = 0;
+
+    /** The state representing the current node **/
+    private State mState;
 
     /** The visitation count n_s of this tree node **/
-    private int mVisitationCout = 0;
+    private volatile int mVisitationCount = 0;
+
+    /** The amount of actions between the root and this node **/
+    private int mDepth = 0;
+
+    /** The amount of nodes that have this node as a child **/
+    private volatile int mNumParents = 0;
+
+    /** The mark of the last tree scan that reached this node **/
+    private int mScanMark = 0;
+
+    /**
+     * Creates an empty node, use {@link #reset(State, int, double[])} before using it.
+     *
+     * @param numObjectives The amount of objectives of each reward vector
+     */
+    TreeNode(final int numObjectives) {
+        mNumObjectives = numObjectives;
+        mActionSequence = new AtomicIntegerArray(NUM_ACTIONS);
+        mActionReward = new AtomicLongArray(NUM_ACTIONS * numObjectives);
+        mActionCounter = new AtomicIntegerArray(NUM_ACTIONS);
+        mVirtualLoss = new AtomicIntegerArray(NUM_ACTIONS);
+        mChildren = new AtomicReferenceArray<>(NUM_ACTIONS);
+        mPerformedActions = new byte[NUM_ACTIONS];
+    }
 
-    public TreeNode(final State state) {
+    /**
+     * Clears all statistics and children so that the node represents the given state. May only be called while no
+     * tree walk can reach the node.
+     *
+     * @param state The state representing this node
+     * @param depth The amount of actions between the root and this node
+     * @param initialReward The reward to return for actions that have not been evaluated yet
+     */
+    void reset(final State state, final int depth, final double[] initialReward) {
         mState = state;
+        mDepth = depth;
+        for (int action = 0; action < NUM_ACTIONS; ++action) {
+            for (int i = 0; i < mNumObjectives; ++i) {
+                mActionReward.set(action * mNumObjectives + i, Double.doubleToRawLongBits(initialReward[i]));
+            }
+            mActionCounter.set(action, 0);
+            mVirtualLoss.set(action, 0);
+            mChildren.set(action, null);
+        }
+        mNumChildren = 0;
+        mVisitationCount = 0;
+        mNumParents = 0;
+        mScanMark = 0;
     }
 
     /**
-     * Add a child node
+     * Add a child node, the action may not have a child yet. Children may only be added by one thread at a time.
      *
      * @param action The action resulting in that child
      * @param treeNode The node resulting from that action
      */
     public void addChild(final DiscreteAction action, final TreeNode treeNode) {
-        mChildrens.put(action, treeNode);
+        final int index = action.ordinal();
+        NUM_PARENTS.incrementAndGet(treeNode);
+        mPerformedActions[mNumChildren] = (byte) index;
+        mChildren.set(index, treeNode);
+
+        // Publishes the child to the walks reading the amount of children
+        mNumChildren = mNumChildren + 1;
+    }
+
+    /**
+     * Removes the child node of an action, keeping the statistics of the action. May only be called while no tree walks
+     * are running.
+     *
+     * @param action The action resulting in that child
+     * @return The removed child or null if the action had no child
+     */
+    public TreeNode removeChild(final DiscreteAction action) {
+        final int index = action.ordinal();
+        final TreeNode child = mChildren.get(index);
+        if (child == null) {
+            return null;
+        }
+
+        NUM_PARENTS.decrementAndGet(child);
+        mChildren.set(index, null);
+        for (int i = 0; i < mNumChildren; ++i) {
+            if (mPerformedActions[i] == index) {
+                System.arraycopy(mPerformedActions, i + 1, mPerformedActions, i, mNumChildren - i - 1);
+                break;
+            }
+        }
+        --mNumChildren;
+
+        return child;
     }
 
     /**
@@ -46,7 +173,7 @@ public class TreeNode {
      * @return True if it is a leaf, false if not
      */
     public boolean isLeaf() {
-        return mChildrens.isEmpty();
+        return mNumChildren == 0;
     }
 
     /**
@@ -55,22 +182,41 @@ public class TreeNode {
      * @return The resulting tree node
      */
     public TreeNode getNextNodeForAction(final DiscreteAction action) {
-        return mChildrens.get(action);
+        return mChildren.get(action.ordinal());
+    }
+
+    /**
+     * Checks if the given action has already been performed on this node
+     * @param action The action to check
+     * @return True iff the action has a child node
+     */
+    public boolean hasPerformedAction(final DiscreteAction action) {
+        return mChildren.get(action.ordinal()) != null;
     }
 
     /**
-     * Generate a list of all already performed actions on this node
-     * @return A list of all already performed actions on this node
+     * Get the amount of already performed actions on this node, every performed action up to this amount can be read
+     * with {@link #getPerformedAction(int)} even while other walks add children
+     * @return The amount of already performed actions
      */
-    public List<DiscreteAction> getListOfPerformedActions() {
-        return new ArrayList<DiscreteAction>(mChildrens.keySet());
+    public int getNumPerformedActions() {
+        return mNumChildren;
+    }
+
+    /**
+     * Get an already performed action in the order they were performed
+     * @param index The index between 0 and {@link #getNumPerformedActions()}
+     * @return The performed action at the given index
+     */
+    public DiscreteAction getPerformedAction(final int index) {
+        return ACTIONS[mPerformedActions[index]];
     }
 
     /**
      * Increases the visitation counter by 1
      */
     public void increaseVisitationCount() {
-        mVisitationCout++;
+        VISITATION_COUNT.incrementAndGet(this);
     }
 
     /**
@@ -78,7 +224,7 @@ public class TreeNode {
      * @return The visitation count of this tree node
      */
     public int getVisitationCount() {
-        return mVisitationCout;
+        return mVisitationCount;
     }
 
     /**
@@ -86,14 +232,138 @@ public class TreeNode {
      * @return The amount of children of this node
      */
     public double getAmountOfChildren() {
-        return mChildrens.size();
+        return mNumChildren;
+    }
+
+    /**
+     * Get the state represented by this node
+     * @return The state of this node
+     */
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * Get the amount of actions between the root and this node
+     * @return The depth of this node
+     */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * Get the amount of nodes that have this node as a child, more than one if the node is shared through transpositions
+     * @return The amount of parents
+     */
+    public int getNumParents() {
+        return mNumParents;
+    }
+
+    /**
+     * Marks this node as reached by a tree scan
+     * @param scanMark The mark of the current scan
+     * @return True iff the node was not reached by this scan before
+     */
+    boolean mark(final int scanMark) {
+        if (mScanMark == scanMark) {
+            return false;
+        }
+
+        mScanMark = scanMark;
+        return true;
+    }
+
+    /**
+     * Writes the depth and statistics of this node to a checkpoint. Only actions that were evaluated are written, as
+     * all others still hold the initial reward. Children and virtual losses are not written. May only be called while
+     * no tree walks are running.
+     * @param out The checkpoint to write to
+     * @throws IOException When writing fails
+     */
+    void writeCheckpoint(final DataOutput out) throws IOException {
+        out.writeInt(mDepth);
+        out.writeInt(mVisitationCount);
+
+        int evaluatedActions = 0;
+        for (int action = 0; action < NUM_ACTIONS; ++action) {
+            if (mActionCounter.get(action) > 0) {
+                evaluatedActions |= 1 << action;
+            }
+        }
+        out.writeShort(evaluatedActions);
+
+        for (int action = 0; action < NUM_ACTIONS; ++action) {
+            if (mActionCounter.get(action) > 0) {
+                out.writeInt(mActionCounter.get(action));
+                for (int i = 0; i < mNumObjectives; ++i) {
+                    out.writeDouble(Double.longBitsToDouble(mActionReward.get(action * mNumObjectives + i)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores the state, depth and statistics of this node from a checkpoint as written by
+     * {@link #writeCheckpoint(DataOutput)}. The node must have been reset with the initial reward before and may not be
+     * reachable by tree walks yet.
+     * @param state The state representing this node
+     * @param in The checkpoint to read from
+     * @throws IOException When reading fails
+     */
+    void readCheckpoint(final State state, final DataInput in) throws IOException {
+        mState = state;
+        mDepth = in.readInt();
+        mVisitationCount = in.readInt();
+
+        final int evaluatedActions = in.readUnsignedShort();
+        for (int action = 0; action < NUM_ACTIONS; ++action) {
+            if ((evaluatedActions & (1 << action)) != 0) {
+                mActionCounter.set(action, in.readInt());
+                for (int i = 0; i < mNumObjectives; ++i) {
+                    mActionReward.set(action * mNumObjectives + i, Double.doubleToRawLongBits(in.readDouble()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimates the heap space of a node on a 64-bit JVM with compressed references
+     * @param numObjectives The amount of objectives of each reward vector
+     * @param state A state representative for the ones held by the nodes
+     * @return The estimated amount of bytes per node
+     */
+    static long estimateSize(final int numObjectives, final State state) {
+        long size = align(OBJECT_HEADER_BYTES + 7 * REFERENCE_BYTES + 6 * 4);
+        size += align(ARRAY_HEADER_BYTES + NUM_ACTIONS * numObjectives * 8);
+        size += 3 * align(ARRAY_HEADER_BYTES + NUM_ACTIONS * 4);
+        size += align(ARRAY_HEADER_BYTES + NUM_ACTIONS * REFERENCE_BYTES);
+        size += align(ARRAY_HEADER_BYTES + NUM_ACTIONS);
+
+        // The atomic wrappers around the arrays
+        size += 5 * align(OBJECT_HEADER_BYTES + REFERENCE_BYTES);
+
+        // The state with its location and inventory
+        size += align(OBJECT_HEADER_BYTES + 2 * REFERENCE_BYTES);
+        size += align(OBJECT_HEADER_BYTES + 2 * 8);
+        size += align(ARRAY_HEADER_BYTES + state.getPickedUp().length);
+
+        return size;
+    }
+
+    /**
+     * Rounds a size up to the 8 byte object alignment
+     * @param size The unaligned size
+     * @return The aligned size
+     */
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
     }
 
     @Override
     public String toString() {
-        String result = mState.toString() + " Children: " +mChildrens.size();
-        for(DiscreteAction childAction : mChildrens.keySet()) {
-            result += " " +childAction.name();
+        String result = mState.toString() + " Children: " +mNumChildren;
+        for(int i = 0; i < mNumChildren; ++i) {
+            result += " " +getPerformedAction(i).name();
         }
 
         return result;
@@ -104,25 +374,103 @@ public class TreeNode {
      * @param action The given action to increase the counter for
      */
     public void increaseActionCounterFor(final DiscreteAction action) {
-        Integer actionCounter = mActionCounter.get(action);
-        if(actionCounter == null) {
-            actionCounter = 0;
-        }
-
-        mActionCounter.put(action, ++actionCounter);
+        final int index = action.ordinal();
+        beginUpdate(index);
+        mActionCounter.set(index, mActionCounter.get(index) + 1);
+        endUpdate(index);
     }
 
     /**
      * Get the reward for a given action
      * @param takenAction The action taken
-     * @return The reward for the given action
+     * @return A copy of the reward for the given action
      */
     public BenchmarkReward getRewardForAction(final DiscreteAction takenAction) {
-        if(!mActionReward.containsKey(takenAction)) {
-            return new BenchmarkReward(Arrays.copyOf(MOMCTSAgent.sInitialReward, MOMCTSAgent.sInitialReward.length));
-        } else {
-            return mActionReward.get(takenAction);
+        return new BenchmarkReward(copyRewardForAction(takenAction, new double[mNumObjectives]));
+    }
+
+    /**
+     * Copies the reward for a given action into a buffer
+     * @param takenAction The action taken
+     * @param result The buffer to copy the reward into
+     * @return The given buffer
+     */
+    public double[] copyRewardForAction(final DiscreteAction takenAction, final double[] result) {
+        final int index = takenAction.ordinal();
+        int sequence;
+        do {
+            sequence = awaitSequence(index);
+            copyReward(index, result);
+        } while (mActionSequence.get(index) != sequence);
+
+        return result;
+    }
+
+    /**
+     * Get the reward for a given action as seen by a tree walk, where every concurrent walk evaluating the action
+     * counts as a pessimistic return until it completes
+     * @param takenAction The action taken
+     * @param virtualLossReturn The return assumed for walks that did not complete yet
+     * @return A copy of the reward for the given action including virtual losses
+     */
+    public BenchmarkReward getRewardForAction(final DiscreteAction takenAction, final double[] virtualLossReturn) {
+        return new BenchmarkReward(copyRewardForAction(takenAction, virtualLossReturn, new double[mNumObjectives]));
+    }
+
+    /**
+     * Copies the reward for a given action including virtual losses into a buffer, see
+     * {@link #getRewardForAction(DiscreteAction, double[])}. The reward, action counter and virtual loss are read
+     * from the same moment.
+     * @param takenAction The action taken
+     * @param virtualLossReturn The return assumed for walks that did not complete yet
+     * @param result The buffer to copy the reward into
+     * @return The given buffer
+     */
+    public double[] copyRewardForAction(final DiscreteAction takenAction, final double[] virtualLossReturn,
+            final double[] result) {
+        final int index = takenAction.ordinal();
+        int sequence;
+        int actionCounter;
+        int virtualLoss;
+        do {
+            sequence = awaitSequence(index);
+            copyReward(index, result);
+            actionCounter = mActionCounter.get(index);
+            virtualLoss = mVirtualLoss.get(index);
+        } while (mActionSequence.get(index) != sequence);
+
+        if (virtualLoss > 0) {
+            for (int i = 0; i < mNumObjectives; ++i) {
+                result[i] = (result[i] * actionCounter + virtualLossReturn[i] * virtualLoss)
+                        / (actionCounter + virtualLoss);
+            }
         }
+
+        return result;
+    }
+
+    /**
+     * Registers a tree walk that started evaluating the given action
+     * @param action The action being evaluated
+     */
+    public void addVirtualLoss(final DiscreteAction action) {
+        // A single atomic change, so readers see either the old or the new virtual loss with the same statistics
+        mVirtualLoss.incrementAndGet(action.ordinal());
+    }
+
+    /**
+     * Adds the return of a tree walk that evaluated the given action and removes its virtual loss in a single update
+     * @param action The evaluated action
+     * @param episodeReturn The return achieved after taking the action
+     */
+    public void completeVirtualVisit(final DiscreteAction action, final double[] episodeReturn) {
+        final int index = action.ordinal();
+        beginUpdate(index);
+        mVirtualLoss.decrementAndGet(index);
+        addReturn(index, episodeReturn);
+        endUpdate(index);
+
+        increaseVisitationCount();
     }
 
     /**
@@ -131,11 +479,7 @@ public class TreeNode {
      * @return The number of times this action was taken
      */
     public int getNumOfTimesActionWasTaken(final DiscreteAction takenAction) {
-        if(!mActionCounter.containsKey(takenAction)) {
-            return 0;
-        }
-
-        return mActionCounter.get(takenAction);
+        return mActionCounter.get(takenAction.ordinal());
     }
 
     /**
@@ -144,6 +488,90 @@ public class TreeNode {
      * @param newReward The resulting reward
      */
     public void setRewardForAction(final DiscreteAction action, final BenchmarkReward reward) {
-        mActionReward.put(action, reward);
+        final int index = action.ordinal();
+        final double[] rewardVector = reward.getRewardVector();
+        beginUpdate(index);
+        for (int i = 0; i < mNumObjectives; ++i) {
+            mActionReward.set(index * mNumObjectives + i, Double.doubleToRawLongBits(rewardVector[i]));
+        }
+        endUpdate(index);
+    }
+
+    /**
+     * Adds a return to the running average reward of an action in place and increases its action counter
+     * @param action The taken action
+     * @param episodeReturn The return achieved after taking the action
+     */
+    public void addReturnForAction(final DiscreteAction action, final double[] episodeReturn) {
+        final int index = action.ordinal();
+        beginUpdate(index);
+        addReturn(index, episodeReturn);
+        endUpdate(index);
+    }
+
+    /**
+     * Adds a return to the running average reward of an action and increases its action counter, must be called
+     * between {@link #beginUpdate(int)} and {@link #endUpdate(int)}
+     * @param index The ordinal of the taken action
+     * @param episodeReturn The return achieved after taking the action
+     */
+    private void addReturn(final int index, final double[] episodeReturn) {
+        final int offset = index * mNumObjectives;
+        final int actionCounter = mActionCounter.get(index);
+        final double factor = 1.0d / (actionCounter + 1);
+
+        for (int i = 0; i < mNumObjectives; ++i) {
+            final double reward = Double.longBitsToDouble(mActionReward.get(offset + i));
+            mActionReward.set(offset + i, Double.doubleToRawLongBits((reward * actionCounter + episodeReturn[i])
+                    * factor));
+        }
+
+        mActionCounter.set(index, actionCounter + 1);
+    }
+
+    /**
+     * Copies the reward of an action into a buffer without checking for concurrent updates
+     * @param index The ordinal of the action
+     * @param result The buffer to copy the reward into
+     */
+    private void copyReward(final int index, final double[] result) {
+        final int offset = index * mNumObjectives;
+        for (int i = 0; i < mNumObjectives; ++i) {
+            result[i] = Double.longBitsToDouble(mActionReward.get(offset + i));
+        }
+    }
+
+    /**
+     * Waits until the statistics of an action are not being updated
+     * @param index The ordinal of the action
+     * @return The even sequence number of the statistics
+     */
+    private int awaitSequence(final int index) {
+        int sequence = mActionSequence.get(index);
+        while ((sequence & 1) != 0) {
+            sequence = mActionSequence.get(index);
+        }
+        return sequence;
+    }
+
+    /**
+     * Starts updating the statistics of an action, waiting for other updates of the action to end first
+     * @param index The ordinal of the action
+     */
+    private void beginUpdate(final int index) {
+        while (true) {
+            final int sequence = awaitSequence(index);
+            if (mActionSequence.compareAndSet(index, sequence, sequence + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ends updating the statistics of an action, after which readers see the new statistics
+     * @param index The ordinal of the action
+     */
+    private void endUpdate(final int index) {
+        mActionSequence.incrementAndGet(index);
     }
 }
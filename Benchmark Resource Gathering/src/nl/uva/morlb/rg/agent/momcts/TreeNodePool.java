@@ -0,0 +1,105 @@
+package nl.uva.morlb.rg.agent.momcts;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import nl.uva.morlb.rg.environment.model.State;
+
+/**
+ * A pool of tree nodes that hands out recycled nodes before allocating new ones.
+ */
+public class TreeNodePool {
+
+    /** The amount of objectives of the nodes in this pool **/
+    private final int mNumObjectives;
+
+    /** The reward nodes start out with for every action **/
+    private final double[] mInitialReward;
+
+    /** The nodes that are available for reuse **/
+    private final ArrayDeque<TreeNode> mFreeNodes = new ArrayDeque<TreeNode>();
+
+    /** The total amount of nodes ever allocated by this pool **/
+    private long mNumAllocated = 0;
+
+    /**
+     * Creates an empty pool for nodes of the given dimension
+     *
+     * @param numObjectives The amount of objectives of each reward vector
+     * @param initialReward The reward nodes start out with for every action
+     */
+    public TreeNodePool(final int numObjectives, final double[] initialReward) {
+        mNumObjectives = numObjectives;
+        mInitialReward = initialReward.clone();
+    }
+
+    /**
+     * Retrieves a cleared node for the given state, reusing a released one if available
+     *
+     * @param state The state the node represents
+     * @param depth The amount of actions between the root and the node
+     * @return The node
+     */
+    public TreeNode obtain(final State state, final int depth) {
+        TreeNode node = mFreeNodes.pollLast();
+        if (node == null) {
+            node = new TreeNode(mNumObjectives);
+            ++mNumAllocated;
+        }
+
+        node.reset(state, depth, mInitialReward);
+        return node;
+    }
+
+    /**
+     * Returns a single node to the pool. The node may not be used afterwards.
+     *
+     * @param node The node to release
+     */
+    public void release(final TreeNode node) {
+        node.reset(null, 0, mInitialReward);
+        mFreeNodes.add(node);
+    }
+
+    /**
+     * Checks if this pool creates nodes compatible with the given configuration
+     *
+     * @param initialReward The reward nodes should start out with for every action
+     * @return True iff nodes from this pool have the given dimension and initial reward
+     */
+    public boolean isCompatible(final double[] initialReward) {
+        return Arrays.equals(mInitialReward, initialReward);
+    }
+
+    /**
+     * Get the amount of objectives of the nodes in this pool
+     * @return The amount of objectives
+     */
+    public int getNumObjectives() {
+        return mNumObjectives;
+    }
+
+    /**
+     * Get the reward nodes start out with for every action
+     * @return A copy of the initial reward
+     */
+    public double[] getInitialReward() {
+        return mInitialReward.clone();
+    }
+
+    /**
+     * Get the amount of nodes waiting to be reused
+     * @return The amount of free nodes
+     */
+    public int getNumFreeNodes() {
+        return mFreeNodes.size();
+    }
+
+    /**
+     * Get the total amount of nodes ever allocated by this pool
+     * @return The amount of allocated nodes
+     */
+    public long getNumAllocated() {
+        return mNumAllocated;
+    }
+}
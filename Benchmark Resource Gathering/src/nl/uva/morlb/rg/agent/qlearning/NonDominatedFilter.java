@@ -0,0 +1,215 @@
+package nl.uva.morlb.rg.agent.qlearning;
+
+/**
+ * Removes dominated and duplicate vectors from a flat array of vectors. The vectors are sorted lexicographically in
+ * descending order first, so that every vector can only be weakly dominated by vectors before it. Two objectives are
+ * then filtered in a single sweep, more objectives compare each vector against the vectors kept so far. The scratch
+ * buffers are reused between calls, so a filter should not be shared between threads.
+ */
+public class NonDominatedFilter {
+
+    /** The amount of objectives of the vectors **/
+    private final int mNumObjectives;
+
+    /** The vector indices in sorted order **/
+    private int[] mOrder = new int[16];
+
+    /** The scratch space used while merging the vector indices **/
+    private int[] mMergeBuffer = new int[16];
+
+    /** The kept vectors before copying them back **/
+    private double[] mKeptValues = new double[0];
+
+    /** The tags of the kept vectors before copying them back **/
+    private int[] mKeptTags = new int[16];
+
+    /**
+     * Creates a filter for vectors with the given amount of objectives
+     *
+     * @param numObjectives
+     *            The amount of objectives
+     */
+    public NonDominatedFilter(final int numObjectives) {
+        mNumObjectives = numObjectives;
+    }
+
+    /**
+     * Moves the vectors that are not weakly dominated by another vector to the start of the arrays, keeping only one of
+     * each set of equal vectors. The remaining vectors end up in descending lexicographic order.
+     *
+     * @param values
+     *            The vectors, stored consecutively
+     * @param tags
+     *            A tag for every vector which is moved along with it, may be null
+     * @param numVectors
+     *            The amount of vectors to consider from the start of the array
+     *
+     * @return The amount of remaining vectors
+     */
+    public int filter(final double[] values, final int[] tags, final int numVectors) {
+        if (numVectors < 2) {
+            return numVectors;
+        }
+
+        ensureCapacity(numVectors);
+        for (int i = 0; i < numVectors; ++i) {
+            mOrder[i] = i;
+        }
+        sort(values, numVectors);
+
+        int numKept = 0;
+        if (mNumObjectives == 2) {
+            // The first objective is descending, so only a larger second objective is not dominated
+            double best = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < numVectors; ++i) {
+                final int offset = mOrder[i] * 2;
+                if (values[offset + 1] > best) {
+                    best = values[offset + 1];
+                    keep(values, tags, mOrder[i], numKept++);
+                }
+            }
+        } else {
+            vectorCheck:
+            for (int i = 0; i < numVectors; ++i) {
+                final int offset = mOrder[i] * mNumObjectives;
+                for (int kept = 0; kept < numKept; ++kept) {
+                    if (weaklyDominates(mKeptValues, kept * mNumObjectives, values, offset)) {
+                        continue vectorCheck;
+                    }
+                }
+                keep(values, tags, mOrder[i], numKept++);
+            }
+        }
+
+        System.arraycopy(mKeptValues, 0, values, 0, numKept * mNumObjectives);
+        if (tags != null) {
+            System.arraycopy(mKeptTags, 0, tags, 0, numKept);
+        }
+
+        return numKept;
+    }
+
+    /**
+     * Copies a vector to the kept vectors
+     *
+     * @param values
+     *            The vectors
+     * @param tags
+     *            The tags of the vectors, may be null
+     * @param vector
+     *            The index of the vector to keep
+     * @param position
+     *            The position among the kept vectors
+     */
+    private void keep(final double[] values, final int[] tags, final int vector, final int position) {
+        System.arraycopy(values, vector * mNumObjectives, mKeptValues, position * mNumObjectives, mNumObjectives);
+        if (tags != null) {
+            mKeptTags[position] = tags[vector];
+        }
+    }
+
+    /**
+     * Sorts the vector indices on descending lexicographic order of their vectors using a bottom-up merge sort
+     *
+     * @param values
+     *            The vectors
+     * @param numVectors
+     *            The amount of vectors
+     */
+    private void sort(final double[] values, final int numVectors) {
+        int[] source = mOrder;
+        int[] target = mMergeBuffer;
+
+        for (int width = 1; width < numVectors; width *= 2) {
+            for (int start = 0; start < numVectors; start += 2 * width) {
+                final int middle = Math.min(start + width, numVectors);
+                final int end = Math.min(start + 2 * width, numVectors);
+
+                int left = start;
+                int right = middle;
+                for (int i = start; i < end; ++i) {
+                    if (left < middle && (right >= end || compare(values, source[left], source[right]) >= 0)) {
+                        target[i] = source[left++];
+                    } else {
+                        target[i] = source[right++];
+                    }
+                }
+            }
+
+            final int[] temp = source;
+            source = target;
+            target = temp;
+        }
+
+        mOrder = source;
+        mMergeBuffer = target;
+    }
+
+    /**
+     * Compares two vectors lexicographically
+     *
+     * @param values
+     *            The vectors
+     * @param first
+     *            The index of the first vector
+     * @param second
+     *            The index of the second vector
+     *
+     * @return A positive number if the first vector is larger, a negative number if it is smaller and 0 if equal
+     */
+    private int compare(final double[] values, final int first, final int second) {
+        final int firstOffset = first * mNumObjectives;
+        final int secondOffset = second * mNumObjectives;
+        for (int dim = 0; dim < mNumObjectives; ++dim) {
+            final int comparison = Double.compare(values[firstOffset + dim], values[secondOffset + dim]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Checks if a vector is at least as good as another in every objective
+     *
+     * @param values
+     *            The array containing the vector that may dominate
+     * @param offset
+     *            The offset of the vector that may dominate
+     * @param otherValues
+     *            The array containing the vector that may be dominated
+     * @param otherOffset
+     *            The offset of the vector that may be dominated
+     *
+     * @return True iff the vector weakly dominates the other one
+     */
+    private boolean weaklyDominates(final double[] values, final int offset, final double[] otherValues,
+            final int otherOffset) {
+        for (int dim = 0; dim < mNumObjectives; ++dim) {
+            if (values[offset + dim] < otherValues[otherOffset + dim]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Grows the scratch buffers to hold at least the given amount of vectors
+     *
+     * @param numVectors
+     *            The required amount of vectors
+     */
+    private void ensureCapacity(final int numVectors) {
+        if (mOrder.length < numVectors) {
+            final int capacity = Math.max(numVectors, mOrder.length * 2);
+            mOrder = new int[capacity];
+            mMergeBuffer = new int[capacity];
+            mKeptTags = new int[capacity];
+        }
+        if (mKeptValues.length < numVectors * mNumObjectives) {
+            mKeptValues = new double[mOrder.length * mNumObjectives];
+        }
+    }
+}
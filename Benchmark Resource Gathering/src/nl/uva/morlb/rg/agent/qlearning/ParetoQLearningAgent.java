@@ -0,0 +1,388 @@
+package nl.uva.morlb.rg.agent.qlearning;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import nl.uva.morlb.rg.agent.SeedableAgent;
+import nl.uva.morlb.rg.agent.model.ObservationDecoder;
+import nl.uva.morlb.rg.environment.model.DiscreteAction;
+import nl.uva.morlb.rg.experiment.model.Solution;
+import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.rg.experiment.model.SolutionSetCodec;
+import nl.uva.morlb.util.Metrics;
+import nl.uva.morlb.util.Util;
+
+import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
+import org.rlcommunity.rlglue.codec.types.Action;
+import org.rlcommunity.rlglue.codec.types.Observation;
+import org.rlcommunity.rlglue.codec.types.Reward;
+import org.rlcommunity.rlglue.codec.util.AgentLoader;
+
+/**
+ * Tabular Pareto Q-learning (See K. Van Moffaert, A. Nowe: Multi-Objective Reinforcement Learning using Sets of Pareto
+ * Dominating Policies. Journal of Machine Learning Research 15, 3483-3512 (2014)). Every state-action pair keeps the
+ * average immediate reward and the non-dominated set of future returns of the state it leads to, so that their sum
+ * forms the set of returns that can be obtained after the action. Actions are selected by the Pareto set evaluation,
+ * i.e. randomly among the actions contributing to the non-dominated returns of the state. The future return sets are
+ * stored in a flat arena and filtered without creating solution objects.
+ */
+public class ParetoQLearningAgent implements SeedableAgent {
+
+    /** The probability of performing a random action **/
+    private static final double EXPLORATION = 0.1;
+
+    /** The random number generator for exploration and the Pareto set evaluation **/
+    private Random mRandom = Util.RNG;
+
+    /** The amount of objectives **/
+    private int mNumObjectives;
+
+    /** The amount of actions in the table **/
+    private int mNumActions;
+
+    /** The action value of the first action in the table **/
+    private int mMinAction;
+
+    /** The decoder mapping observations to state indices **/
+    private ObservationDecoder mDecoder;
+
+    /** The encoder answering the requests for the solution set **/
+    private final SolutionSetCodec.Encoder mSolutionSetEncoder = new SolutionSetCodec.Encoder();
+
+    /** The amount of times each state-action pair has been performed **/
+    private int[] mCounts;
+
+    /** The average immediate reward of each state-action pair, stored as [state][action][objective] **/
+    private double[] mAverageRewards;
+
+    /** The non-dominated future returns of each state-action pair, where an empty set means no future return **/
+    private VectorSetArena mFutureReturns;
+
+    /** The filter used to remove dominated returns **/
+    private NonDominatedFilter mFilter;
+
+    /** The scratch space holding the returns of the actions in a state **/
+    private double[] mReturns = new double[0];
+
+    /** The action that leads to each of the returns in the scratch space **/
+    private int[] mReturnActions = new int[0];
+
+    /** The scratch space holding the average reward of a single state-action pair **/
+    private double[] mAverageReward;
+
+    /** The state index of the previous step **/
+    private int mState;
+
+    /** The action performed in the previous step **/
+    private int mAction;
+
+    /** The state index at which the episodes start, or -1 before the first episode **/
+    private int mStartState;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setRandom(final Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * Called when preparing the problem.
+     */
+    @Override
+    public void agent_init(final String taskSpecStr) {
+        final TaskSpecVRLGLUE3 taskSpec = new TaskSpecVRLGLUE3(taskSpecStr);
+        mNumObjectives = taskSpec.getNumOfObjectives();
+
+        mMinAction = taskSpec.getDiscreteActionRange(0).getMin();
+        mNumActions = taskSpec.getDiscreteActionRange(0).getMax() - mMinAction + 1;
+
+        // The states consist of the location and the resources that are no longer observed, unlike tracking the
+        // collected resource types this keeps resources of the same type apart so that returns are not mixed up
+        mDecoder = new ObservationDecoder(taskSpec);
+        final int numPairs = mDecoder.getNumKeys() * mNumActions;
+
+        mCounts = new int[numPairs];
+        mAverageRewards = new double[numPairs * mNumObjectives];
+        mFutureReturns = new VectorSetArena(mNumObjectives, numPairs);
+        mFilter = new NonDominatedFilter(mNumObjectives);
+        mAverageReward = new double[mNumObjectives];
+        mStartState = -1;
+    }
+
+    /**
+     * Called when the environment just started and returned the initial observation.
+     *
+     * @param observation
+     *            The observation as given by the environment
+     *
+     * @return The action to perform next
+     */
+    @Override
+    public Action agent_start(final Observation observation) {
+        mState = mDecoder.getKey(observation);
+        mStartState = mState;
+        return performAction(selectAction(mState));
+    }
+
+    /**
+     * Called after performing an action.
+     *
+     * @param reward
+     *            The reward given by performing the previous action
+     * @param observation
+     *            The observation as given by the environment
+     *
+     * @return The action to perform next
+     */
+    @Override
+    public Action agent_step(final Reward reward, final Observation observation) {
+        final long startTime = Metrics.start();
+
+        final int nextState = mDecoder.getKey(observation);
+        update(reward.doubleArray, nextState);
+
+        mState = nextState;
+        final Action action = performAction(selectAction(mState));
+
+        Metrics.AGENT_STEP.stop(startTime);
+        return action;
+    }
+
+    /**
+     * Called when a terminal state has been reached or a time limit is reached.
+     *
+     * @param reward
+     *            The reward given by performing the previous action
+     */
+    @Override
+    public void agent_end(final Reward reward) {
+        update(reward.doubleArray, -1);
+    }
+
+    /**
+     * Updates the average reward of the previous state and action and replaces its future returns with the
+     * non-dominated returns of the reached state
+     *
+     * @param reward
+     *            The reward received for the transition
+     * @param nextState
+     *            The state index reached by the transition, or -1 if it is terminal
+     */
+    private void update(final double[] reward, final int nextState) {
+        final int pair = mState * mNumActions + mAction;
+        final int offset = pair * mNumObjectives;
+
+        if (mCounts[pair] == 0) {
+            Metrics.Q_TABLE_ENTRIES.increment();
+        }
+
+        final double factor = 1.0d / ++mCounts[pair];
+        for (int dim = 0; dim < mNumObjectives; ++dim) {
+            mAverageRewards[offset + dim] += factor * (reward[dim] - mAverageRewards[offset + dim]);
+        }
+
+        final int numReturns = (nextState == -1 ? 0 : collectNonDominatedReturns(nextState));
+        mFutureReturns.set(pair, mReturns, numReturns);
+    }
+
+    /**
+     * Collects the non-dominated returns of a state in the scratch space
+     *
+     * @param state
+     *            The state index
+     *
+     * @return The amount of non-dominated returns
+     */
+    private int collectNonDominatedReturns(final int state) {
+        final int numReturns = collectReturns(state);
+        return mFilter.filter(mReturns, mReturnActions, numReturns);
+    }
+
+    /**
+     * Collects the returns of all performed actions in a state in the scratch space, each being the average reward of
+     * the action plus one of its future returns
+     *
+     * @param state
+     *            The state index
+     *
+     * @return The amount of collected returns
+     */
+    private int collectReturns(final int state) {
+        final int firstPair = state * mNumActions;
+
+        int numReturns = 0;
+        for (int action = 0; action < mNumActions; ++action) {
+            if (mCounts[firstPair + action] > 0) {
+                numReturns += Math.max(1, mFutureReturns.size(firstPair + action));
+            }
+        }
+        ensureCapacity(numReturns);
+
+        int position = 0;
+        for (int action = 0; action < mNumActions; ++action) {
+            final int pair = firstPair + action;
+            if (mCounts[pair] == 0) {
+                continue;
+            }
+
+            System.arraycopy(mAverageRewards, pair * mNumObjectives, mAverageReward, 0, mNumObjectives);
+            int numActionReturns = mFutureReturns.copyShifted(pair, mAverageReward, mReturns, position
+                    * mNumObjectives);
+            if (numActionReturns == 0) {
+                System.arraycopy(mAverageReward, 0, mReturns, position * mNumObjectives, mNumObjectives);
+                numActionReturns = 1;
+            }
+
+            Arrays.fill(mReturnActions, position, position + numActionReturns, action);
+            position += numActionReturns;
+        }
+
+        return numReturns;
+    }
+
+    /**
+     * Selects an action in a state. Actions that have never been performed in the state are tried first, after that
+     * the action is chosen randomly among those contributing to the non-dominated returns or at random with a small
+     * probability.
+     *
+     * @param state
+     *            The current state index
+     *
+     * @return The index of the action in the table
+     */
+    private int selectAction(final int state) {
+        final int firstPair = state * mNumActions;
+
+        int untried = 0;
+        for (int action = 0; action < mNumActions; ++action) {
+            if (mCounts[firstPair + action] == 0) {
+                untried |= 1 << action;
+            }
+        }
+        if (untried != 0) {
+            return randomAction(untried);
+        }
+
+        if (mRandom.nextDouble() < EXPLORATION) {
+            return mRandom.nextInt(mNumActions);
+        }
+
+        final int numReturns = collectNonDominatedReturns(state);
+        int contributing = 0;
+        for (int i = 0; i < numReturns; ++i) {
+            contributing |= 1 << mReturnActions[i];
+        }
+
+        return randomAction(contributing);
+    }
+
+    /**
+     * Picks a random action from a set of actions
+     *
+     * @param actions
+     *            The set of actions with one bit per action index
+     *
+     * @return The index of the picked action
+     */
+    private int randomAction(int actions) {
+        for (int skip = mRandom.nextInt(Integer.bitCount(actions)); skip > 0; --skip) {
+            actions &= actions - 1;
+        }
+
+        return Integer.numberOfTrailingZeros(actions);
+    }
+
+    /**
+     * Remembers the selected action and converts it to an RL-Glue action
+     *
+     * @param action
+     *            The index of the action in the table
+     *
+     * @return The action to perform
+     */
+    private Action performAction(final int action) {
+        mAction = action;
+
+        return DiscreteAction.fromOrdinal(mMinAction + action).convertToRLGlueAction();
+    }
+
+    /**
+     * Grows the scratch space to hold at least the given amount of returns
+     *
+     * @param numReturns
+     *            The required amount of returns
+     */
+    private void ensureCapacity(final int numReturns) {
+        if (mReturnActions.length < numReturns) {
+            final int capacity = Math.max(numReturns, mReturnActions.length * 2);
+            mReturns = new double[capacity * mNumObjectives];
+            mReturnActions = new int[capacity];
+        }
+    }
+
+    /**
+     * Builds the solution set from the non-dominated returns of the start state
+     *
+     * @return The solution set found so far
+     */
+    private SolutionSet getSolutionSet() {
+        final SolutionSet solutionSet = new SolutionSet(mNumObjectives);
+        if (mStartState == -1) {
+            return solutionSet;
+        }
+
+        final int numReturns = collectNonDominatedReturns(mStartState);
+        for (int i = 0; i < numReturns; ++i) {
+            final double[] values = new double[mNumObjectives];
+            System.arraycopy(mReturns, i * mNumObjectives, values, 0, mNumObjectives);
+            solutionSet.addSolution(new Solution(values));
+        }
+
+        return solutionSet;
+    }
+
+    /**
+     * Resets the agent to the initial state.
+     */
+    @Override
+    public void agent_cleanup() {
+        mCounts = null;
+        mAverageRewards = null;
+        mFutureReturns = null;
+    }
+
+    /**
+     * Handles Glue messages.
+     *
+     * @param message
+     *            The message to handle
+     */
+    @Override
+    public String agent_message(final String message) {
+        if (SolutionSetCodec.Encoder.isRequest(message)) {
+            return mSolutionSetEncoder.encode(getSolutionSet(), message);
+        }
+
+        switch (message) {
+            case "isConverged":
+                return "false";
+            case "getSolutionSet":
+                return getSolutionSet().toString();
+            default:
+                return "Cannot parse message";
+        }
+    }
+
+    public static void main(final String[] args) {
+        // Start the agent
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                new AgentLoader(new ParetoQLearningAgent()).run();
+            }
+        }).start();
+    }
+
+}
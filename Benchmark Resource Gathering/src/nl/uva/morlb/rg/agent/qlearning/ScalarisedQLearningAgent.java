@@ -0,0 +1,379 @@
+package nl.uva.morlb.rg.agent.qlearning;
+
+import java.security.InvalidParameterException;
+import java.util.Random;
+
+import nl.uva.morlb.rg.agent.SeedableAgent;
+import nl.uva.morlb.rg.agent.model.ObservationDecoder;
+import nl.uva.morlb.rg.agent.model.VectorMath;
+import nl.uva.morlb.rg.environment.model.DiscreteAction;
+import nl.uva.morlb.rg.experiment.model.LinearScalarisation;
+import nl.uva.morlb.rg.experiment.model.Solution;
+import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.rg.experiment.model.SolutionSetCodec;
+import nl.uva.morlb.util.Metrics;
+import nl.uva.morlb.util.Util;
+
+import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
+import org.rlcommunity.rlglue.codec.types.Action;
+import org.rlcommunity.rlglue.codec.types.Observation;
+import org.rlcommunity.rlglue.codec.types.Reward;
+import org.rlcommunity.rlglue.codec.util.AgentLoader;
+
+/**
+ * Tabular Q-learning on linear scalarisations of the reward for a batch of weight vectors at once. Every transition
+ * updates the scalarised Q function of each weight vector, while the episodes take turns following the policy of one of
+ * the weight vectors. The returns of these episodes form an approximation of the convex coverage set.
+ */
+public class ScalarisedQLearningAgent implements SeedableAgent {
+
+    /** The default amount of weight vectors to learn for **/
+    public static final int DEFAULT_NUM_WEIGHTS = 10;
+
+    /** The step size of the Q-value updates **/
+    private static final double LEARNING_RATE = 0.1;
+
+    /** The probability of performing a random action **/
+    private static final double EXPLORATION = 0.1;
+
+    /** The discount factor, the environment already discounts the rewards **/
+    private static final double DISCOUNT = 1;
+
+    /** The amount of random weight vectors to generate, or 0 when the weights are given **/
+    private final int mNumRandomWeights;
+
+    /** The random number generator for exploration and tie breaking **/
+    private Random mRandom = Util.RNG;
+
+    /** The weight vectors to learn Q-values for **/
+    private double[][] mWeights;
+
+    /** The Q-values for every weight vector, state and action, stored as [weights][state][action] **/
+    private double[] mQTable;
+
+    /** The amount of states in the table **/
+    private int mNumStates;
+
+    /** The amount of actions in the table **/
+    private int mNumActions;
+
+    /** The action value of the first action in the table **/
+    private int mMinAction;
+
+    /** The decoder mapping observations to state indices **/
+    private ObservationDecoder mDecoder;
+
+    /** The encoder answering the requests for the solution set **/
+    private final SolutionSetCodec.Encoder mSolutionSetEncoder = new SolutionSetCodec.Encoder();
+
+    /** The resource types that have been picked up this episode, one bit per type **/
+    private int mInventory;
+
+    /** The state index of the previous step **/
+    private int mState;
+
+    /** The action performed in the previous step **/
+    private int mAction;
+
+    /** The weight vector whose policy is followed this episode **/
+    private int mBehaviourWeight;
+
+    /** The amount of episodes started since initialisation **/
+    private int mNumEpisodes;
+
+    /** The return of the current episode **/
+    private double[] mReturn;
+
+    /** The return of the last episode that followed the policy of each weight vector **/
+    private double[][] mWeightReturns;
+
+    /**
+     * Creates an agent that learns for the default amount of random weight vectors
+     */
+    public ScalarisedQLearningAgent() {
+        this(DEFAULT_NUM_WEIGHTS);
+    }
+
+    /**
+     * Creates an agent that learns for random weight vectors generated by a linear scalarisation
+     *
+     * @param numWeights
+     *            The amount of weight vectors
+     */
+    public ScalarisedQLearningAgent(final int numWeights) {
+        if (numWeights < 1) {
+            throw new InvalidParameterException("At least one weight vector is required");
+        }
+
+        mNumRandomWeights = numWeights;
+    }
+
+    /**
+     * Creates an agent that learns for the given weight vectors, e.g. those of LinearScalarisation.simplexLattice
+     *
+     * @param weights
+     *            The weight vectors, each having a weight for every objective
+     */
+    public ScalarisedQLearningAgent(final double[][] weights) {
+        if (weights.length < 1) {
+            throw new InvalidParameterException("At least one weight vector is required");
+        }
+
+        mNumRandomWeights = 0;
+        mWeights = new double[weights.length][];
+        for (int i = 0; i < weights.length; ++i) {
+            mWeights[i] = weights[i].clone();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setRandom(final Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * Called when preparing the problem.
+     */
+    @Override
+    public void agent_init(final String taskSpecStr) {
+        final TaskSpecVRLGLUE3 taskSpec = new TaskSpecVRLGLUE3(taskSpecStr);
+        final int numObjectives = taskSpec.getNumOfObjectives();
+
+        if (mNumRandomWeights > 0) {
+            final LinearScalarisation scalarisation = new LinearScalarisation(numObjectives);
+            mWeights = new double[mNumRandomWeights][];
+            for (int i = 0; i < mNumRandomWeights; ++i) {
+                mWeights[i] = scalarisation.randomWeightVector();
+            }
+        }
+        for (final double[] weights : mWeights) {
+            if (weights.length != numObjectives) {
+                throw new InvalidParameterException("Weight vectors must have a weight for every objective");
+            }
+        }
+
+        mMinAction = taskSpec.getDiscreteActionRange(0).getMin();
+        mNumActions = taskSpec.getDiscreteActionRange(0).getMax() - mMinAction + 1;
+
+        mDecoder = new ObservationDecoder(taskSpec, numObjectives - 1);
+        mNumStates = mDecoder.getNumKeys();
+
+        mQTable = new double[mWeights.length * mNumStates * mNumActions];
+        mReturn = new double[numObjectives];
+        mWeightReturns = new double[mWeights.length][];
+        mNumEpisodes = 0;
+    }
+
+    /**
+     * Called when the environment just started and returned the initial observation.
+     *
+     * @param observation
+     *            The observation as given by the environment
+     *
+     * @return The action to perform next
+     */
+    @Override
+    public Action agent_start(final Observation observation) {
+        mBehaviourWeight = mNumEpisodes++ % mWeights.length;
+        mInventory = 0;
+        VectorMath.mult(mReturn, mReturn, 0);
+
+        mState = mDecoder.getKey(observation, mInventory);
+        return performAction(selectAction(mState));
+    }
+
+    /**
+     * Called after performing an action.
+     *
+     * @param reward
+     *            The reward given by performing the previous action
+     * @param observation
+     *            The observation as given by the environment
+     *
+     * @return The action to perform next
+     */
+    @Override
+    public Action agent_step(final Reward reward, final Observation observation) {
+        final long startTime = Metrics.start();
+        handleReward(reward);
+
+        final int nextState = mDecoder.getKey(observation, mInventory);
+        update(reward.doubleArray, nextState, false);
+
+        mState = nextState;
+        final Action action = performAction(selectAction(mState));
+
+        Metrics.AGENT_STEP.stop(startTime);
+        return action;
+    }
+
+    /**
+     * Called when a terminal state has been reached or a time limit is reached.
+     *
+     * @param reward
+     *            The reward given by performing the previous action
+     */
+    @Override
+    public void agent_end(final Reward reward) {
+        handleReward(reward);
+        update(reward.doubleArray, 0, true);
+
+        mWeightReturns[mBehaviourWeight] = mReturn.clone();
+    }
+
+    /**
+     * Updates the Q-value of the previous state and action for every weight vector in a single pass over the table
+     *
+     * @param reward
+     *            The reward received for the transition
+     * @param nextState
+     *            The state index reached by the transition
+     * @param terminal
+     *            Whether the reached state is terminal and thereby has no value
+     */
+    private void update(final double[] reward, final int nextState, final boolean terminal) {
+        final int weightStride = mNumStates * mNumActions;
+        int entry = mState * mNumActions + mAction;
+        int next = nextState * mNumActions;
+
+        for (int w = 0; w < mWeights.length; ++w, entry += weightStride, next += weightStride) {
+            double target = VectorMath.dot(mWeights[w], reward);
+            if (!terminal) {
+                double maxValue = mQTable[next];
+                for (int a = 1; a < mNumActions; ++a) {
+                    if (mQTable[next + a] > maxValue) {
+                        maxValue = mQTable[next + a];
+                    }
+                }
+                target += DISCOUNT * maxValue;
+            }
+
+            mQTable[entry] += LEARNING_RATE * (target - mQTable[entry]);
+        }
+    }
+
+    /**
+     * Selects an epsilon-greedy action for the weight vector followed this episode, breaking ties randomly
+     *
+     * @param state
+     *            The current state index
+     *
+     * @return The index of the action in the table
+     */
+    private int selectAction(final int state) {
+        if (mRandom.nextDouble() < EXPLORATION) {
+            return mRandom.nextInt(mNumActions);
+        }
+
+        final int offset = (mBehaviourWeight * mNumStates + state) * mNumActions;
+        int bestAction = 0;
+        int numBest = 1;
+        for (int a = 1; a < mNumActions; ++a) {
+            final double value = mQTable[offset + a];
+            final double bestValue = mQTable[offset + bestAction];
+            if (value > bestValue) {
+                bestAction = a;
+                numBest = 1;
+            } else if (value == bestValue && mRandom.nextInt(++numBest) == 0) {
+                bestAction = a;
+            }
+        }
+
+        return bestAction;
+    }
+
+    /**
+     * Remembers the selected action and converts it to an RL-Glue action
+     *
+     * @param action
+     *            The index of the action in the table
+     *
+     * @return The action to perform
+     */
+    private Action performAction(final int action) {
+        mAction = action;
+
+        return DiscreteAction.fromOrdinal(mMinAction + action).convertToRLGlueAction();
+    }
+
+    /**
+     * Accumulates the reward in the return and updates the inventory based on it
+     *
+     * @param reward
+     *            The reward received
+     */
+    private void handleReward(final Reward reward) {
+        for (int i = 1; i < reward.doubleArray.length; ++i) {
+            if (reward.doubleArray[i] != 0) {
+                mInventory |= 1 << (i - 1);
+            }
+        }
+
+        VectorMath.add(mReturn, reward.doubleArray);
+    }
+
+    /**
+     * Builds the non-dominated set of the latest returns of the weight vectors
+     *
+     * @return The solution set found so far
+     */
+    private SolutionSet getSolutionSet() {
+        final SolutionSet solutionSet = new SolutionSet(mReturn.length);
+        for (final double[] weightReturn : mWeightReturns) {
+            if (weightReturn != null) {
+                solutionSet.addSolution(new Solution(weightReturn));
+            }
+        }
+        solutionSet.pruneDominatedSolutions();
+
+        return solutionSet;
+    }
+
+    /**
+     * Resets the agent to the initial state.
+     */
+    @Override
+    public void agent_cleanup() {
+        if (mNumRandomWeights > 0) {
+            mWeights = null;
+        }
+        mQTable = null;
+        mWeightReturns = null;
+    }
+
+    /**
+     * Handles Glue messages.
+     *
+     * @param message
+     *            The message to handle
+     */
+    @Override
+    public String agent_message(final String message) {
+        if (SolutionSetCodec.Encoder.isRequest(message)) {
+            return mSolutionSetEncoder.encode(getSolutionSet(), message);
+        }
+
+        switch (message) {
+            case "isConverged":
+                return "false";
+            case "getSolutionSet":
+                return getSolutionSet().toString();
+            default:
+                return "Cannot parse message";
+        }
+    }
+
+    public static void main(final String[] args) {
+        // Start the agent
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                new AgentLoader(new ScalarisedQLearningAgent()).run();
+            }
+        }).start();
+    }
+
+}
@@ -0,0 +1,167 @@
+package nl.uva.morlb.rg.agent.qlearning;
+
+import java.security.InvalidParameterException;
+
+/**
+ * A fixed amount of vector sets stored in a single flat array. Each set occupies a consecutive block of the array,
+ * which is only moved to the end when the set outgrows it. The blocks left behind are reclaimed by compacting the
+ * array once they make up half of it.
+ */
+public class VectorSetArena {
+
+    /** The amount of objectives of the vectors **/
+    private final int mNumObjectives;
+
+    /** The values of all sets **/
+    private double[] mValues;
+
+    /** The index in the values at which each set starts **/
+    private final int[] mOffsets;
+
+    /** The amount of vectors in each set **/
+    private final int[] mSizes;
+
+    /** The amount of vectors that fit in the block of each set **/
+    private final int[] mCapacities;
+
+    /** The amount of values in use, including abandoned blocks **/
+    private int mNumUsedValues = 0;
+
+    /** The amount of values in abandoned blocks **/
+    private int mNumWastedValues = 0;
+
+    /**
+     * Creates an arena of empty sets
+     *
+     * @param numObjectives
+     *            The amount of objectives of the vectors
+     * @param numSets
+     *            The amount of sets
+     */
+    public VectorSetArena(final int numObjectives, final int numSets) {
+        if (numObjectives < 1 || numSets < 0) {
+            throw new InvalidParameterException(
+                    "The arena requires at least one objective and a non-negative amount of sets");
+        }
+
+        mNumObjectives = numObjectives;
+        mValues = new double[Math.max(16, numSets) * numObjectives];
+        mOffsets = new int[numSets];
+        mSizes = new int[numSets];
+        mCapacities = new int[numSets];
+    }
+
+    /**
+     * Replaces the contents of a set
+     *
+     * @param set
+     *            The index of the set
+     * @param values
+     *            The new vectors, stored consecutively
+     * @param numVectors
+     *            The amount of vectors to take from the start of the values
+     */
+    public void set(final int set, final double[] values, final int numVectors) {
+        if (numVectors > mCapacities[set]) {
+            allocate(set, Math.max(numVectors, mCapacities[set] * 2));
+        }
+
+        System.arraycopy(values, 0, mValues, mOffsets[set], numVectors * mNumObjectives);
+        mSizes[set] = numVectors;
+    }
+
+    /**
+     * Copies the vectors of a set into an array after adding a vector to each of them
+     *
+     * @param set
+     *            The index of the set
+     * @param addition
+     *            The vector to add to each vector of the set
+     * @param destination
+     *            The array to copy into
+     * @param offset
+     *            The index in the destination at which to start
+     *
+     * @return The amount of copied vectors
+     */
+    public int copyShifted(final int set, final double[] addition, final double[] destination, final int offset) {
+        final int size = mSizes[set];
+        int source = mOffsets[set];
+        int target = offset;
+        for (int vector = 0; vector < size; ++vector) {
+            for (int dim = 0; dim < mNumObjectives; ++dim) {
+                destination[target++] = mValues[source++] + addition[dim];
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Get the amount of vectors in a set
+     *
+     * @param set
+     *            The index of the set
+     *
+     * @return The size of the set
+     */
+    public int size(final int set) {
+        return mSizes[set];
+    }
+
+    /**
+     * Moves a set to a new block at the end of the array
+     *
+     * @param set
+     *            The index of the set
+     * @param capacity
+     *            The amount of vectors the new block should fit
+     */
+    private void allocate(final int set, final int capacity) {
+        mNumWastedValues += mCapacities[set] * mNumObjectives;
+        mCapacities[set] = 0;
+        mSizes[set] = 0;
+
+        final int required = mNumUsedValues + capacity * mNumObjectives;
+        if (required > mValues.length) {
+            if (mNumWastedValues * 2 >= mNumUsedValues) {
+                compact(capacity * mNumObjectives);
+            } else {
+                final double[] values = new double[Math.max(required, mValues.length * 2)];
+                System.arraycopy(mValues, 0, values, 0, mNumUsedValues);
+                mValues = values;
+            }
+        }
+
+        mOffsets[set] = mNumUsedValues;
+        mCapacities[set] = capacity;
+        mNumUsedValues += capacity * mNumObjectives;
+    }
+
+    /**
+     * Copies all sets to a new array without abandoned blocks or unused capacity
+     *
+     * @param extraValues
+     *            The amount of values that should fit behind the compacted sets
+     */
+    private void compact(final int extraValues) {
+        int numLiveValues = 0;
+        for (final int size : mSizes) {
+            numLiveValues += size * mNumObjectives;
+        }
+
+        final double[] values = new double[Math.max(mValues.length, (numLiveValues + extraValues) * 2)];
+        int used = 0;
+        for (int set = 0; set < mSizes.length; ++set) {
+            final int length = mSizes[set] * mNumObjectives;
+            System.arraycopy(mValues, mOffsets[set], values, used, length);
+            mOffsets[set] = used;
+            mCapacities[set] = mSizes[set];
+            used += length;
+        }
+
+        mValues = values;
+        mNumUsedValues = used;
+        mNumWastedValues = 0;
+    }
+}
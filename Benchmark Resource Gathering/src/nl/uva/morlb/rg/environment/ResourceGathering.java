@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import nl.uva.morlb.rg.environment.model.DiscreteAction;
 import nl.uva.morlb.rg.environment.model.Location;
@@ -29,6 +30,8 @@ public class ResourceGathering {
     private final List<Resource> mResources;
     /** The goal's location that when reached by the agent indicates a terminal state */
     private final Location mGoal;
+    /** The random number generator for action failures and stochastic rewards */
+    private final Random mRng;
 
     /** The state that the problem starts with */
     private final State mInitialState;
@@ -44,7 +47,20 @@ public class ResourceGathering {
      *            The parameters that define the shape of the problem
      */
     public ResourceGathering(final Parameters parameters) {
+        this(parameters, Util.RNG);
+    }
+
+    /**
+     * Creates a new resource gathering problem based on the given parameters with its own source of randomness.
+     *
+     * @param parameters
+     *            The parameters that define the shape of the problem
+     * @param rng
+     *            The random number generator for action failures and stochastic rewards
+     */
+    public ResourceGathering(final Parameters parameters, final Random rng) {
         mParameters = parameters;
+        mRng = rng;
 
         mResources = mParameters.resources;
         mGoal = new Location(mParameters.maxX, mParameters.maxY);
@@ -104,14 +120,14 @@ public class ResourceGathering {
     public double[] performAction(final Location action) {
         // Determine which failure action to add to the agent's action
         final Location failAction;
-        if (Util.RNG.nextDouble() < mParameters.actionFailProb) {
+        if (mRng.nextDouble() < mParameters.actionFailProb) {
             // Determine which action to modify the requested action with
             if (mParameters.continuousStatesActions) {
-                final double xFail = Util.RNG.nextDouble() * mParameters.maxStepSize * 2 - mParameters.maxStepSize;
-                final double yFail = Util.RNG.nextDouble() * mParameters.maxStepSize * 2 - mParameters.maxStepSize;
+                final double xFail = mRng.nextDouble() * mParameters.maxStepSize * 2 - mParameters.maxStepSize;
+                final double yFail = mRng.nextDouble() * mParameters.maxStepSize * 2 - mParameters.maxStepSize;
                 failAction = new Location(xFail, yFail);
             } else {
-                final int failureIndex = Util.RNG.nextInt(mParameters.actionMax - 1) + 1;
+                final int failureIndex = mRng.nextInt(mParameters.actionMax - 1) + 1;
                 failAction = DiscreteAction.values()[failureIndex].getLocation();
             }
         } else {
@@ -126,7 +142,7 @@ public class ResourceGathering {
         final RewardRange[] rewardRanges = getRewardRanges(mCurrentState, nextState);
         final double[] reward = new double[rewardRanges.length];
         for (int i = 0; i < reward.length; ++i) {
-            reward[i] = rewardRanges[i].calculateReward() * Math.pow(mParameters.discountFactor, mStepCount);
+            reward[i] = rewardRanges[i].calculateReward(mRng) * Math.pow(mParameters.discountFactor, mStepCount);
         }
 
         // Make the transition to the next state
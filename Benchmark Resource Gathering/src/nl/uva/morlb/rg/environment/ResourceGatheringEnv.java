@@ -12,6 +12,7 @@ import nl.uva.morlb.rg.environment.model.Parameters;
 import nl.uva.morlb.rg.environment.model.Resource;
 import nl.uva.morlb.rg.environment.model.RewardRange;
 import nl.uva.morlb.rg.environment.model.State;
+import nl.uva.morlb.util.Metrics;
 import nl.uva.morlb.util.Util;
 
 import org.rlcommunity.rlglue.codec.EnvironmentInterface;
@@ -37,6 +38,8 @@ public class ResourceGatheringEnv implements EnvironmentInterface {
     private final int mNumObservations;
     /** The amount of dimensions in the rewards given, reflects the amount of objectives */
     private final int mNumRewards;
+    /** The random number generator for the stochasticity of the problem and the observations */
+    private final Random mRng;
 
     /**
      * Creates a new resource gathering problem with a default parameter set.
@@ -52,12 +55,25 @@ public class ResourceGatheringEnv implements EnvironmentInterface {
      *            The parameters affecting the problem
      */
     public ResourceGatheringEnv(final Parameters parameters) {
+        this(parameters, Util.RNG);
+    }
+
+    /**
+     * Creates a new resource gathering problem with a given parameter set and its own source of randomness.
+     *
+     * @param parameters
+     *            The parameters affecting the problem
+     * @param rng
+     *            The random number generator for the stochasticity of the problem and the observations
+     */
+    public ResourceGatheringEnv(final Parameters parameters, final Random rng) {
         mParameters = parameters;
         mNumObservations = 4 + mParameters.numResources * 3;
         mNumRewards = 1 + mParameters.numResourceTypes;
+        mRng = rng;
 
         // Initialise the problem
-        mProblem = new ResourceGathering(mParameters);
+        mProblem = new ResourceGathering(mParameters, rng);
     }
 
     /**
@@ -121,6 +137,7 @@ public class ResourceGatheringEnv implements EnvironmentInterface {
      */
     @Override
     public Observation env_start() {
+        Metrics.EPISODES.increment();
         mProblem.reset();
         return getObservation(mProblem.getCurrentState());
     }
@@ -135,6 +152,9 @@ public class ResourceGatheringEnv implements EnvironmentInterface {
      */
     @Override
     public Reward_observation_terminal env_step(final Action action) {
+        final long startTime = Metrics.start();
+        Metrics.STEPS.increment();
+
         final double[] rewardValues;
         if (mParameters.continuousStatesActions) {
             final double x = action.getDouble(0);
@@ -162,6 +182,7 @@ public class ResourceGatheringEnv implements EnvironmentInterface {
         // Check if the resulting state is terminal
         rewObsTer.setTerminal(mProblem.isTerminal(newState));
 
+        Metrics.ENV_STEP.stop(startTime);
         return rewObsTer;
     }
 
@@ -243,7 +264,7 @@ public class ResourceGatheringEnv implements EnvironmentInterface {
             final boolean showResource;
 
             // Check if the observation succeeded
-            if (Util.RNG.nextDouble() < mParameters.observationSuccess) {
+            if (mRng.nextDouble() < mParameters.observationSuccess) {
                 // Determine what resource information to show in the observation
                 showResource = (!state.isPickedUp(resourceIndex++) && Location.distance(agent, resource.getLocation()) <= mParameters.viewDistance);
             } else {
@@ -17,9 +17,15 @@ public enum DiscreteAction {
     DOWNLEFT(-1, -1),
     UPLEFT(-1, 1);
 
+    /** The actions indexed by their ordinal, cached as values() creates a new array on every call */
+    private static final DiscreteAction[] sActions = values();
+
     /** The relative location that this direction goes to */
     private final Location mLocation;
 
+    /** The rl-glue action representing this action */
+    private final Action mRLGlueAction;
+
     /**
      * Prepares an action with the specified coordinates.
      * 
@@ -30,6 +36,21 @@ public enum DiscreteAction {
      */
     private DiscreteAction(final int x, final int y) {
         mLocation = new Location(x, y);
+
+        mRLGlueAction = new Action(1, 0);
+        mRLGlueAction.intArray[0] = ordinal();
+    }
+
+    /**
+     * Gets the action with the given ordinal without copying the array of actions.
+     * 
+     * @param ordinal
+     *            The ordinal of the action
+     * 
+     * @return The action
+     */
+    public static DiscreteAction fromOrdinal(final int ordinal) {
+        return sActions[ordinal];
     }
 
     /**
@@ -40,15 +61,13 @@ public enum DiscreteAction {
     }
 
     /**
-     * Converts this action into the appropriate rl-glue action
+     * Converts this action into the appropriate rl-glue action. The same instance is returned on every call, so it may
+     * not be modified.
      * 
      * @return The rl-glue action
      */
     public Action convertToRLGlueAction() {
-        Action action = new Action(1, 0);
-        action.intArray[0] = this.ordinal();
-
-        return action;
+        return mRLGlueAction;
     }
 
 }
@@ -223,6 +223,10 @@ public class Parameters {
         final double maxY = Double.parseDouble(values[1]);
         final boolean continuousStatesActions = Boolean.parseBoolean(values[6]);
 
+        // The toString format does not contain whether resources are picked up on collection
+        final boolean hasPickUpOnCollect = ((values.length - 9) % 5 != 0);
+        final boolean pickUpOnCollect = (hasPickUpOnCollect ? Boolean.parseBoolean(values[9]) : PICK_UP_ON_COLLECT);
+
         final List<Resource> resources = new LinkedList<>();
         if (values.length == 12) {
             final int numObjectives = Integer.parseInt(values[10]);
@@ -234,7 +238,7 @@ public class Parameters {
                 resources.add(new Resource(type, x, y));
             }
         } else {
-            for (int i = 10; i < values.length; i += 5) {
+            for (int i = (hasPickUpOnCollect ? 10 : 9); i < values.length; i += 5) {
                 resources.add(Resource.fromString(values[i] + " " + values[i + 1] + " " + values[i + 2] + " "
                         + values[i + 3] + " " + values[i + 4]));
             }
@@ -242,7 +246,7 @@ public class Parameters {
 
         return new Parameters(maxX, maxY, resources, Integer.parseInt(values[2]), Double.parseDouble(values[3]),
                 Double.parseDouble(values[4]), Double.parseDouble(values[5]), continuousStatesActions,
-                Integer.parseInt(values[7]), Integer.parseInt(values[8]), Boolean.parseBoolean(values[9]));
+                Integer.parseInt(values[7]), Integer.parseInt(values[8]), pickUpOnCollect);
     }
 
     /**
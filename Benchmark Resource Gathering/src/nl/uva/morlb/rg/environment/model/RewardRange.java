@@ -1,6 +1,7 @@
 package nl.uva.morlb.rg.environment.model;
 
 import java.security.InvalidParameterException;
+import java.util.Random;
 
 import nl.uva.morlb.util.Util;
 
@@ -37,7 +38,19 @@ public class RewardRange {
      * @return A reward for collecting a resource
      */
     public double calculateReward() {
-        return Util.RNG.nextDouble() * (max - min) + min;
+        return calculateReward(Util.RNG);
+    }
+
+    /**
+     * Calculates the reward that should be given when a resource is collected using the given random number generator.
+     * 
+     * @param rng
+     *            The random number generator to draw the reward with
+     * 
+     * @return A reward for collecting a resource
+     */
+    public double calculateReward(final Random rng) {
+        return rng.nextDouble() * (max - min) + min;
     }
 
     /**
@@ -0,0 +1,301 @@
+package nl.uva.morlb.rg.experiment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import nl.uva.morlb.rg.experiment.model.ColumnarSolutionSet;
+
+/**
+ * Calculates the additive and multiplicative epsilon indicators of solution sets against a reference set that is
+ * prepared once. Both indicators are the maximum over the reference solutions of the minimum over the solutions of the
+ * epsilon needed to weakly dominate the reference solution, which allows two kinds of early termination:
+ * <ul>
+ * <li>A reference solution is abandoned as soon as a solution is found that needs less than the indicator so far, as
+ * it can then no longer raise the indicator.</li>
+ * <li>A solution is abandoned as soon as one of its objectives needs more than the best solution for the reference
+ * solution so far, as it can then no longer lower that minimum.</li>
+ * </ul>
+ * The reference set is sorted so that the solutions with the highest values, which are the hardest to approximate, are
+ * visited first, raising the indicator early so that more of the others terminate early. Large sets are split over
+ * several threads. Only comparisons are skipped, so the results are equal to those of comparing every pair.
+ */
+public class EpsilonIndicator {
+
+    /** The amount of solution pairs from which the reference solutions are split over several threads */
+    private static final long PARALLEL_THRESHOLD = 1 << 18;
+    /** The amount of threads to split large sets over */
+    private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** The threads evaluating large sets, created when first needed */
+    private static ExecutorService sExecutor = null;
+
+    /** The reference set, sorted by decreasing sum of values */
+    private final ColumnarSolutionSet mReferenceSet;
+
+    /**
+     * Prepares the calculation of the epsilon indicators against a reference set.
+     *
+     * @param referenceSet
+     *            The true Pareto front or a good approximation to which the solution sets are compared
+     */
+    public EpsilonIndicator(final ColumnarSolutionSet referenceSet) {
+        final int numObjectives = referenceSet.getNumObjectives();
+        final int numSolutions = referenceSet.getNumSolutions();
+        final double[] values = referenceSet.getValues();
+
+        final double[] sums = new double[numSolutions];
+        final Integer[] order = new Integer[numSolutions];
+        for (int ref = 0; ref < numSolutions; ++ref) {
+            for (int dim = 0; dim < numObjectives; ++dim) {
+                sums[ref] += values[referenceSet.getOffset(ref) + dim];
+            }
+            order[ref] = ref;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer first, final Integer second) {
+                return Double.compare(sums[second], sums[first]);
+            }
+        });
+
+        final double[] sortedValues = new double[numSolutions * numObjectives];
+        for (int i = 0; i < numSolutions; ++i) {
+            System.arraycopy(values, referenceSet.getOffset(order[i]), sortedValues, i * numObjectives, numObjectives);
+        }
+        mReferenceSet = new ColumnarSolutionSet(numObjectives, sortedValues, numSolutions);
+    }
+
+    /**
+     * Calculates the additive epsilon indicator of a solution set, i.e. the smallest epsilon which has to be added to
+     * the solution set so that it weakly dominates the reference set. If the amount of objectives differs, only the
+     * objectives both sets have are compared.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     *
+     * @return The additive epsilon indicator
+     */
+    public double additive(final ColumnarSolutionSet solutionSet) {
+        final int numObjectives = Math.min(solutionSet.getNumObjectives(), mReferenceSet.getNumObjectives());
+        // the index finds the best solution without comparing all of them, if all objectives are compared
+        final NearestNeighbourIndex index = (solutionSet.getNumObjectives() == numObjectives
+                ? new NearestNeighbourIndex(solutionSet) : null);
+
+        return evaluate(new Evaluation(mReferenceSet.getValues(), solutionSet.getValues(), solutionSet
+                .getNumObjectives(), solutionSet.getNumSolutions(), numObjectives) {
+            @Override
+            double bestEpsilon(final int ref, final double stopBound) {
+                if (index != null) {
+                    return index.nearestDistance(refValues, ref, NearestNeighbourIndex.Distance.ADDITIVE_EPSILON,
+                            stopBound);
+                }
+
+                double singleEpsilon = Double.POSITIVE_INFINITY;
+                for (int sol = 0; sol < solValuesEnd && !(singleEpsilon < stopBound); sol += solStride) {
+                    double maxEpsilonPerSingleDim = Double.NEGATIVE_INFINITY;
+                    for (int dim = 0; dim < numObjectives && !(maxEpsilonPerSingleDim > singleEpsilon); ++dim) {
+                        maxEpsilonPerSingleDim = Math.max(refValues[ref + dim] - solValues[sol + dim],
+                                maxEpsilonPerSingleDim);
+                    }
+                    singleEpsilon = Math.min(singleEpsilon, maxEpsilonPerSingleDim);
+                }
+                return singleEpsilon;
+            }
+        });
+    }
+
+    /**
+     * Calculates the multiplicative epsilon indicator of a solution set, i.e. the smallest epsilon so that to the
+     * solution weakly dominates the reference set if multiplied with the factor epsilon. If the amount of objectives
+     * differs, only the objectives both sets have are compared.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param horizon
+     *            The experiment's horizon by which the first objective is shifted to make it non-negative
+     *
+     * @return The multiplicative epsilon indicator
+     */
+    public double multiplicative(final ColumnarSolutionSet solutionSet, final int horizon) {
+        final int numObjectives = Math.min(solutionSet.getNumObjectives(), mReferenceSet.getNumObjectives());
+
+        return evaluate(new Evaluation(shift(mReferenceSet, horizon), shift(solutionSet, horizon), solutionSet
+                .getNumObjectives(), solutionSet.getNumSolutions(), numObjectives) {
+            @Override
+            double bestEpsilon(final int ref, final double stopBound) {
+                double singleEpsilon = Double.POSITIVE_INFINITY;
+                for (int sol = 0; sol < solValuesEnd && !(singleEpsilon < stopBound); sol += solStride) {
+                    double maxEpsilonPerSingleDim = Double.NEGATIVE_INFINITY;
+                    for (int dim = 0; dim < numObjectives && !(maxEpsilonPerSingleDim > singleEpsilon); ++dim) {
+                        maxEpsilonPerSingleDim = Math.max(
+                                Judge.multiplicativeEpsilon(solValues[sol + dim], refValues[ref + dim]),
+                                maxEpsilonPerSingleDim);
+                    }
+                    singleEpsilon = Math.min(singleEpsilon, maxEpsilonPerSingleDim);
+                }
+                return singleEpsilon;
+            }
+        });
+    }
+
+    /**
+     * Copies the values of a solution set with the first objective shifted by the horizon, in the same way as
+     * {@link Judge#multiplicativeEpsilon(double[], int, double[], int, int, int)}.
+     *
+     * @param solutionSet
+     *            The solution set to shift
+     * @param horizon
+     *            The experiment's horizon
+     *
+     * @return The shifted values, one solution after the other
+     */
+    private static double[] shift(final ColumnarSolutionSet solutionSet, final int horizon) {
+        final double[] values = Arrays.copyOf(solutionSet.getValues(), solutionSet.getNumSolutions()
+                * solutionSet.getNumObjectives());
+        for (int sol = 0; sol < solutionSet.getNumSolutions(); ++sol) {
+            values[solutionSet.getOffset(sol)] -= -horizon;
+        }
+        return values;
+    }
+
+    /**
+     * The comparison of the reference set with a solution set for one of the indicators
+     */
+    private abstract class Evaluation {
+
+        /** The values of the reference set, one solution after the other */
+        protected final double[] refValues;
+        /** The values of the solution set, one solution after the other */
+        protected final double[] solValues;
+        /** The distance between consecutive solutions in the solution values */
+        protected final int solStride;
+        /** The amount of solutions in the solution set */
+        protected final int numSolutions;
+        /** The position after the last solution in the solution values */
+        protected final int solValuesEnd;
+        /** The amount of objectives compared */
+        protected final int numObjectives;
+
+        /**
+         * Creates an evaluation.
+         *
+         * @param refValues
+         *            The values of the reference set, one solution after the other
+         * @param solValues
+         *            The values of the solution set, one solution after the other
+         * @param solStride
+         *            The amount of objectives of the solution set
+         * @param numSolutions
+         *            The amount of solutions in the solution set
+         * @param numObjectives
+         *            The amount of objectives compared
+         */
+        public Evaluation(final double[] refValues, final double[] solValues, final int solStride,
+                final int numSolutions, final int numObjectives) {
+            this.refValues = refValues;
+            this.solValues = solValues;
+            this.solStride = solStride;
+            this.numSolutions = numSolutions;
+            solValuesEnd = numSolutions * solStride;
+            this.numObjectives = numObjectives;
+        }
+
+        /**
+         * Finds the smallest epsilon for which a solution weakly epsilon-dominates a reference solution, unless it is
+         * below a given bound.
+         *
+         * @param ref
+         *            The offset of the reference solution in the reference values
+         * @param stopBound
+         *            The epsilon below which the exact smallest epsilon is not needed
+         *
+         * @return The smallest epsilon if that is at least the bound, or otherwise an epsilon below the bound
+         */
+        abstract double bestEpsilon(int ref, double stopBound);
+
+        /**
+         * Finds the largest of the smallest epsilons of a part of the reference solutions.
+         *
+         * @param first
+         *            The index of the first reference solution
+         * @param step
+         *            The difference in index between the reference solutions
+         *
+         * @return The largest smallest epsilon, or negative infinity if there are no reference solutions
+         */
+        public double largestEpsilon(final int first, final int step) {
+            double epsilon = Double.NEGATIVE_INFINITY;
+            for (int refIndex = first; refIndex < mReferenceSet.getNumSolutions(); refIndex += step) {
+                epsilon = Math.max(bestEpsilon(mReferenceSet.getOffset(refIndex), epsilon), epsilon);
+            }
+            return epsilon;
+        }
+    }
+
+    /**
+     * Calculates an indicator, splitting the reference solutions over several threads if there are many pairs.
+     *
+     * @param evaluation
+     *            The evaluation of the indicator
+     *
+     * @return The indicator
+     */
+    private double evaluate(final Evaluation evaluation) {
+        final int numRefs = mReferenceSet.getNumSolutions();
+        final long numPairs = (long) numRefs * evaluation.numSolutions;
+        if (NUM_THREADS == 1 || numRefs < NUM_THREADS || numPairs < PARALLEL_THRESHOLD) {
+            return evaluation.largestEpsilon(0, 1);
+        }
+
+        // Every thread takes every so many reference solutions, so that all start with some of the hardest ones
+        final List<Future<Double>> futures = new ArrayList<>();
+        for (int thread = 0; thread < NUM_THREADS; ++thread) {
+            final int first = thread;
+            futures.add(getExecutor().submit(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return evaluation.largestEpsilon(first, NUM_THREADS);
+                }
+            }));
+        }
+
+        double epsilon = Double.NEGATIVE_INFINITY;
+        try {
+            for (final Future<Double> future : futures) {
+                epsilon = Math.max(future.get(), epsilon);
+            }
+        } catch (final ExecutionException ex) {
+            throw new RuntimeException("Calculating the epsilon indicator failed", ex.getCause());
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+        return epsilon;
+    }
+
+    /**
+     * @return The threads evaluating large sets
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "Epsilon indicator");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+}
@@ -1,17 +1,31 @@
 package nl.uva.morlb.rg.experiment;
 
+import java.security.InvalidParameterException;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Random;
 
+import nl.uva.morlb.rg.agent.RandomAgent;
+import nl.uva.morlb.rg.agent.convexhull.ConvexHullValueIteration;
+import nl.uva.morlb.rg.agent.momcts.MOMCTSAgent;
+import nl.uva.morlb.rg.agent.qlearning.ParetoQLearningAgent;
+import nl.uva.morlb.rg.agent.qlearning.ScalarisedQLearningAgent;
 import nl.uva.morlb.rg.environment.ResourceGatheringEnv;
 import nl.uva.morlb.rg.environment.SdpCollection;
 import nl.uva.morlb.rg.environment.model.Parameters;
 import nl.uva.morlb.rg.experiment.model.LinearScalarisation;
 import nl.uva.morlb.rg.experiment.model.Scalarisation;
 import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.rg.experiment.model.SolutionSetCodec;
+import nl.uva.morlb.util.EventTrace;
 import nl.uva.morlb.util.Log;
+import nl.uva.morlb.util.ResultWriter;
 
+import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.RLGlue;
+import org.rlcommunity.rlglue.codec.util.AgentLoader;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
 
 /**
@@ -21,13 +35,30 @@ public class Experiment {
 
     /** The resource gathering problem */
     private static ResourceGatheringEnv sProblem;
+    /** The agent to run alongside the experiment, or null if the agent is started separately */
+    private static AgentInterface sAgent;
     /** The seeded random number generator */
     private final static Random sRng = new Random(62434);
 
+    /** The names of the metrics written per episode */
+    private static final String[] METRIC_NAMES = { "averageReward", "averageRewardStd", "onvg", "spacing", "spread",
+            "hypervolume", "additiveEpsilon", "multiplicativeEpsilon" };
+
+    /** Whether the results of every episode are printed to the console */
+    private static final boolean ECHO_RESULTS = Log.F;
+
     /**
      * Runs the full experiment.
      */
     public void runExperiment() {
+        final ResultWriter resultWriter;
+        try {
+            resultWriter = new ResultWriter("results "
+                    + new SimpleDateFormat("yyyy-MM-dd HH-mm-ss").format(new Date()), METRIC_NAMES,
+                    sProblem.getParameters().numResourceTypes + 1, ECHO_RESULTS);
+        } catch (final IOException ex) {
+            throw new RuntimeException(ex);
+        }
 
         for (int test = 1; test <= 10; ++test) {
             Log.f("\n\n========== TEST " + test + " ==========\n\n");
@@ -36,43 +67,40 @@ public class Experiment {
 
             final SolutionSet optimalSolution = OptimalSolutions.getSolution(sProblem.getParameters());
 
-            String solutionSetString = "";
+            // The scalarisation to evaluate the average reward with
+            final Scalarisation scalarisation = new LinearScalarisation(sProblem.getParameters().numResourceTypes + 1);
+            // final Scalarisation scalarisation = new MinScalarisation(
+            // sProblem.getParameters().numResourceTypes + 1);
+            final MetricEngine metricEngine = new MetricEngine(sProblem.getParameters().numResourceTypes + 1,
+                    sProblem.getParameters().horizon, scalarisation, Judge.NUM_WEIGHT_VECTORS, optimalSolution);
+            // Evaluate the metrics on other threads so that the episodes can continue meanwhile
+            final MetricPipeline metricPipeline = new MetricPipeline(metricEngine, MetricPipeline.DEFAULT_CAPACITY,
+                    Runtime.getRuntime().availableProcessors(), createResultSink(resultWriter, test));
+
+            // Only the changes to the solution set are sent between episodes
+            final SolutionSetCodec.Decoder solutionSetDecoder = new SolutionSetCodec.Decoder();
+            boolean skippedSolutionSet = false;
             int episode;
             for (episode = 0; episode < 1000; ++episode) {
+                EventTrace.episodeStart(episode);
+                final long episodeStartTime = EventTrace.begin();
                 RLGlue.RL_episode(-sProblem.getParameters().horizon);
+                if (EventTrace.T) {
+                    EventTrace.episodeEnd(episodeStartTime, episode, RLGlue.RL_num_steps(),
+                            RLGlue.RL_return().doubleArray);
+                }
 
-                solutionSetString = RLGlue.RL_agent_message("getSolutionSet");
-                if (!solutionSetString.equals("")) {
-                    String metrics = "";
-
-                    final SolutionSet solutionSet = new SolutionSet(solutionSetString);
-
-                    // Scalarisation must be created here for random seed purposes
-                    final Scalarisation scalarisation = new LinearScalarisation(
-                            sProblem.getParameters().numResourceTypes + 1);
-                    // final Scalarisation scalarisation = new MinScalarisation(
-                    // sProblem.getParameters().numResourceTypes + 1);
-
-                    // Calculate non-reference metrics
-                    final double[] avgRew = Judge.averageReward(solutionSet, scalarisation);
-                    final int oNVG = Judge.overallNondominatedVectorGeneration(solutionSet);
-                    final double unif = Judge.schottSpacingMetric(solutionSet);
-                    final double spread = Judge.maximumSpread(solutionSet);
-                    final double hypervolume = Judge.hypervolume(solutionSet, sProblem.getParameters().horizon);
-                    final double[] returnValues = RLGlue.RL_return().doubleArray;
-
-                    metrics += avgRew[0] + " " + avgRew[1] + " " + oNVG + " " + unif + " " + spread + " " + hypervolume;
-
-                    // Check if we can use reference set metrics
-                    if (optimalSolution != null) {
-                        final double addEpsilon = Judge.additiveEpsilonIndicator(solutionSet, optimalSolution);
-                        final double multEpsilon = Judge.multiplicativeEpsilonIndicator(solutionSet, optimalSolution,
-                                sProblem.getParameters().horizon);
-
-                        metrics += " " + addEpsilon + " " + multEpsilon;
-                    }
-
-                    Log.f(metrics + " " + Arrays.toString(returnValues));
+                solutionSetDecoder.decode(RLGlue.RL_agent_message(solutionSetDecoder.getRequest()));
+                if (solutionSetDecoder.getNumSolutions() == 0) {
+                    skippedSolutionSet = true;
+                } else if (skippedSolutionSet) {
+                    // The changes of skipped episodes were not passed on, so the full set is needed
+                    metricPipeline.submit(episode, solutionSetDecoder.getSolutionSet().toString(),
+                            RLGlue.RL_return().doubleArray);
+                    skippedSolutionSet = false;
+                } else {
+                    metricPipeline.submit(episode, solutionSetDecoder.getAdded(), solutionSetDecoder.getRemoved(),
+                            RLGlue.RL_return().doubleArray);
                 }
 
                 // Print final results at the end of the test
@@ -80,10 +108,11 @@ public class Experiment {
                     break;
                 }
             }
+            metricPipeline.close();
 
             Log.f("\n\n");
             Log.f("Number of episodes: " + episode);
-            Log.f("Solution set: " + solutionSetString);
+            Log.f("Solution set: " + solutionSetDecoder.getSolutionSet());
             if (optimalSolution != null) {
                 Log.f("Optimal set: " + optimalSolution);
             }
@@ -93,12 +122,83 @@ public class Experiment {
             sProblem.shuffleResources(sRng);
         }
 
+        try {
+            resultWriter.close();
+        } catch (final IOException ex) {
+            ex.printStackTrace();
+        }
         System.exit(0);
     }
 
+    /**
+     * Creates a sink that passes the metrics of every evaluated episode to a result writer.
+     *
+     * @param resultWriter
+     *            The writer to pass the results to
+     * @param test
+     *            The test that the episodes belong to
+     *
+     * @return The sink
+     */
+    private static MetricPipeline.Sink createResultSink(final ResultWriter resultWriter, final int test) {
+        return new MetricPipeline.Sink() {
+            @Override
+            public void onMetrics(final int episode, final MetricEngine metricEngine, final double[] episodeReturn) {
+                final double[] avgRew = metricEngine.getAverageReward();
+
+                // Reference set metrics are unknown without a reference set
+                final boolean hasReference = metricEngine.hasReferenceSet();
+                final double[] metrics = { avgRew[0], avgRew[1], metricEngine.getOverallNondominatedVectorGeneration(),
+                        metricEngine.getSpacing(), metricEngine.getSpread(), metricEngine.getHypervolume(),
+                        hasReference ? metricEngine.getAdditiveEpsilon() : Double.NaN,
+                        hasReference ? metricEngine.getMultiplicativeEpsilon() : Double.NaN };
+
+                resultWriter.write(test, episode, metrics, episodeReturn);
+            }
+        };
+    }
+
+    /**
+     * Creates an agent to run alongside the experiment.
+     *
+     * @param name
+     *            The name of the agent
+     *
+     * @return The agent
+     */
+    static AgentInterface createAgent(final String name) {
+        switch (name) {
+            case "random":
+                return new RandomAgent();
+            case "chvi":
+                return new ConvexHullValueIteration();
+            case "momcts":
+                return new MOMCTSAgent();
+            case "sql":
+                return new ScalarisedQLearningAgent();
+            case "pql":
+                return new ParetoQLearningAgent();
+            default:
+                throw new InvalidParameterException("Unknown agent: " + name);
+        }
+    }
+
+    /**
+     * Starts the experiment and environment. The arguments may start with "-agent <name>" to run one of the agents in
+     * the same process, the remaining arguments specify the problem parameters.
+     *
+     * @param args
+     *            The optional agent selection followed by the optional problem parameters
+     */
     public static void main(final String[] args) {
-        if (args.length > 0) {
-            sProblem = new ResourceGatheringEnv(Parameters.fromString(args, sRng));
+        String[] parameters = args;
+        if (args.length >= 2 && args[0].equals("-agent")) {
+            sAgent = createAgent(args[1]);
+            parameters = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        if (parameters.length > 0) {
+            sProblem = new ResourceGatheringEnv(Parameters.fromString(parameters, sRng));
         } else {
             sProblem = new ResourceGatheringEnv(SdpCollection.getSimpleProblem());
         }
@@ -118,6 +218,16 @@ public class Experiment {
                 new EnvironmentLoader(sProblem).run();
             }
         }).start();
+
+        // Start the selected agent
+        if (sAgent != null) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    new AgentLoader(sAgent).run();
+                }
+            }).start();
+        }
     }
 
 }
@@ -0,0 +1,248 @@
+package nl.uva.morlb.rg.experiment;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jmetal.qualityIndicator.fastHypervolume.wfg.Front;
+import jmetal.qualityIndicator.fastHypervolume.wfg.Point;
+import jmetal.qualityIndicator.fastHypervolume.wfg.WFGHV;
+import nl.uva.morlb.rg.experiment.model.ColumnarSolutionSet;
+
+/**
+ * Calculates the hypervolume of solution sets with an algorithm chosen by the amount of objectives. Two objectives are
+ * handled by a sort and sweep in O(n log n), three objectives by a sweep over the third objective that maintains the
+ * two-dimensional front in a balanced search tree in O(n log n), and more objectives by the WFG algorithm. Solutions
+ * that do not exceed the reference point in every objective do not contribute to the hypervolume.
+ */
+public class HypervolumeEngine {
+
+    /**
+     * Calculates the hypervolume of a solution set with the default reference point.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param horizon
+     *            The experiment's horizon for reference point purpose
+     *
+     * @return The hypervolume of the solution set
+     */
+    public static double hypervolume(final ColumnarSolutionSet solutionSet, final int horizon) {
+        return hypervolume(solutionSet, Judge.standardReferencepoint(solutionSet.getNumObjectives(), horizon));
+    }
+
+    /**
+     * Calculates the hypervolume of a solution set given a reference point.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param referencePoint
+     *            The reference point for the hypervolume
+     *
+     * @return The hypervolume of the solution set
+     */
+    public static double hypervolume(final ColumnarSolutionSet solutionSet, final double[] referencePoint) {
+        final int numObjectives = solutionSet.getNumObjectives();
+        if (referencePoint.length != numObjectives) {
+            throw new InvalidParameterException(
+                    "For the hypervolume the reference point has to have the same dimension as the solutions.");
+        }
+
+        // Shift the solutions according to the reference point, dropping the ones that do not exceed it
+        final double[] values = solutionSet.getValues();
+        final double[][] points = new double[solutionSet.getNumSolutions()][];
+        int numPoints = 0;
+        pointCheck:
+        for (int sol = 0; sol < solutionSet.getNumSolutions(); ++sol) {
+            final int offset = solutionSet.getOffset(sol);
+            final double[] point = new double[numObjectives];
+            for (int dim = 0; dim < numObjectives; ++dim) {
+                point[dim] = values[offset + dim] - referencePoint[dim];
+                if (!(point[dim] > 0)) {
+                    continue pointCheck;
+                }
+            }
+            points[numPoints++] = point;
+        }
+
+        if (numPoints == 0) {
+            return 0;
+        }
+
+        switch (numObjectives) {
+            case 1:
+                double max = 0;
+                for (int i = 0; i < numPoints; ++i) {
+                    max = Math.max(max, points[i][0]);
+                }
+                return max;
+            case 2:
+                return sweep2D(points, numPoints);
+            case 3:
+                return sweep3D(points, numPoints);
+            default:
+                return wfg(points, numPoints, numObjectives);
+        }
+    }
+
+    /**
+     * Calculates the hypervolume of two-dimensional points by sweeping along the first objective.
+     *
+     * @param points
+     *            The points relative to the reference point, which are reordered
+     * @param numPoints
+     *            The amount of points to consider from the start of the array
+     *
+     * @return The hypervolume of the points
+     */
+    static double sweep2D(final double[][] points, final int numPoints) {
+        Arrays.sort(points, 0, numPoints, new ObjectiveComparator(0));
+
+        double hypervolume = 0;
+        double height = 0;
+        for (int i = 0; i < numPoints; ++i) {
+            if (points[i][1] > height) {
+                hypervolume += points[i][0] * (points[i][1] - height);
+                height = points[i][1];
+            }
+        }
+
+        return hypervolume;
+    }
+
+    /**
+     * Calculates the hypervolume of three-dimensional points by sweeping along the third objective. The area of the
+     * two-dimensional front of the points swept so far is updated with the exclusive contribution of every new point,
+     * which only depends on its neighbours in the front. (See C. M. Fonseca, L. Paquete, M. Lopez-Ibanez: An Improved
+     * Dimension-Sweep Algorithm for the Hypervolume Indicator, IEEE Congress on Evolutionary Computation, pp.
+     * 1157-1163, 2006)
+     *
+     * @param points
+     *            The points relative to the reference point, which are reordered
+     * @param numPoints
+     *            The amount of points to consider from the start of the array
+     *
+     * @return The hypervolume of the points
+     */
+    static double sweep3D(final double[][] points, final int numPoints) {
+        Arrays.sort(points, 0, numPoints, new ObjectiveComparator(2));
+
+        // The two-dimensional front, ascending on the first objective and thereby descending on the second
+        final TreeMap<Double, Double> front = new TreeMap<>();
+        double area = 0;
+        double hypervolume = 0;
+        for (int i = 0; i < numPoints; ++i) {
+            area += addToFront(front, points[i][0], points[i][1]);
+
+            final double nextDepth = (i + 1 < numPoints ? points[i + 1][2] : 0);
+            hypervolume += area * (points[i][2] - nextDepth);
+        }
+
+        return hypervolume;
+    }
+
+    /**
+     * Adds a point to a two-dimensional front, removing the points it dominates.
+     *
+     * @param front
+     *            The front as a map from the first to the second objective
+     * @param x
+     *            The first objective of the point
+     * @param y
+     *            The second objective of the point
+     *
+     * @return The area added to the front
+     */
+    static double addToFront(final TreeMap<Double, Double> front, final double x, final double y) {
+        final Map.Entry<Double, Double> right = front.ceilingEntry(x);
+        if (right != null && right.getValue() >= y) {
+            return 0;
+        }
+
+        // The front left of the new point is as high as the first point reaching at least as far
+        double height = (right != null ? right.getValue() : 0);
+
+        // A point reaching equally far in the first objective is dominated
+        if (right != null && right.getKey() == x) {
+            front.remove(right.getKey());
+        }
+
+        // Integrate the gap between the new point and the front, from the new point towards the origin
+        double area = 0;
+        double previousX = x;
+        Map.Entry<Double, Double> left = front.lowerEntry(x);
+        while (left != null && left.getValue() <= y) {
+            area += (previousX - left.getKey()) * (y - height);
+            height = left.getValue();
+            previousX = left.getKey();
+            front.remove(left.getKey());
+            left = front.lowerEntry(previousX);
+        }
+        area += (previousX - (left != null ? left.getKey() : 0)) * (y - height);
+
+        front.put(x, y);
+        return area;
+    }
+
+    /**
+     * Calculates the hypervolume of points with four or more objectives using the WFG algorithm. (See L. While, L.
+     * Bradstreet, L. Barone: A Fast Way of Calculating Exact Hypervolumes. IEEE Transactions on Evolutionary
+     * Computation 16(1), 86-95 (2012))
+     *
+     * @param points
+     *            The points relative to the reference point
+     * @param numPoints
+     *            The amount of points to consider from the start of the array
+     * @param numObjectives
+     *            The amount of objectives of the points
+     *
+     * @return The hypervolume of the points
+     */
+    private static double wfg(final double[][] points, final int numPoints, final int numObjectives) {
+        // The implementation minimises, so the points are mirrored around the reference point at the origin
+        final List<double[]> mirroredPoints = new ArrayList<>(numPoints);
+        for (int i = 0; i < numPoints; ++i) {
+            final double[] mirrored = new double[numObjectives];
+            for (int dim = 0; dim < numObjectives; ++dim) {
+                mirrored[dim] = -points[i][dim];
+            }
+            mirroredPoints.add(mirrored);
+        }
+
+        final Front front = new Front(numPoints, numObjectives, mirroredPoints);
+        // The list constructor does not set the amount of points in use
+        front.nPoints_ = numPoints;
+
+        final WFGHV wfg = new WFGHV(numObjectives, numPoints + 2, new Point(new double[numObjectives]));
+        return wfg.getHV(front);
+    }
+
+    /**
+     * Sorts points descending on a single objective
+     */
+    static class ObjectiveComparator implements Comparator<double[]> {
+
+        /** The objective to sort on */
+        private final int mObjective;
+
+        /**
+         * Creates a comparator for the given objective
+         *
+         * @param objective
+         *            The objective to sort on
+         */
+        public ObjectiveComparator(final int objective) {
+            mObjective = objective;
+        }
+
+        @Override
+        public int compare(final double[] first, final double[] second) {
+            return Double.compare(second[mObjective], first[mObjective]);
+        }
+    }
+
+}
@@ -0,0 +1,416 @@
+package nl.uva.morlb.rg.experiment;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Maintains the hypervolume indicator of a growing Pareto front without recalculating it from scratch. Every inserted
+ * point adds its exclusive contribution to the indicator, while the points it dominates are dropped as they no longer
+ * contribute. Two objectives are handled by a sorted staircase in which a contribution only depends on the points
+ * around the position of the new one. Three objectives keep the front sorted on the third objective, so that a
+ * contribution is found by a single sweep along that objective over the front limited to the box of the new point.
+ * More objectives compute the contribution as the volume of the point minus the hypervolume of the front limited to
+ * that point.
+ */
+public class IncrementalHypervolume {
+
+    /** The reference point from which the volume is measured **/
+    private final double[] mReferencePoint;
+
+    /** The amount of objectives **/
+    private final int mNumObjectives;
+
+    /**
+     * The non-dominated points relative to the reference point, sorted ascending on the first objective for two
+     * objectives and descending on the third objective for three objectives
+     **/
+    private double[][] mPoints = new double[16][];
+
+    /** The amount of points in the front **/
+    private int mNumPoints = 0;
+
+    /** The hypervolume of the current front **/
+    private double mHypervolume = 0;
+
+    /**
+     * Creates an empty front for the given reference point
+     *
+     * @param referencePoint
+     *            The reference point of the hypervolume indicator
+     */
+    public IncrementalHypervolume(final double[] referencePoint) {
+        if (referencePoint.length < 2) {
+            throw new InvalidParameterException("The hypervolume requires at least two objectives");
+        }
+
+        mReferencePoint = referencePoint.clone();
+        mNumObjectives = referencePoint.length;
+    }
+
+    /**
+     * Adds a point to the front and updates the hypervolume indicator with its exclusive contribution. Points that are
+     * weakly dominated or that do not exceed the reference point in every objective do not change the front.
+     *
+     * @param values
+     *            The objective values of the point
+     *
+     * @return The exclusive contribution of the point to the hypervolume
+     */
+    public double add(final double[] values) {
+        if (values.length != mNumObjectives) {
+            throw new InvalidParameterException("The point must have the same dimension as the reference point");
+        }
+
+        final double[] point = new double[mNumObjectives];
+        for (int dim = 0; dim < mNumObjectives; ++dim) {
+            point[dim] = values[dim] - mReferencePoint[dim];
+            if (point[dim] <= 0) {
+                return 0;
+            }
+        }
+
+        final double contribution;
+        switch (mNumObjectives) {
+            case 2:
+                contribution = addToStaircase(point);
+                break;
+            case 3:
+                contribution = addToSweepFront(point);
+                break;
+            default:
+                contribution = addToFront(point);
+                break;
+        }
+        mHypervolume += contribution;
+        return contribution;
+    }
+
+    /**
+     * Inserts a point in the staircase of a two-objective front. The staircase is sorted ascending on the first
+     * objective and thereby descending on the second, so the points dominated by the new one form a consecutive block
+     * directly before its position.
+     *
+     * @param point
+     *            The point relative to the reference point
+     *
+     * @return The exclusive contribution of the point
+     */
+    private double addToStaircase(final double[] point) {
+        final double x = point[0];
+        final double y = point[1];
+
+        // Find the first point that reaches at least as far in the first objective
+        int low = 0;
+        int high = mNumPoints;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mPoints[mid][0] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        final int position = low;
+
+        if (position < mNumPoints && mPoints[position][1] >= y) {
+            return 0;
+        }
+
+        // A point reaching equally far in the first objective is dominated as well
+        final int end = (position < mNumPoints && mPoints[position][0] == x ? position + 1 : position);
+
+        // The points dominated by the new one form the block from first up to end
+        int first = position;
+        while (first > 0 && mPoints[first - 1][1] <= y) {
+            --first;
+        }
+
+        // Integrate the gap between the new point and the staircase over the first objective
+        double contribution = 0;
+        double previousX = (first > 0 ? mPoints[first - 1][0] : 0);
+        for (int i = first; i < position; ++i) {
+            contribution += (mPoints[i][0] - previousX) * (y - mPoints[i][1]);
+            previousX = mPoints[i][0];
+        }
+        contribution += (x - previousX) * (y - (position < mNumPoints ? mPoints[position][1] : 0));
+
+        final int removed = end - first;
+        if (removed == 0) {
+            ensureCapacity(mNumPoints + 1);
+            System.arraycopy(mPoints, position, mPoints, position + 1, mNumPoints - position);
+            ++mNumPoints;
+        } else if (removed > 1) {
+            System.arraycopy(mPoints, end, mPoints, first + 1, mNumPoints - end);
+            Arrays.fill(mPoints, mNumPoints - removed + 1, mNumPoints, null);
+            mNumPoints -= removed - 1;
+        }
+        mPoints[first] = point;
+
+        return contribution;
+    }
+
+    /**
+     * Inserts a point in a three-objective front. Sweeping downwards along the third objective, the points limited to
+     * the box of the new point are added to a two-dimensional front, and the part of the box's cross-section that this
+     * front leaves uncovered between consecutive depths is covered by the new point alone.
+     *
+     * @param point
+     *            The point relative to the reference point
+     *
+     * @return The exclusive contribution of the point
+     */
+    private double addToSweepFront(final double[] point) {
+        for (int i = 0; i < mNumPoints; ++i) {
+            if (weaklyDominates(mPoints[i], point)) {
+                return 0;
+            }
+        }
+
+        final double boxArea = point[0] * point[1];
+        final TreeMap<Double, Double> front = new TreeMap<>();
+        double coveredArea = 0;
+        double depth = point[2];
+        double contribution = 0;
+        for (int i = 0; i < mNumPoints && coveredArea < boxArea; ++i) {
+            final double[] other = mPoints[i];
+            // The points reaching at least as deep as the new one cover their part of the whole box
+            if (other[2] < depth) {
+                contribution += (boxArea - coveredArea) * (depth - other[2]);
+                depth = other[2];
+            }
+            coveredArea += HypervolumeEngine.addToFront(front, Math.min(point[0], other[0]),
+                    Math.min(point[1], other[1]));
+        }
+        contribution += Math.max(0, boxArea - coveredArea) * depth;
+
+        // Drop the points that the new one dominates and insert it behind the points reaching at least as deep
+        int numKept = 0;
+        int position = 0;
+        for (int i = 0; i < mNumPoints; ++i) {
+            if (!weaklyDominates(point, mPoints[i])) {
+                if (mPoints[i][2] >= point[2]) {
+                    position = numKept + 1;
+                }
+                mPoints[numKept++] = mPoints[i];
+            }
+        }
+        Arrays.fill(mPoints, numKept, mNumPoints, null);
+        mNumPoints = numKept;
+
+        ensureCapacity(mNumPoints + 1);
+        System.arraycopy(mPoints, position, mPoints, position + 1, mNumPoints - position);
+        mPoints[position] = point;
+        ++mNumPoints;
+
+        return Math.max(0, contribution);
+    }
+
+    /**
+     * Inserts a point in a front with four or more objectives
+     *
+     * @param point
+     *            The point relative to the reference point
+     *
+     * @return The exclusive contribution of the point
+     */
+    private double addToFront(final double[] point) {
+        // Limit the front to the box of the new point, checking whether the new point is dominated on the way
+        final double[][] limitedPoints = new double[mNumPoints][];
+        for (int i = 0; i < mNumPoints; ++i) {
+            final double[] other = mPoints[i];
+            if (weaklyDominates(other, point)) {
+                return 0;
+            }
+
+            final double[] limited = new double[mNumObjectives];
+            for (int dim = 0; dim < mNumObjectives; ++dim) {
+                limited[dim] = Math.min(point[dim], other[dim]);
+            }
+            limitedPoints[i] = limited;
+        }
+
+        final double contribution = volume(point)
+                - hypervolume(limitedPoints, removeDominated(limitedPoints, mNumPoints), mNumObjectives);
+
+        // Drop the points that the new one dominates
+        int numKept = 0;
+        for (int i = 0; i < mNumPoints; ++i) {
+            if (!weaklyDominates(point, mPoints[i])) {
+                mPoints[numKept++] = mPoints[i];
+            }
+        }
+        Arrays.fill(mPoints, numKept, mNumPoints, null);
+        mNumPoints = numKept;
+
+        ensureCapacity(mNumPoints + 1);
+        mPoints[mNumPoints++] = point;
+
+        return Math.max(0, contribution);
+    }
+
+    /**
+     * Grows the point storage to hold at least the given amount of points
+     *
+     * @param capacity
+     *            The required capacity
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity > mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, Math.max(capacity, mPoints.length * 2));
+        }
+    }
+
+    /**
+     * Get the hypervolume of the current front
+     *
+     * @return The hypervolume indicator
+     */
+    public double getHypervolume() {
+        return mHypervolume;
+    }
+
+    /**
+     * Get the amount of non-dominated points in the front
+     *
+     * @return The amount of points
+     */
+    public int getNumPoints() {
+        return mNumPoints;
+    }
+
+    /**
+     * Calculates the hypervolume of a set of points relative to the origin by summing the exclusive contributions of the
+     * points in order of their last objective (See L. While, L. Bradstreet, L. Barone: A Fast Way of Calculating Exact
+     * Hypervolumes. IEEE Transactions on Evolutionary Computation 16(1), 86-95 (2012)), until two or three objectives
+     * remain, which are swept instead. The points are reordered.
+     *
+     * @param points
+     *            The points, which may not dominate each other
+     * @param numPoints
+     *            The amount of points to consider from the start of the array
+     * @param numObjectives
+     *            The amount of objectives to consider
+     *
+     * @return The hypervolume of the points
+     */
+    private static double hypervolume(final double[][] points, final int numPoints, final int numObjectives) {
+        if (numPoints == 0) {
+            return 0;
+        }
+
+        if (numObjectives == 2) {
+            return HypervolumeEngine.sweep2D(points, numPoints);
+        } else if (numObjectives == 3) {
+            return HypervolumeEngine.sweep3D(points, numPoints);
+        }
+
+        Arrays.sort(points, 0, numPoints, new HypervolumeEngine.ObjectiveComparator(numObjectives - 1));
+        double hypervolume = 0;
+        final double[][] limitedPoints = new double[numPoints][numObjectives];
+        for (int i = 0; i < numPoints; ++i) {
+            final double[] point = points[i];
+
+            // Only the points after this one can cover it, as all points before reach further in the last objective
+            final int numLimited = numPoints - i - 1;
+            for (int j = 0; j < numLimited; ++j) {
+                for (int dim = 0; dim < numObjectives; ++dim) {
+                    limitedPoints[j][dim] = Math.min(point[dim], points[i + 1 + j][dim]);
+                }
+            }
+
+            hypervolume += volume(point)
+                    - hypervolume(limitedPoints, removeDominated(limitedPoints, numLimited), numObjectives);
+        }
+
+        return hypervolume;
+    }
+
+    /**
+     * Moves the points that are not weakly dominated by another one to the start of the array
+     *
+     * @param points
+     *            The points to filter
+     * @param numPoints
+     *            The amount of points to consider from the start of the array
+     *
+     * @return The amount of remaining points
+     */
+    private static int removeDominated(final double[][] points, final int numPoints) {
+        int numKept = 0;
+        pointCheck:
+        for (int i = 0; i < numPoints; ++i) {
+            final double[] point = points[i];
+            for (int j = 0; j < numKept; ++j) {
+                if (weaklyDominates(points[j], point)) {
+                    continue pointCheck;
+                }
+            }
+
+            // Drop the kept points that the new one dominates
+            int numStillKept = 0;
+            for (int j = 0; j < numKept; ++j) {
+                if (!weaklyDominates(point, points[j])) {
+                    swap(points, numStillKept++, j);
+                }
+            }
+            numKept = numStillKept;
+            swap(points, numKept++, i);
+        }
+
+        return numKept;
+    }
+
+    /**
+     * Swaps two points in an array
+     *
+     * @param points
+     *            The array of points
+     * @param first
+     *            The index of the first point
+     * @param second
+     *            The index of the second point
+     */
+    private static void swap(final double[][] points, final int first, final int second) {
+        final double[] temp = points[first];
+        points[first] = points[second];
+        points[second] = temp;
+    }
+
+    /**
+     * Checks if a point is at least as good as another in every objective
+     *
+     * @param point
+     *            The point that may dominate
+     * @param other
+     *            The point that may be dominated
+     *
+     * @return True iff the point weakly dominates the other one
+     */
+    private static boolean weaklyDominates(final double[] point, final double[] other) {
+        for (int dim = 0; dim < point.length; ++dim) {
+            if (point[dim] < other[dim]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Calculates the volume of the box between the origin and a point
+     *
+     * @param point
+     *            The corner of the box
+     *
+     * @return The volume of the box
+     */
+    private static double volume(final double[] point) {
+        double volume = 1;
+        for (final double value : point) {
+            volume *= value;
+        }
+
+        return volume;
+    }
+}
@@ -2,12 +2,13 @@ package nl.uva.morlb.rg.experiment;
 
 import java.security.InvalidParameterException;
 
-import jmetal.qualityIndicator.Hypervolume;
 import nl.uva.morlb.rg.environment.model.Parameters;
+import nl.uva.morlb.rg.experiment.model.ColumnarSolutionSet;
 import nl.uva.morlb.rg.experiment.model.LinearScalarisation;
 import nl.uva.morlb.rg.experiment.model.Scalarisation;
-import nl.uva.morlb.rg.experiment.model.Solution;
 import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.util.EventTrace;
+import nl.uva.morlb.util.Metrics;
 
 /**
  * A class that gives scores/ranks to algorithms based on the quality of the provided solution set.
@@ -17,6 +18,12 @@ public class Judge {
     /** The default reference point for the hypervolume for the resource dimensions */
     public static final double HYPERVOLUME_REFERENCE_POINT_RESOURCES = -1;
 
+    /** The default amount of quasi-random weight vectors to estimate the average reward with */
+    public static final int NUM_WEIGHT_VECTORS = 4096;
+
+    /** The amount of quasi-random weight vectors the exact average reward falls back to for many objectives */
+    public static final int NUM_WEIGHT_VECTORS_FALLBACK = 65536;
+
     /**
      * Estimates the average scalarised value and the corresponding standard deviation of a solution set achieves using
      * random weight samples and a provided scalarisation function.
@@ -29,35 +36,281 @@ public class Judge {
      * @return double array of the average reward and the standard deviation that was estimated for the solution set
      */
     public static double[] averageReward(final SolutionSet solutionSet, final Scalarisation scalarisation) {
+        return averageReward(new ColumnarSolutionSet(solutionSet), scalarisation);
+    }
+
+    /**
+     * Estimates the average scalarised value and the corresponding standard deviation of a columnar solution set.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param scalarisation
+     *            The scalarisation function upon which the solution set is evaluated
+     *
+     * @return double array of the average reward and the standard deviation that was estimated for the solution set
+     *
+     * @see #averageReward(SolutionSet, Scalarisation)
+     */
+    public static double[] averageReward(final ColumnarSolutionSet solutionSet, final Scalarisation scalarisation) {
         // the number of weight values we want to test per objective
         final int weightValuesPerObjective = 2;
         // total number of tests that will be performed
         final int totalNumTests = (int) Math.pow(weightValuesPerObjective, solutionSet.getNumObjectives());
-        // the weight vector
+        // draw the weight vectors
+        final double[][] weightVectors = new double[totalNumTests][];
+        for (int test = 0; test < totalNumTests; test++) {
+            weightVectors[test] = scalarisation.randomWeightVector();
+        }
+        return averageReward(solutionSet, scalarisation, weightVectors);
+    }
+
+    /**
+     * Estimates the average scalarised value and the corresponding standard deviation of a solution set using a given
+     * amount of quasi-random weight vectors. These cover the weights more evenly than random samples, so that far more
+     * of them can be used to get a less noisy estimate.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param scalarisation
+     *            The scalarisation function upon which the solution set is evaluated
+     * @param numWeightVectors
+     *            The amount of weight vectors to evaluate the solution set with, e.g. {@link #NUM_WEIGHT_VECTORS}
+     *
+     * @return double array of the average reward and the standard deviation that was estimated for the solution set
+     */
+    public static double[] averageReward(final ColumnarSolutionSet solutionSet, final Scalarisation scalarisation,
+            final int numWeightVectors) {
+        if (numWeightVectors < 2) {
+            throw new InvalidParameterException("The average reward requires at least two weight vectors.");
+        }
+
+        return averageReward(solutionSet, scalarisation, scalarisation.quasiRandomWeightVectors(numWeightVectors));
+    }
+
+    /**
+     * Calculates the average scalarised value and the corresponding standard deviation of a solution set over the
+     * given weight vectors. All weight vectors are scored against all solutions at once.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param scalarisation
+     *            The scalarisation function upon which the solution set is evaluated
+     * @param weightVectors
+     *            The weight vectors to evaluate the solution set with
+     *
+     * @return double array of the average reward and the standard deviation of the scalarised values
+     */
+    public static double[] averageReward(final ColumnarSolutionSet solutionSet, final Scalarisation scalarisation,
+            final double[][] weightVectors) {
+        // find the scalarised value that this solution set would get for each of the weights
+        return averageReward(scalarisation.scalariseMaxima(solutionSet, weightVectors));
+    }
+
+    /**
+     * Calculates the average and the standard deviation of the highest scalarised values of a solution set.
+     *
+     * @param maxScalarisedValues
+     *            The highest scalarised value of the solution set for each of the tested weights
+     *
+     * @return double array of the average reward and the standard deviation of the scalarised values
+     */
+    static double[] averageReward(final double[] maxScalarisedValues) {
+        final int totalNumTests = maxScalarisedValues.length;
         double rewardSum = 0;
         double rewardSqSum = 0; // for the variance
-        // perform the tests
-        for (int test = 0; test < totalNumTests; test++) {
-            final double[] weights = scalarisation.randomWeightVector();
-            // find the point in the solution set for which the scalarised value is maximal
-            double maxScalarisedValue = Double.NEGATIVE_INFINITY;
-            double scalarisedValue;
-            for (final Solution solution : solutionSet.getSolutions()) {
-                scalarisedValue = scalarisation.scalarise(solution.getValues(), weights);
-                maxScalarisedValue = Math.max(maxScalarisedValue, scalarisedValue);
-            }
-            // sum up the maximal scalarised values (the value that this solution would get for the given weights)
+        for (final double maxScalarisedValue : maxScalarisedValues) {
             rewardSum += maxScalarisedValue;
             rewardSqSum += Math.pow(maxScalarisedValue, 2);
         }
         // return the average reward that this solution set received across the performed tests
         final double averageReward = rewardSum / totalNumTests;
         final double variance = (rewardSqSum - Math.pow(rewardSum, 2) / totalNumTests) / (totalNumTests - 1);
-        final double standardDev = Math.sqrt(variance);
+        // rounding can make the variance of equal values slightly negative
+        final double standardDev = Math.sqrt(Math.max(0, variance));
         final double[] returnArray = { averageReward, standardDev };
         return returnArray;
     }
 
+    /**
+     * Calculates the average linearly scalarised value and the corresponding standard deviation of a solution set for
+     * weights distributed uniformly over the simplex. For up to three objectives the value is exact: the simplex is
+     * divided into the regions where each solution is the best, which are only non-empty for solutions in the convex
+     * coverage set, and the scalarised values are integrated over those. More objectives fall back to
+     * {@link #NUM_WEIGHT_VECTORS_FALLBACK} quasi-random weight vectors.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     *
+     * @return double array of the average reward and the standard deviation of the scalarised values
+     */
+    public static double[] linearAverageReward(final ColumnarSolutionSet solutionSet) {
+        final int numObjectives = solutionSet.getNumObjectives();
+        if (solutionSet.getNumSolutions() == 0) {
+            final double[] returnArray = { Double.NEGATIVE_INFINITY, Double.NaN };
+            return returnArray;
+        }
+
+        // the integrals of the scalarised value and its square over the simplex, and the size of the simplex
+        final double[] integrals = new double[2];
+        final double simplexSize;
+        switch (numObjectives) {
+            case 1:
+                double max = Double.NEGATIVE_INFINITY;
+                for (int sol = 0; sol < solutionSet.getNumSolutions(); sol++) {
+                    max = Math.max(max, solutionSet.getValue(sol, 0));
+                }
+                integrals[0] = max;
+                integrals[1] = max * max;
+                simplexSize = 1;
+                break;
+            case 2:
+                for (int sol = 0; sol < solutionSet.getNumSolutions(); sol++) {
+                    integrateRegion2D(solutionSet, sol, integrals);
+                }
+                simplexSize = 1;
+                break;
+            case 3:
+                for (int sol = 0; sol < solutionSet.getNumSolutions(); sol++) {
+                    integrateRegion3D(solutionSet, sol, integrals);
+                }
+                simplexSize = 0.5;
+                break;
+            default:
+                return averageReward(solutionSet, new LinearScalarisation(numObjectives), NUM_WEIGHT_VECTORS_FALLBACK);
+        }
+
+        final double averageReward = integrals[0] / simplexSize;
+        final double variance = Math.max(0, integrals[1] / simplexSize - averageReward * averageReward);
+        final double[] returnArray = { averageReward, Math.sqrt(variance) };
+        return returnArray;
+    }
+
+    /**
+     * Integrates the linearly scalarised value of a solution over the weights (w, 1 - w) for which it is the best
+     * solution.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param sol
+     *            The solution to integrate the region of
+     * @param integrals
+     *            The integrals of the scalarised value and its square to add to
+     */
+    private static void integrateRegion2D(final ColumnarSolutionSet solutionSet, final int sol,
+            final double[] integrals) {
+        // the scalarised value as a function of w is intercept + slope * w
+        final double intercept = solutionSet.getValue(sol, 1);
+        final double slope = solutionSet.getValue(sol, 0) - intercept;
+
+        double lower = 0;
+        double upper = 1;
+        for (int other = 0; other < solutionSet.getNumSolutions() && lower < upper; other++) {
+            if (other == sol) {
+                continue;
+            }
+
+            // keep the part where this solution is at least as good as the other one
+            final double interceptDifference = intercept - solutionSet.getValue(other, 1);
+            final double slopeDifference = slope - (solutionSet.getValue(other, 0) - solutionSet.getValue(other, 1));
+            if (slopeDifference > 0) {
+                lower = Math.max(lower, -interceptDifference / slopeDifference);
+            } else if (slopeDifference < 0) {
+                upper = Math.min(upper, -interceptDifference / slopeDifference);
+            } else if (interceptDifference < 0 || (interceptDifference == 0 && other < sol)) {
+                // dominated everywhere, or equal to an earlier solution that already covers the region
+                return;
+            }
+        }
+        if (lower >= upper) {
+            return;
+        }
+
+        final double lowerValue = intercept + slope * lower;
+        final double upperValue = intercept + slope * upper;
+        integrals[0] += (upper - lower) * (lowerValue + upperValue) / 2;
+        integrals[1] += (upper - lower) * (lowerValue * lowerValue + lowerValue * upperValue + upperValue * upperValue)
+                / 3;
+    }
+
+    /**
+     * Integrates the linearly scalarised value of a solution over the weights (a, b, 1 - a - b) for which it is the
+     * best solution. The region is found by clipping the simplex with the half-plane where the solution is at least as
+     * good as each other solution.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param sol
+     *            The solution to integrate the region of
+     * @param integrals
+     *            The integrals of the scalarised value and its square to add to
+     */
+    private static void integrateRegion3D(final ColumnarSolutionSet solutionSet, final int sol,
+            final double[] integrals) {
+        // the scalarised value as a function of the weights is constant + slopeA * a + slopeB * b
+        final double constant = solutionSet.getValue(sol, 2);
+        final double slopeA = solutionSet.getValue(sol, 0) - constant;
+        final double slopeB = solutionSet.getValue(sol, 1) - constant;
+
+        // the region as a convex polygon, starting as the simplex
+        double[] regionA = { 0, 1, 0 };
+        double[] regionB = { 0, 0, 1 };
+        int regionSize = 3;
+        for (int other = 0; other < solutionSet.getNumSolutions() && regionSize > 0; other++) {
+            if (other == sol) {
+                continue;
+            }
+
+            final double otherConstant = solutionSet.getValue(other, 2);
+            final double constantDifference = constant - otherConstant;
+            final double slopeADifference = slopeA - (solutionSet.getValue(other, 0) - otherConstant);
+            final double slopeBDifference = slopeB - (solutionSet.getValue(other, 1) - otherConstant);
+            if (slopeADifference == 0 && slopeBDifference == 0) {
+                if (constantDifference < 0 || (constantDifference == 0 && other < sol)) {
+                    // dominated everywhere, or equal to an earlier solution that already covers the region
+                    return;
+                }
+                continue;
+            }
+
+            // keep the part where this solution is at least as good as the other one
+            final double[] clippedA = new double[regionSize + 1];
+            final double[] clippedB = new double[regionSize + 1];
+            int clippedSize = 0;
+            for (int i = 0; i < regionSize; i++) {
+                final int next = (i + 1) % regionSize;
+                final double difference = constantDifference + slopeADifference * regionA[i] + slopeBDifference
+                        * regionB[i];
+                final double nextDifference = constantDifference + slopeADifference * regionA[next]
+                        + slopeBDifference * regionB[next];
+                if (difference >= 0) {
+                    clippedA[clippedSize] = regionA[i];
+                    clippedB[clippedSize++] = regionB[i];
+                }
+                if ((difference >= 0) != (nextDifference >= 0)) {
+                    final double t = difference / (difference - nextDifference);
+                    clippedA[clippedSize] = regionA[i] + t * (regionA[next] - regionA[i]);
+                    clippedB[clippedSize++] = regionB[i] + t * (regionB[next] - regionB[i]);
+                }
+            }
+            regionA = clippedA;
+            regionB = clippedB;
+            regionSize = clippedSize;
+        }
+
+        // integrate over a fan of triangles, using exact formulas for linear and quadratic functions
+        for (int i = 1; i + 1 < regionSize; i++) {
+            final double area = Math.abs((regionA[i] - regionA[0]) * (regionB[i + 1] - regionB[0])
+                    - (regionA[i + 1] - regionA[0]) * (regionB[i] - regionB[0])) / 2;
+            final double value0 = constant + slopeA * regionA[0] + slopeB * regionB[0];
+            final double value1 = constant + slopeA * regionA[i] + slopeB * regionB[i];
+            final double value2 = constant + slopeA * regionA[i + 1] + slopeB * regionB[i + 1];
+            integrals[0] += area * (value0 + value1 + value2) / 3;
+            integrals[1] += area
+                    * (value0 * value0 + value1 * value1 + value2 * value2 + value0 * value1 + value0 * value2 + value1
+                            * value2) / 6;
+        }
+    }
+
     /**
      * Estimates the additive epsilon indicator for a given solution set and a reference set, i.e. the smallest epsilon
      * which has to be added to the solution set so that it weakly dominates the reference set. (See E. Zitzler, L.
@@ -72,35 +325,27 @@ public class Judge {
      * @return The additive epsilon indicator
      */
     public static double additiveEpsilonIndicator(final SolutionSet solutionSet, final SolutionSet referenceSet) {
+        return additiveEpsilonIndicator(new ColumnarSolutionSet(solutionSet), new ColumnarSolutionSet(referenceSet));
+    }
+
+    /**
+     * Estimates the additive epsilon indicator for a given columnar solution set and reference set.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param referenceSet
+     *            The true Pareto front or a good approximation to which the solution can be compared
+     *
+     * @return The additive epsilon indicator
+     *
+     * @see #additiveEpsilonIndicator(SolutionSet, SolutionSet)
+     */
+    public static double additiveEpsilonIndicator(final ColumnarSolutionSet solutionSet,
+            final ColumnarSolutionSet referenceSet) {
         if (referenceSet.getNumObjectives() != solutionSet.getNumObjectives()) {
             System.err.println("Reference and solution set must have same number of objectives");
         }
-        Solution ref;
-        Solution sol;
-        // the smallest epsilon for which it is true that for all values v from the reference set there exists one value
-        // v' from the solution set that weakly epsilon-dominates v
-        double epsilon = Double.NEGATIVE_INFINITY;
-        for (int refIndex = 0; refIndex < referenceSet.getNumSolutions(); refIndex++) {
-            ref = referenceSet.getSolutions().get(refIndex);
-            // singleEpsilon is the smallest epsilon so that there exists one (!) solution in the solution set that
-            // weakly epsilon-dominates the current reference point ref
-            double singleEpsilon = Double.POSITIVE_INFINITY;
-            for (int solIndex = 0; solIndex < solutionSet.getNumSolutions(); solIndex++) {
-                sol = solutionSet.getSolutions().get(solIndex);
-                // maxEpsilonPerSingleDim is the smallest epsilon for which the current solution sol weakly
-                // epsilon-dominates the currect reference point ref
-                double maxEpsilonPerSingleDim = Double.NEGATIVE_INFINITY;
-                for (int dim = 0; dim < solutionSet.getNumObjectives(); dim++) {
-                    final double distance = ref.getValues()[dim] - sol.getValues()[dim];
-                    maxEpsilonPerSingleDim = Math.max(distance, maxEpsilonPerSingleDim);
-                }
-                singleEpsilon = Math.min(singleEpsilon, maxEpsilonPerSingleDim);
-            }
-            // pick the epsilon that's smallest but satisfies the epsilon-condition across all points from the reference
-            // set
-            epsilon = Math.max(singleEpsilon, epsilon);
-        }
-        return epsilon;
+        return new EpsilonIndicator(referenceSet).additive(solutionSet);
     }
 
     /**
@@ -120,49 +365,111 @@ public class Judge {
      */
     public static double multiplicativeEpsilonIndicator(final SolutionSet solutionSet, final SolutionSet referenceSet,
             final int horizon) {
+        return multiplicativeEpsilonIndicator(new ColumnarSolutionSet(solutionSet), new ColumnarSolutionSet(
+                referenceSet), horizon);
+    }
+
+    /**
+     * Estimates the multiplicative epsilon indicator for a given columnar solution set and reference set.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param referenceSet
+     *            The true Pareto front or a good approximation to which the solution can be compared
+     * @param horizon
+     *            The experiment's horizon for reference point purpose
+     *
+     * @return The multiplicative epsilon indicator
+     *
+     * @see #multiplicativeEpsilonIndicator(SolutionSet, SolutionSet, int)
+     */
+    public static double multiplicativeEpsilonIndicator(final ColumnarSolutionSet solutionSet,
+            final ColumnarSolutionSet referenceSet, final int horizon) {
         if (referenceSet.getNumObjectives() != solutionSet.getNumObjectives()) {
             System.err.println("Reference and solution set must have same number of objectives");
         }
-        Solution sol;
-        Solution ref;
-        // the smallest epsilon for which it is true that for all values v from the reference set there exists one value
-        // v' from the solution set that weakly epsilon-dominates v
-        double epsilon = Double.NEGATIVE_INFINITY;
-        for (int refIndex = 0; refIndex < referenceSet.getNumSolutions(); refIndex++) {
-            ref = referenceSet.getSolutions().get(refIndex);
-            // singleEpsilon is the smallest epsilon so that there exists one (!) solution in the solution set that
-            // weakly epsilon-dominates the current reference point ref
-            double singleEpsilon = Double.POSITIVE_INFINITY;
-            for (int solIndex = 0; solIndex < solutionSet.getNumSolutions(); solIndex++) {
-                sol = solutionSet.getSolutions().get(solIndex);
-                // maxEpsilonPerSingleDim is the smallest epsilon for which the current solution sol weakly
-                // epsilon-dominates the current reference point ref
-                double maxEpsilonPerSingleDim = Double.NEGATIVE_INFINITY;
-                for (int dim = 0; dim < solutionSet.getNumObjectives(); dim++) {
-                    final double solValue = sol.getValues()[dim] - (dim == 0 ? -horizon : 0);
-                    final double refValue = ref.getValues()[dim] - (dim == 0 ? -horizon : 0);
-
-                    final double distance;
-                    if (refValue == 0) {
-                        distance = 0;
-                    } else if (solValue == 0) {
-                        if (refValue < 0) {
-                            distance = 0;
-                        } else {
-                            distance = Double.POSITIVE_INFINITY;
-                        }
-                    } else {
-                        distance = refValue / solValue;
-                    }
-                    maxEpsilonPerSingleDim = Math.max(distance, maxEpsilonPerSingleDim);
-                }
-                singleEpsilon = Math.min(singleEpsilon, maxEpsilonPerSingleDim);
+        return new EpsilonIndicator(referenceSet).multiplicative(solutionSet, horizon);
+    }
+
+    /**
+     * Calculates the smallest epsilon for which a solution weakly epsilon-dominates a reference solution when adding
+     * epsilon to it.
+     *
+     * @param solValues
+     *            The values containing the solution
+     * @param sol
+     *            The offset of the solution in its values
+     * @param refValues
+     *            The values containing the reference solution
+     * @param ref
+     *            The offset of the reference solution in its values
+     * @param numObjectives
+     *            The amount of objectives to compare
+     *
+     * @return The additive epsilon
+     */
+    static double additiveEpsilon(final double[] solValues, final int sol, final double[] refValues, final int ref,
+            final int numObjectives) {
+        double maxEpsilonPerSingleDim = Double.NEGATIVE_INFINITY;
+        for (int dim = 0; dim < numObjectives; dim++) {
+            final double distance = refValues[ref + dim] - solValues[sol + dim];
+            maxEpsilonPerSingleDim = Math.max(distance, maxEpsilonPerSingleDim);
+        }
+        return maxEpsilonPerSingleDim;
+    }
+
+    /**
+     * Calculates the smallest epsilon for which a solution weakly epsilon-dominates a reference solution when
+     * multiplying it with epsilon. The first objective is shifted by the horizon to make it non-negative.
+     *
+     * @param solValues
+     *            The values containing the solution
+     * @param sol
+     *            The offset of the solution in its values
+     * @param refValues
+     *            The values containing the reference solution
+     * @param ref
+     *            The offset of the reference solution in its values
+     * @param numObjectives
+     *            The amount of objectives to compare
+     * @param horizon
+     *            The experiment's horizon for reference point purpose
+     *
+     * @return The multiplicative epsilon
+     */
+    static double multiplicativeEpsilon(final double[] solValues, final int sol, final double[] refValues,
+            final int ref, final int numObjectives, final int horizon) {
+        double maxEpsilonPerSingleDim = Double.NEGATIVE_INFINITY;
+        for (int dim = 0; dim < numObjectives; dim++) {
+            final double solValue = solValues[sol + dim] - (dim == 0 ? -horizon : 0);
+            final double refValue = refValues[ref + dim] - (dim == 0 ? -horizon : 0);
+            maxEpsilonPerSingleDim = Math.max(multiplicativeEpsilon(solValue, refValue), maxEpsilonPerSingleDim);
+        }
+        return maxEpsilonPerSingleDim;
+    }
+
+    /**
+     * Calculates the smallest epsilon for which a single value is at least a reference value when multiplying it with
+     * epsilon.
+     *
+     * @param solValue
+     *            The value of the solution
+     * @param refValue
+     *            The value of the reference solution
+     *
+     * @return The multiplicative epsilon for the value
+     */
+    static double multiplicativeEpsilon(final double solValue, final double refValue) {
+        if (refValue == 0) {
+            return 0;
+        } else if (solValue == 0) {
+            if (refValue < 0) {
+                return 0;
+            } else {
+                return Double.POSITIVE_INFINITY;
             }
-            // pick the epsilon that's smallest but satisfies the epsilon-condition across all points from the reference
-            // set
-            epsilon = Math.max(singleEpsilon, epsilon);
         }
-        return epsilon;
+        return refValue / solValue;
     }
 
     /**
@@ -183,9 +490,10 @@ public class Judge {
 
     /**
      * This metric gives an indication to how uniformly a provided solution set is distributed. The lower this value,
-     * the better. The runtime is quadratic in the number of objectives. (See J. R. Schott: Fault tolerant design using
-     * single and multicriteria genetic algorithm optimization, M.S. thesis, Dept. Aeronautics Astronautics,
-     * Massachusetts Instit. Technology, Cambridge, MA, USA, 1995)
+     * the better. The distances between solutions are summed over the objectives and the nearest solutions are found
+     * with a {@link NearestNeighbourIndex}, making the runtime O(n log n) for few objectives. (See J. R. Schott: Fault
+     * tolerant design using single and multicriteria genetic algorithm optimization, M.S. thesis, Dept. Aeronautics
+     * Astronautics, Massachusetts Instit. Technology, Cambridge, MA, USA, 1995)
      *
      * @param solutionSet
      *            The solution set that is evaluated
@@ -194,24 +502,25 @@ public class Judge {
      *         better(more uniform) distribution. Returns POSITIVE_INIFINITY if there exists no or only one solution.
      */
     public static double schottSpacingMetric(final SolutionSet solutionSet) {
-        // estimate the minimal distances d_i for each solution i
+        return schottSpacingMetric(new ColumnarSolutionSet(solutionSet));
+    }
+
+    /**
+     * Indicates how uniformly a columnar solution set is distributed.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     *
+     * @return The indicator of how evenly the solutions in the solution set are distributed
+     *
+     * @see #schottSpacingMetric(SolutionSet)
+     */
+    public static double schottSpacingMetric(final ColumnarSolutionSet solutionSet) {
+        // estimate the minimal distances d_i for each solution i, using an index to avoid comparing all pairs
+        final NearestNeighbourIndex index = new NearestNeighbourIndex(solutionSet);
         final double[] minDistances = new double[solutionSet.getNumSolutions()];
-        int index = 0;
         for (int i = 0; i < solutionSet.getNumSolutions(); i++) {
-            double minDistance = Double.POSITIVE_INFINITY;
-            for (int j = 0; j < solutionSet.getNumSolutions(); j++) {
-                if (i != j) {
-                    double distance = 0;
-                    for (int dim = 0; dim < solutionSet.getNumObjectives(); dim++) {
-                        // sum up the dimension-wise distances between two distinct solutions in the solution set
-                        distance += Math.abs(solutionSet.getSolutions().get(i).getValues()[dim]
-                                - solutionSet.getSolutions().get(j).getValues()[dim]);
-                    }
-                    minDistance = Math.min(minDistance, distance);
-                }
-            }
-            minDistances[index] = minDistance;
-            index++;
+            minDistances[i] = index.nearestDistance(i, NearestNeighbourIndex.Distance.MANHATTAN);
         }
         // estimate the average of the d_i
         double averageMinDist = 0;
@@ -234,6 +543,54 @@ public class Judge {
         return delta;
     }
 
+    /**
+     * Calculates the generational distance of a solution set to a reference set, i.e. the average distance from a
+     * solution to the nearest solution in the reference set. A lower value indicates a solution set closer to the
+     * reference set. The distances are summed over the objectives like in the spacing metric. (See D. A. Van Veldhuizen
+     * and G. B. Lamont: Multiobjective Evolutionary Algorithm Research: A History and Analysis, Technical Report
+     * TR-98-03, Air Force Institute of Technology, 1998)
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param referenceSet
+     *            The true Pareto front or a good approximation to which the solution can be compared
+     *
+     * @return The generational distance, or NaN if the solution set is empty
+     */
+    public static double generationalDistance(final ColumnarSolutionSet solutionSet,
+            final ColumnarSolutionSet referenceSet) {
+        if (referenceSet.getNumObjectives() != solutionSet.getNumObjectives()) {
+            throw new InvalidParameterException("Reference and solution set must have same number of objectives");
+        }
+
+        final NearestNeighbourIndex index = new NearestNeighbourIndex(referenceSet);
+        double distanceSum = 0;
+        for (int sol = 0; sol < solutionSet.getNumSolutions(); sol++) {
+            distanceSum += index.nearestDistance(solutionSet.getValues(), solutionSet.getOffset(sol),
+                    NearestNeighbourIndex.Distance.MANHATTAN);
+        }
+        return distanceSum / solutionSet.getNumSolutions();
+    }
+
+    /**
+     * Calculates the inverted generational distance of a solution set to a reference set, i.e. the average distance
+     * from a solution in the reference set to the nearest solution in the solution set. Unlike the generational
+     * distance, a solution set only scores well if it covers the whole reference set.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param referenceSet
+     *            The true Pareto front or a good approximation to which the solution can be compared
+     *
+     * @return The inverted generational distance, or NaN if the reference set is empty
+     *
+     * @see #generationalDistance(ColumnarSolutionSet, ColumnarSolutionSet)
+     */
+    public static double invertedGenerationalDistance(final ColumnarSolutionSet solutionSet,
+            final ColumnarSolutionSet referenceSet) {
+        return generationalDistance(referenceSet, solutionSet);
+    }
+
     /**
      * Estimates the maximum spread of a solution set, which is an indicator for how well the solutions are spread. A
      * higher value indicates a better spread of solutions. (E. Zitzler, K. Deb, and L. Thiele: Comparison of
@@ -245,12 +602,26 @@ public class Judge {
      * @return The maximum spread. A higher value indicates a beter (larger) spread.
      */
     public static double maximumSpread(final SolutionSet solutionSet) {
+        return maximumSpread(new ColumnarSolutionSet(solutionSet));
+    }
+
+    /**
+     * Estimates the maximum spread of a columnar solution set.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     *
+     * @return The maximum spread. A higher value indicates a beter (larger) spread.
+     *
+     * @see #maximumSpread(SolutionSet)
+     */
+    public static double maximumSpread(final ColumnarSolutionSet solutionSet) {
         double sum = 0;
         for (int dim = 0; dim < solutionSet.getNumObjectives(); dim++) {
             double maxVal = Double.NEGATIVE_INFINITY;
             double minVal = Double.POSITIVE_INFINITY;
             for (int s = 0; s < solutionSet.getNumSolutions(); s++) {
-                final double solutionValue = solutionSet.getSolutions().get(s).getValues()[dim];
+                final double solutionValue = solutionSet.getValue(s, dim);
                 maxVal = Math.max(solutionValue, maxVal);
                 minVal = Math.min(solutionValue, minVal);
             }
@@ -281,10 +652,10 @@ public class Judge {
     }
 
     /**
-     * Estimates the hypervolume of a soulution set (and a default reference point). The runtime is exponential in the
-     * number of objectives. (See E. Zitzler and L. Thiele Multiobjective Evolutionary Algorithms: A Comparative Case
-     * Study and the Strength Pareto Approach, IEEE Transactions on Evolutionary Computation, vol. 3, no. 4, pp.
-     * 257-271, 1999)
+     * Calculates the hypervolume of a soulution set (and a default reference point). The algorithm depends on the
+     * number of objectives, see {@link HypervolumeEngine}. (See E. Zitzler and L. Thiele Multiobjective Evolutionary
+     * Algorithms: A Comparative Case Study and the Strength Pareto Approach, IEEE Transactions on Evolutionary
+     * Computation, vol. 3, no. 4, pp. 257-271, 1999)
      *
      * @param solutionSet
      *            The solution set that is evaluated
@@ -298,9 +669,27 @@ public class Judge {
     }
 
     /**
-     * Estimates the hypervolume of a soulution set given a reference point. The runtime is exponential in the number of
-     * objectives. (See E. Zitzler and L. Thiele Multiobjective Evolutionary Algorithms: A Comparative Case Study and
-     * the Strength Pareto Approach, IEEE Transactions on Evolutionary Computation, vol. 3, no. 4, pp. 257-271, 1999)
+     * Estimates the hypervolume of a columnar solution set with the default reference point.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param horizon
+     *            The experiment's horizon for reference point purpose
+     *
+     * @return the hypervolume of the solution set
+     *
+     * @see #hypervolume(SolutionSet, int)
+     */
+    public static double hypervolume(final ColumnarSolutionSet solutionSet, final int horizon) {
+        return hypervolume(solutionSet, standardReferencepoint(solutionSet.getNumObjectives(), horizon));
+    }
+
+    /**
+     * Calculates the hypervolume of a soulution set given a reference point. The algorithm depends on the number of
+     * objectives, see {@link HypervolumeEngine}. Solutions that do not exceed the reference point in every objective do
+     * not contribute. (See E. Zitzler and L. Thiele Multiobjective Evolutionary Algorithms: A Comparative Case Study
+     * and the Strength Pareto Approach, IEEE Transactions on Evolutionary Computation, vol. 3, no. 4, pp. 257-271,
+     * 1999)
      *
      * @param solutionSet
      *            The solution set that is evaluated
@@ -310,25 +699,30 @@ public class Judge {
      * @return
      */
     public static double hypervolume(final SolutionSet solutionSet, final double[] referencePoint) {
-        if (referencePoint.length != solutionSet.getNumObjectives()) {
-            throw new InvalidParameterException(
-                    "For the hypervolume the reference point has to have the same dimension as the solutions.");
+        return hypervolume(new ColumnarSolutionSet(solutionSet), referencePoint);
+    }
 
-        } else {
-            // put the solution set into a double array of doubles and shift them according to reference point
-            final double[][] solutionSetDoubleArray = new double[solutionSet.getNumSolutions()][solutionSet
-                    .getNumObjectives()];
-            for (int sol = 0; sol < solutionSet.getNumSolutions(); sol++) {
-                final double[] solutionValues = solutionSet.getSolutions().get(sol).getValues();
-                for (int dim = 0; dim < solutionSet.getNumObjectives(); dim++) {
-                    solutionSetDoubleArray[sol][dim] = solutionValues[dim] - referencePoint[dim];
-                }
-            }
-            // calculate hypervolume
-            final Hypervolume hypervolume = new Hypervolume();
-            return hypervolume.calculateHypervolume(solutionSetDoubleArray, solutionSet.getNumSolutions(),
-                    solutionSet.getNumObjectives());
-        }
+    /**
+     * Estimates the hypervolume of a columnar solution set given a reference point.
+     *
+     * @param solutionSet
+     *            The solution set that is evaluated
+     * @param referencePoint
+     *            The reference point for the hypervolume
+     *
+     * @return The hypervolume of the solution set
+     *
+     * @see #hypervolume(SolutionSet, double[])
+     */
+    public static double hypervolume(final ColumnarSolutionSet solutionSet, final double[] referencePoint) {
+        final long startTime = Metrics.start();
+        final long traceStartTime = EventTrace.begin();
+
+        final double result = HypervolumeEngine.hypervolume(solutionSet, referencePoint);
+
+        Metrics.HYPERVOLUME.stop(startTime);
+        EventTrace.hypervolume(traceStartTime, solutionSet.getNumSolutions(), result);
+        return result;
     }
 
     /**
@@ -0,0 +1,409 @@
+package nl.uva.morlb.rg.experiment;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import nl.uva.morlb.rg.agent.SeedableAgent;
+import nl.uva.morlb.rg.environment.ResourceGatheringEnv;
+import nl.uva.morlb.rg.environment.SdpCollection;
+import nl.uva.morlb.rg.environment.model.Parameters;
+import nl.uva.morlb.rg.experiment.model.ColumnarSolutionSet;
+import nl.uva.morlb.rg.experiment.model.SolutionSet;
+import nl.uva.morlb.util.EventTrace;
+import nl.uva.morlb.util.Log;
+
+import org.rlcommunity.rlglue.codec.AgentInterface;
+import org.rlcommunity.rlglue.codec.types.Action;
+import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
+
+/**
+ * Runs several agents on the same problem instance in a single process. The layout, task spec and optimal solution
+ * set are prepared once, after which every agent runs on a thread pool against its own environment with its own random
+ * number generator. The metrics of all agents are passed to a shared sink as the episodes finish.
+ */
+public class League {
+
+    /** The resource gathering layout shared by all agents, its resources cannot be shuffled */
+    private final Parameters mParameters;
+    /** The task spec given to every agent */
+    private final String mTaskSpec;
+    /** The epsilon indicators against the optimal solution set of the layout, or null if it is unknown */
+    private final EpsilonIndicator mEpsilonIndicator;
+    /** The reference point for the hypervolume */
+    private final double[] mReferencePoint;
+    /** The amount of episodes each agent runs at most */
+    private final int mNumEpisodes;
+    /** The amount of episodes between metric evaluations */
+    private final int mEvaluationInterval;
+    /** The random number generator seeding the agents and their environments */
+    private final Random mSeedRng;
+
+    /** The agents taking part in the league */
+    private final List<Entrant> mEntrants = new ArrayList<>();
+
+    /**
+     * Prepares a league for the given layout.
+     *
+     * @param parameters
+     *            The parameters of the problem, which are copied so that later changes do not affect the league
+     * @param numEpisodes
+     *            The amount of episodes each agent runs at most
+     * @param evaluationInterval
+     *            The amount of episodes between metric evaluations
+     * @param seed
+     *            The seed from which the random number generators of the agents and environments are derived
+     */
+    public League(final Parameters parameters, final int numEpisodes, final int evaluationInterval, final long seed) {
+        if (numEpisodes < 1 || evaluationInterval < 1) {
+            throw new InvalidParameterException("The league requires at least one episode and evaluation interval");
+        }
+
+        mParameters = new Parameters(parameters.maxX, parameters.maxY, Collections.unmodifiableList(new ArrayList<>(
+                parameters.resources)), parameters.actionSpace, parameters.discountFactor, parameters.actionFailProb,
+                parameters.observationSuccess, parameters.continuousStatesActions, parameters.maxPickedUp,
+                parameters.horizon, parameters.pickUpOnCollect);
+        mTaskSpec = new ResourceGatheringEnv(mParameters).env_init();
+        final SolutionSet optimalSolution = OptimalSolutions.getSolution(mParameters);
+        mEpsilonIndicator = (optimalSolution == null ? null : new EpsilonIndicator(new ColumnarSolutionSet(
+                optimalSolution)));
+        mReferencePoint = Judge.standardReferencepoint(mParameters.numResourceTypes + 1, mParameters.horizon);
+        mNumEpisodes = numEpisodes;
+        mEvaluationInterval = evaluationInterval;
+        mSeedRng = new Random(seed);
+    }
+
+    /**
+     * Adds an agent to the league. Every agent needs its own instance.
+     *
+     * @param name
+     *            The name identifying the agent in the results
+     * @param agent
+     *            The agent
+     */
+    public void addAgent(final String name, final AgentInterface agent) {
+        for (final Entrant entrant : mEntrants) {
+            if (entrant.agent == agent) {
+                throw new InvalidParameterException("Agents cannot take part in the league more than once");
+            }
+        }
+
+        mEntrants.add(new Entrant(name, agent, mSeedRng.nextLong()));
+    }
+
+    /**
+     * Runs all agents and waits until they are done.
+     *
+     * @param numThreads
+     *            The amount of agents to run simultaneously
+     * @param sink
+     *            The sink receiving the results of all agents, which is called from multiple threads
+     */
+    public void run(final int numThreads, final Sink sink) {
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (final Entrant entrant : mEntrants) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        runAgent(entrant, sink);
+                        return null;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    futures.get(i).get();
+                } catch (final ExecutionException ex) {
+                    throw new RuntimeException("Agent " + mEntrants.get(i).name + " failed", ex.getCause());
+                }
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the episodes of a single agent until it converges or the episode limit is reached.
+     *
+     * @param entrant
+     *            The agent to run
+     * @param sink
+     *            The sink receiving the results
+     */
+    private void runAgent(final Entrant entrant, final Sink sink) {
+        final AgentInterface agent = entrant.agent;
+        // The agent and its environment draw from separate generators, so neither depends on the other's decisions
+        final Random seedRng = new Random(entrant.seed);
+        final ResourceGatheringEnv environment = new ResourceGatheringEnv(mParameters, new Random(seedRng.nextLong()));
+        if (agent instanceof SeedableAgent) {
+            ((SeedableAgent) agent).setRandom(new Random(seedRng.nextLong()));
+        }
+        final double[] episodeReturn = new double[mParameters.numResourceTypes + 1];
+
+        agent.agent_init(mTaskSpec);
+        for (int episode = 0; episode < mNumEpisodes; ++episode) {
+            Arrays.fill(episodeReturn, 0);
+            EventTrace.episodeStart(episode);
+            final long episodeStartTime = EventTrace.begin();
+
+            // Run the episode until a terminal state or the horizon is reached
+            Action action = agent.agent_start(environment.env_start());
+            Reward_observation_terminal step = environment.env_step(action);
+            addReward(episodeReturn, step.r.doubleArray);
+
+            int stepCount = 1;
+            while (!step.isTerminal() && stepCount++ < mParameters.horizon) {
+                action = agent.agent_step(step.r, step.o);
+                step = environment.env_step(action);
+                addReward(episodeReturn, step.r.doubleArray);
+            }
+            agent.agent_end(step.r);
+            EventTrace.episodeEnd(episodeStartTime, episode, Math.min(stepCount, mParameters.horizon), episodeReturn);
+
+            final boolean converged = Boolean.parseBoolean(sendMessage(agent, "isConverged"));
+            if (converged || (episode + 1) % mEvaluationInterval == 0 || episode + 1 == mNumEpisodes) {
+                final String solutionSetString = sendMessage(agent, "getSolutionSet");
+                if (!solutionSetString.equals("")) {
+                    sink.onResult(evaluate(entrant.name, episode, new SolutionSet(solutionSetString),
+                            episodeReturn.clone()));
+                }
+            }
+
+            if (converged) {
+                break;
+            }
+        }
+        agent.agent_cleanup();
+    }
+
+    /**
+     * Calculates the metrics of a solution set in the same way as the experiment.
+     *
+     * @param agentName
+     *            The name of the agent
+     * @param episode
+     *            The episode after which the solution set was retrieved
+     * @param solutionSet
+     *            The solution set of the agent
+     * @param episodeReturn
+     *            The return of the episode
+     *
+     * @return The result
+     */
+    private Result evaluate(final String agentName, final int episode, final SolutionSet solutionSet,
+            final double[] episodeReturn) {
+        final long startTime = EventTrace.begin();
+        final ColumnarSolutionSet columnarSet = new ColumnarSolutionSet(solutionSet);
+
+        final double additiveEpsilon;
+        final double multiplicativeEpsilon;
+        if (mEpsilonIndicator != null) {
+            additiveEpsilon = mEpsilonIndicator.additive(columnarSet);
+            multiplicativeEpsilon = mEpsilonIndicator.multiplicative(columnarSet, mParameters.horizon);
+        } else {
+            additiveEpsilon = Double.NaN;
+            multiplicativeEpsilon = Double.NaN;
+        }
+
+        final Result result = new Result(agentName, episode, solutionSet, episodeReturn,
+                Judge.linearAverageReward(columnarSet), Judge.overallNondominatedVectorGeneration(solutionSet),
+                Judge.schottSpacingMetric(columnarSet), Judge.maximumSpread(columnarSet), Judge.hypervolume(columnarSet,
+                        mReferencePoint), additiveEpsilon, multiplicativeEpsilon);
+
+        EventTrace.metricEvaluation(startTime, episode, solutionSet.getNumSolutions());
+        return result;
+    }
+
+    /**
+     * Sends a message to an agent, treating messages the agent does not know as an empty reply.
+     *
+     * @param agent
+     *            The agent
+     * @param message
+     *            The message
+     *
+     * @return The reply of the agent
+     */
+    private static String sendMessage(final AgentInterface agent, final String message) {
+        try {
+            return agent.agent_message(message);
+        } catch (final InvalidParameterException ex) {
+            return "";
+        }
+    }
+
+    /**
+     * Adds a reward to a return.
+     *
+     * @param episodeReturn
+     *            The return to add to
+     * @param reward
+     *            The reward to add
+     */
+    private static void addReward(final double[] episodeReturn, final double[] reward) {
+        for (int i = 0; i < episodeReturn.length; ++i) {
+            episodeReturn[i] += reward[i];
+        }
+    }
+
+    /**
+     * An agent taking part in the league.
+     */
+    private static class Entrant {
+
+        /** The name identifying the agent in the results */
+        public final String name;
+        /** The agent */
+        public final AgentInterface agent;
+        /** The seed from which the random number generators of the agent and its environment are derived */
+        public final long seed;
+
+        /**
+         * Creates an entrant.
+         *
+         * @param name
+         *            The name identifying the agent
+         * @param agent
+         *            The agent
+         * @param seed
+         *            The seed for the agent and its environment
+         */
+        public Entrant(final String name, final AgentInterface agent, final long seed) {
+            this.name = name;
+            this.agent = agent;
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * Receives the results of the agents in a league.
+     */
+    public interface Sink {
+
+        /**
+         * Called whenever an agent has been evaluated. May be called from multiple threads simultaneously.
+         *
+         * @param result
+         *            The result of the evaluation
+         */
+        void onResult(Result result);
+    }
+
+    /**
+     * The metrics of the solution set of an agent after an episode.
+     */
+    public static class Result {
+
+        /** The name of the agent */
+        public final String agentName;
+        /** The episode after which the agent was evaluated */
+        public final int episode;
+        /** The solution set of the agent */
+        public final SolutionSet solutionSet;
+        /** The return of the episode */
+        public final double[] episodeReturn;
+        /** The average reward over random scalarisations */
+        public final double[] averageReward;
+        /** The overall non-dominated vector generation */
+        public final int oNVG;
+        /** The Schott spacing metric */
+        public final double spacing;
+        /** The maximum spread */
+        public final double spread;
+        /** The hypervolume */
+        public final double hypervolume;
+        /** The additive epsilon indicator, or NaN if the optimal solution is unknown */
+        public final double additiveEpsilon;
+        /** The multiplicative epsilon indicator, or NaN if the optimal solution is unknown */
+        public final double multiplicativeEpsilon;
+
+        /**
+         * Creates a result.
+         *
+         * @param agentName
+         *            The name of the agent
+         * @param episode
+         *            The episode after which the agent was evaluated
+         * @param solutionSet
+         *            The solution set of the agent
+         * @param episodeReturn
+         *            The return of the episode
+         * @param averageReward
+         *            The average reward over random scalarisations
+         * @param oNVG
+         *            The overall non-dominated vector generation
+         * @param spacing
+         *            The Schott spacing metric
+         * @param spread
+         *            The maximum spread
+         * @param hypervolume
+         *            The hypervolume
+         * @param additiveEpsilon
+         *            The additive epsilon indicator
+         * @param multiplicativeEpsilon
+         *            The multiplicative epsilon indicator
+         */
+        public Result(final String agentName, final int episode, final SolutionSet solutionSet,
+                final double[] episodeReturn, final double[] averageReward, final int oNVG, final double spacing,
+                final double spread, final double hypervolume, final double additiveEpsilon,
+                final double multiplicativeEpsilon) {
+            this.agentName = agentName;
+            this.episode = episode;
+            this.solutionSet = solutionSet;
+            this.episodeReturn = episodeReturn;
+            this.averageReward = averageReward;
+            this.oNVG = oNVG;
+            this.spacing = spacing;
+            this.spread = spread;
+            this.hypervolume = hypervolume;
+            this.additiveEpsilon = additiveEpsilon;
+            this.multiplicativeEpsilon = multiplicativeEpsilon;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Uses the metric format of the experiment, prefixed with the agent name and episode.
+         */
+        @Override
+        public String toString() {
+            String str = agentName + " " + episode + " " + averageReward[0] + " " + averageReward[1] + " " + oNVG
+                    + " " + spacing + " " + spread + " " + hypervolume;
+            if (!Double.isNaN(additiveEpsilon)) {
+                str += " " + additiveEpsilon + " " + multiplicativeEpsilon;
+            }
+            return str + " " + Arrays.toString(episodeReturn);
+        }
+    }
+
+    public static void main(final String[] args) {
+        final String[] agentNames = (args.length > 0 ? args : new String[] { "random", "chvi", "momcts" });
+
+        final League league = new League(SdpCollection.getSimpleProblem(), 1000, 1, 62434);
+        for (final String agentName : agentNames) {
+            league.addAgent(agentName, Experiment.createAgent(agentName));
+        }
+
+        league.run(Runtime.getRuntime().availableProcessors(), new Sink() {
+            @Override
+            public synchronized void onResult(final Result result) {
+                Log.f(result.toString());
+            }
+        });
+    }
+
+}
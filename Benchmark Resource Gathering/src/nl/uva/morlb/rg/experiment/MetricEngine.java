@@ -0,0 +1,557 @@
+package nl.uva.morlb.rg.experiment;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import nl.uva.morlb.rg.experiment.model.ColumnarSolutionSet;
+import nl.uva.morlb.rg.experiment.model.Scalarisation;
+import nl.uva.morlb.rg.experiment.model.Solution;
+import nl.uva.morlb.rg.experiment.model.SolutionSet;
+
+/**
+ * Keeps the metrics of a solution set that changes over the episodes up to date. The engine receives the solutions
+ * that were added and removed since the previous evaluation and only updates the parts of the indicators affected by
+ * them; an unchanged solution set costs nothing. The average reward and epsilon indicators keep the best solution value
+ * per weight vector or reference solution, which only has to be recalculated for the ones a removed solution was best
+ * for. The maximum spread keeps the extremes per objective in the same way and the hypervolume adds the exclusive
+ * contribution of new solutions as long as none are removed. The spacing metric depends on all pairs of solutions and
+ * is recalculated whenever the set changes.
+ */
+public class MetricEngine {
+
+    /** The amount of objectives solutions have values for */
+    private final int mNumObjectives;
+    /** The experiment's horizon for reference point purposes */
+    private final int mHorizon;
+    /** The scalarisation the average reward is calculated with */
+    private final Scalarisation mScalarisation;
+    /** The weight vectors the average reward is calculated with */
+    private final double[][] mWeightVectors;
+    /** The reference set for the epsilon indicators, or null if it is unknown */
+    private final ColumnarSolutionSet mReferenceSet;
+
+    /** The solutions in the current set, in the order they were added */
+    private final Set<Solution> mSolutions = new LinkedHashSet<>();
+    /** The values of the current set */
+    private ColumnarSolutionSet mSolutionSet;
+    /** The string of the set given to the last update, to skip unchanged sets without parsing them */
+    private String mLastSolutionSetString = null;
+
+    /** The highest scalarised value per weight vector */
+    private final double[] mMaxScalarisedValues;
+    /** The smallest additive epsilon per reference solution */
+    private final double[] mAdditiveEpsilons;
+    /** The smallest multiplicative epsilon per reference solution */
+    private final double[] mMultiplicativeEpsilons;
+    /** The highest value per objective */
+    private final double[] mMaxValues;
+    /** The lowest value per objective */
+    private final double[] mMinValues;
+    /** The executor to update the indicators on, or null to update them on the calling thread */
+    private ExecutorService mExecutor = null;
+    /** The front that the hypervolume of added solutions is accumulated in, or null if it has to be rebuilt */
+    private IncrementalHypervolume mHypervolumeFront = null;
+
+    /** The average reward and its standard deviation */
+    private double[] mAverageReward;
+    /** The Schott spacing metric */
+    private double mSpacing;
+    /** The maximum spread */
+    private double mSpread;
+    /** The hypervolume */
+    private double mHypervolume;
+    /** The additive epsilon indicator */
+    private double mAdditiveEpsilon;
+    /** The multiplicative epsilon indicator */
+    private double mMultiplicativeEpsilon;
+
+    /**
+     * Creates an engine for an initially empty solution set.
+     *
+     * @param numObjectives
+     *            The amount of objectives solutions have values for
+     * @param horizon
+     *            The experiment's horizon for reference point purposes
+     * @param scalarisation
+     *            The scalarisation the average reward is calculated with
+     * @param numWeightVectors
+     *            The amount of quasi-random weight vectors the average reward is calculated with
+     * @param referenceSet
+     *            The reference set for the epsilon indicators, or null if it is unknown
+     */
+    public MetricEngine(final int numObjectives, final int horizon, final Scalarisation scalarisation,
+            final int numWeightVectors, final SolutionSet referenceSet) {
+        if (numWeightVectors < 2) {
+            throw new InvalidParameterException("The average reward requires at least two weight vectors.");
+        }
+        if (referenceSet != null && referenceSet.getNumObjectives() != numObjectives) {
+            throw new InvalidParameterException("Reference and solution set must have same number of objectives");
+        }
+
+        mNumObjectives = numObjectives;
+        mHorizon = horizon;
+        mScalarisation = scalarisation;
+        mWeightVectors = scalarisation.quasiRandomWeightVectors(numWeightVectors);
+        mReferenceSet = (referenceSet == null ? null : new ColumnarSolutionSet(referenceSet));
+        mSolutionSet = new ColumnarSolutionSet(numObjectives, new double[0], 0);
+
+        final int numReferenceSolutions = (mReferenceSet == null ? 0 : mReferenceSet.getNumSolutions());
+        mMaxScalarisedValues = new double[mWeightVectors.length];
+        mAdditiveEpsilons = new double[numReferenceSolutions];
+        mMultiplicativeEpsilons = new double[numReferenceSolutions];
+        mMaxValues = new double[numObjectives];
+        mMinValues = new double[numObjectives];
+
+        // Start from the metrics of the empty set
+        Arrays.fill(mMaxScalarisedValues, Double.NEGATIVE_INFINITY);
+        Arrays.fill(mAdditiveEpsilons, Double.POSITIVE_INFINITY);
+        Arrays.fill(mMultiplicativeEpsilons, Double.POSITIVE_INFINITY);
+        Arrays.fill(mMaxValues, Double.NEGATIVE_INFINITY);
+        Arrays.fill(mMinValues, Double.POSITIVE_INFINITY);
+        updateAverageReward(mSolutionSet, mSolutionSet);
+        updateEpsilons(mSolutionSet, mSolutionSet);
+        updateSpread(mSolutionSet, mSolutionSet);
+        updateHypervolume(mSolutionSet, mSolutionSet);
+        mSpacing = Judge.schottSpacingMetric(mSolutionSet);
+    }
+
+    /**
+     * Updates the metrics to those of the solution set in the given string representation. Nothing is done if the
+     * string equals the one of the previous update, otherwise the differences with the current set are applied.
+     *
+     * @param solutionSetString
+     *            The string representation of the solution set as accepted by {@link SolutionSet#SolutionSet(String)}
+     *
+     * @return True iff the metrics changed
+     */
+    public boolean update(final String solutionSetString) {
+        if (solutionSetString.equals(mLastSolutionSetString)) {
+            return false;
+        }
+
+        final boolean changed = update(new SolutionSet(solutionSetString));
+        mLastSolutionSetString = solutionSetString;
+        return changed;
+    }
+
+    /**
+     * Updates the metrics to those of the given solution set by applying the differences with the current set.
+     *
+     * @param solutionSet
+     *            The new solution set
+     *
+     * @return True iff the metrics changed
+     */
+    public boolean update(final SolutionSet solutionSet) {
+        final List<Solution> solutions = solutionSet.getSolutions();
+
+        final List<Solution> added = new ArrayList<>();
+        for (final Solution solution : solutions) {
+            if (!mSolutions.contains(solution)) {
+                added.add(solution);
+            }
+        }
+
+        final List<Solution> removed = new ArrayList<>();
+        if (mSolutions.size() + added.size() != solutions.size()) {
+            final Set<Solution> remaining = new LinkedHashSet<>(solutions);
+            for (final Solution solution : mSolutions) {
+                if (!remaining.contains(solution)) {
+                    removed.add(solution);
+                }
+            }
+        }
+
+        return update(added, removed);
+    }
+
+    /**
+     * Updates the metrics after solutions were added to and removed from the set.
+     *
+     * @param added
+     *            The solutions added to the set
+     * @param removed
+     *            The solutions removed from the set
+     *
+     * @return True iff the metrics changed
+     */
+    public boolean update(final Collection<Solution> added, final Collection<Solution> removed) {
+        // Only consider the solutions that actually change the set
+        final List<Solution> removedSolutions = new ArrayList<>();
+        for (final Solution solution : removed) {
+            if (solution.getNumObjectives() == mNumObjectives && mSolutions.remove(solution)) {
+                removedSolutions.add(solution);
+            }
+        }
+        final List<Solution> addedSolutions = new ArrayList<>();
+        for (final Solution solution : added) {
+            if (solution.getNumObjectives() != mNumObjectives) {
+                throw new InvalidParameterException(
+                        "The number of objectives in the solution must match that of the solution set");
+            }
+            if (mSolutions.add(solution)) {
+                addedSolutions.add(solution);
+            }
+        }
+        if (addedSolutions.isEmpty() && removedSolutions.isEmpty()) {
+            return false;
+        }
+        mLastSolutionSetString = null;
+
+        mSolutionSet = toColumnar(new ArrayList<>(mSolutions));
+        final ColumnarSolutionSet addedSet = toColumnar(addedSolutions);
+        final ColumnarSolutionSet removedSet = toColumnar(removedSolutions);
+
+        // The indicators are independent of each other and only share the solutions, which are no longer modified
+        final List<Runnable> updates = new ArrayList<>();
+        updates.add(new Runnable() {
+            @Override
+            public void run() {
+                updateAverageReward(addedSet, removedSet);
+            }
+        });
+        updates.add(new Runnable() {
+            @Override
+            public void run() {
+                updateEpsilons(addedSet, removedSet);
+            }
+        });
+        updates.add(new Runnable() {
+            @Override
+            public void run() {
+                updateSpread(addedSet, removedSet);
+            }
+        });
+        updates.add(new Runnable() {
+            @Override
+            public void run() {
+                updateHypervolume(addedSet, removedSet);
+            }
+        });
+        updates.add(new Runnable() {
+            @Override
+            public void run() {
+                mSpacing = Judge.schottSpacingMetric(mSolutionSet);
+            }
+        });
+        runUpdates(updates);
+
+        return true;
+    }
+
+    /**
+     * Runs the updates of the indicators, simultaneously if an executor is set.
+     *
+     * @param updates
+     *            The updates to run
+     */
+    private void runUpdates(final List<Runnable> updates) {
+        if (mExecutor == null) {
+            for (final Runnable update : updates) {
+                update.run();
+            }
+            return;
+        }
+
+        final List<Future<?>> futures = new ArrayList<>();
+        for (final Runnable update : updates) {
+            futures.add(mExecutor.submit(update));
+        }
+        try {
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final ExecutionException ex) {
+            throw new RuntimeException("Updating the metrics failed", ex.getCause());
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Sets the executor that the independent indicators are updated on simultaneously. The engine itself should still
+     * only be used by one thread at a time.
+     *
+     * @param executor
+     *            The executor, or null to update the indicators on the calling thread
+     */
+    public void setExecutor(final ExecutorService executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Updates the highest scalarised value per weight vector and the resulting average reward.
+     *
+     * @param added
+     *            The solutions added to the set
+     * @param removed
+     *            The solutions removed from the set
+     */
+    private void updateAverageReward(final ColumnarSolutionSet added, final ColumnarSolutionSet removed) {
+        for (int vector = 0; vector < mWeightVectors.length; ++vector) {
+            if (bestScalarisedValue(removed, vector) >= mMaxScalarisedValues[vector]) {
+                // The best solution may have been removed
+                mMaxScalarisedValues[vector] = bestScalarisedValue(mSolutionSet, vector);
+            } else {
+                mMaxScalarisedValues[vector] = Math.max(mMaxScalarisedValues[vector],
+                        bestScalarisedValue(added, vector));
+            }
+        }
+
+        mAverageReward = Judge.averageReward(mMaxScalarisedValues);
+    }
+
+    /**
+     * Updates the smallest epsilons per reference solution and the resulting epsilon indicators.
+     *
+     * @param added
+     *            The solutions added to the set
+     * @param removed
+     *            The solutions removed from the set
+     */
+    private void updateEpsilons(final ColumnarSolutionSet added, final ColumnarSolutionSet removed) {
+        mAdditiveEpsilon = Double.NEGATIVE_INFINITY;
+        mMultiplicativeEpsilon = Double.NEGATIVE_INFINITY;
+        for (int ref = 0; ref < mAdditiveEpsilons.length; ++ref) {
+            if (bestAdditiveEpsilon(removed, ref) <= mAdditiveEpsilons[ref]) {
+                mAdditiveEpsilons[ref] = bestAdditiveEpsilon(mSolutionSet, ref);
+            } else {
+                mAdditiveEpsilons[ref] = Math.min(mAdditiveEpsilons[ref], bestAdditiveEpsilon(added, ref));
+            }
+            if (bestMultiplicativeEpsilon(removed, ref) <= mMultiplicativeEpsilons[ref]) {
+                mMultiplicativeEpsilons[ref] = bestMultiplicativeEpsilon(mSolutionSet, ref);
+            } else {
+                mMultiplicativeEpsilons[ref] = Math.min(mMultiplicativeEpsilons[ref],
+                        bestMultiplicativeEpsilon(added, ref));
+            }
+
+            mAdditiveEpsilon = Math.max(mAdditiveEpsilons[ref], mAdditiveEpsilon);
+            mMultiplicativeEpsilon = Math.max(mMultiplicativeEpsilons[ref], mMultiplicativeEpsilon);
+        }
+    }
+
+    /**
+     * Updates the extremes per objective and the resulting maximum spread.
+     *
+     * @param added
+     *            The solutions added to the set
+     * @param removed
+     *            The solutions removed from the set
+     */
+    private void updateSpread(final ColumnarSolutionSet added, final ColumnarSolutionSet removed) {
+        double sum = 0;
+        for (int dim = 0; dim < mNumObjectives; ++dim) {
+            if (extremeValue(removed, dim, true) >= mMaxValues[dim]) {
+                mMaxValues[dim] = extremeValue(mSolutionSet, dim, true);
+            } else {
+                mMaxValues[dim] = Math.max(mMaxValues[dim], extremeValue(added, dim, true));
+            }
+            if (extremeValue(removed, dim, false) <= mMinValues[dim]) {
+                mMinValues[dim] = extremeValue(mSolutionSet, dim, false);
+            } else {
+                mMinValues[dim] = Math.min(mMinValues[dim], extremeValue(added, dim, false));
+            }
+
+            sum += Math.pow(mMaxValues[dim] - mMinValues[dim], 2);
+        }
+
+        mSpread = Math.sqrt(sum);
+    }
+
+    /**
+     * Updates the hypervolume, adding the contributions of the added solutions if none were removed.
+     *
+     * @param added
+     *            The solutions added to the set
+     * @param removed
+     *            The solutions removed from the set
+     */
+    private void updateHypervolume(final ColumnarSolutionSet added, final ColumnarSolutionSet removed) {
+        if (mNumObjectives < 2 || removed.getNumSolutions() > 0) {
+            // Removing a solution can uncover volume of any other solution
+            mHypervolumeFront = null;
+            mHypervolume = Judge.hypervolume(mSolutionSet, mHorizon);
+            return;
+        }
+
+        final ColumnarSolutionSet newSolutions;
+        if (mHypervolumeFront == null) {
+            mHypervolumeFront = new IncrementalHypervolume(Judge.standardReferencepoint(mNumObjectives, mHorizon));
+            newSolutions = mSolutionSet;
+        } else {
+            newSolutions = added;
+        }
+        for (int sol = 0; sol < newSolutions.getNumSolutions(); ++sol) {
+            mHypervolumeFront.add(newSolutions.getSolution(sol).getValues());
+        }
+
+        mHypervolume = mHypervolumeFront.getHypervolume();
+    }
+
+    /**
+     * Finds the highest scalarised value among solutions for a weight vector.
+     *
+     * @param solutionSet
+     *            The solutions to scalarise
+     * @param vector
+     *            The index of the weight vector
+     *
+     * @return The highest scalarised value, or negative infinity if there are no solutions
+     */
+    private double bestScalarisedValue(final ColumnarSolutionSet solutionSet, final int vector) {
+        final double[] values = solutionSet.getValues();
+        double max = Double.NEGATIVE_INFINITY;
+        for (int sol = 0; sol < solutionSet.getNumSolutions(); ++sol) {
+            max = Math.max(max, mScalarisation.scalarise(values, solutionSet.getOffset(sol), mWeightVectors[vector]));
+        }
+
+        return max;
+    }
+
+    /**
+     * Finds the smallest additive epsilon among solutions for a reference solution.
+     *
+     * @param solutionSet
+     *            The solutions to compare
+     * @param ref
+     *            The index of the reference solution
+     *
+     * @return The smallest epsilon, or positive infinity if there are no solutions
+     */
+    private double bestAdditiveEpsilon(final ColumnarSolutionSet solutionSet, final int ref) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int sol = 0; sol < solutionSet.getNumSolutions(); ++sol) {
+            min = Math.min(min, Judge.additiveEpsilon(solutionSet.getValues(), solutionSet.getOffset(sol),
+                    mReferenceSet.getValues(), mReferenceSet.getOffset(ref), mNumObjectives));
+        }
+
+        return min;
+    }
+
+    /**
+     * Finds the smallest multiplicative epsilon among solutions for a reference solution.
+     *
+     * @param solutionSet
+     *            The solutions to compare
+     * @param ref
+     *            The index of the reference solution
+     *
+     * @return The smallest epsilon, or positive infinity if there are no solutions
+     */
+    private double bestMultiplicativeEpsilon(final ColumnarSolutionSet solutionSet, final int ref) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int sol = 0; sol < solutionSet.getNumSolutions(); ++sol) {
+            min = Math.min(min, Judge.multiplicativeEpsilon(solutionSet.getValues(), solutionSet.getOffset(sol),
+                    mReferenceSet.getValues(), mReferenceSet.getOffset(ref), mNumObjectives, mHorizon));
+        }
+
+        return min;
+    }
+
+    /**
+     * Finds the highest or lowest value among solutions for an objective.
+     *
+     * @param solutionSet
+     *            The solutions to search
+     * @param dim
+     *            The objective
+     * @param highest
+     *            True to find the highest value, false for the lowest
+     *
+     * @return The extreme value, or the opposite infinity if there are no solutions
+     */
+    private static double extremeValue(final ColumnarSolutionSet solutionSet, final int dim, final boolean highest) {
+        double extreme = (highest ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+        for (int sol = 0; sol < solutionSet.getNumSolutions(); ++sol) {
+            final double value = solutionSet.getValue(sol, dim);
+            extreme = (highest ? Math.max(value, extreme) : Math.min(value, extreme));
+        }
+
+        return extreme;
+    }
+
+    /**
+     * Creates a columnar solution set of the given solutions.
+     *
+     * @param solutions
+     *            The solutions
+     *
+     * @return The columnar solution set
+     */
+    private ColumnarSolutionSet toColumnar(final List<Solution> solutions) {
+        final double[] values = new double[solutions.size() * mNumObjectives];
+        for (int sol = 0; sol < solutions.size(); ++sol) {
+            System.arraycopy(solutions.get(sol).getValues(), 0, values, sol * mNumObjectives, mNumObjectives);
+        }
+
+        return new ColumnarSolutionSet(mNumObjectives, values, solutions.size());
+    }
+
+    /**
+     * @return The average reward and its standard deviation
+     *
+     * @see Judge#averageReward(ColumnarSolutionSet, Scalarisation, int)
+     */
+    public double[] getAverageReward() {
+        return mAverageReward.clone();
+    }
+
+    /**
+     * @return The overall nondominated vector generation, i.e. the amount of solutions
+     */
+    public int getOverallNondominatedVectorGeneration() {
+        return mSolutions.size();
+    }
+
+    /**
+     * @return The Schott spacing metric
+     */
+    public double getSpacing() {
+        return mSpacing;
+    }
+
+    /**
+     * @return The maximum spread
+     */
+    public double getSpread() {
+        return mSpread;
+    }
+
+    /**
+     * @return The hypervolume with the standard reference point
+     */
+    public double getHypervolume() {
+        return mHypervolume;
+    }
+
+    /**
+     * @return The additive epsilon indicator, or negative infinity if there is no reference set
+     */
+    public double getAdditiveEpsilon() {
+        return mAdditiveEpsilon;
+    }
+
+    /**
+     * @return The multiplicative epsilon indicator, or negative infinity if there is no reference set
+     */
+    public double getMultiplicativeEpsilon() {
+        return mMultiplicativeEpsilon;
+    }
+
+    /**
+     * @return True iff there is a reference set for the epsilon indicators
+     */
+    public boolean hasReferenceSet() {
+        return mReferenceSet != null;
+    }
+
+}
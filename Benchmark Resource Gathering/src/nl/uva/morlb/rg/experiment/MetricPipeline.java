@@ -0,0 +1,249 @@
+package nl.uva.morlb.rg.experiment;
+
+import java.security.InvalidParameterException;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nl.uva.morlb.rg.experiment.model.Solution;
+import nl.uva.morlb.util.EventTrace;
+
+/**
+ * Evaluates the metrics of the episodes of an experiment away from the thread running the episodes. The solution set
+ * of every episode is queued either as the string the agent sent or as the solutions added and removed since the
+ * previous episode, both of which are snapshots that the agent cannot change anymore.
+ * A single pipeline thread takes the episodes in order and updates a {@link MetricEngine}, which evaluates the
+ * independent indicators simultaneously on a pool of threads, and passes the metrics to a sink. The queue is bounded,
+ * so that the episodes only wait for the metrics when they get too far ahead.
+ */
+public class MetricPipeline {
+
+    /** The default amount of episodes that can be waiting for evaluation */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The receiver of the metrics of each episode
+     */
+    public interface Sink {
+
+        /**
+         * Called once the metrics of an episode have been evaluated. Called from the pipeline thread in the order the
+         * episodes were submitted.
+         *
+         * @param episode
+         *            The episode that was evaluated
+         * @param metricEngine
+         *            The engine holding the metrics of the episode's solution set, which may only be read during this
+         *            call
+         * @param episodeReturn
+         *            The return of the episode
+         */
+        void onMetrics(int episode, MetricEngine metricEngine, double[] episodeReturn);
+    }
+
+    /**
+     * An episode waiting for evaluation
+     */
+    private static class Task {
+
+        /** The episode */
+        public final int episode;
+        /** The string representation of the solution set after the episode, or null if the changes are given */
+        public final String solutionSet;
+        /** The solutions added since the previous episode */
+        public final Collection<Solution> added;
+        /** The solutions removed since the previous episode */
+        public final Collection<Solution> removed;
+        /** The return of the episode */
+        public final double[] episodeReturn;
+
+        /**
+         * Creates a task for an episode.
+         *
+         * @param episode
+         *            The episode
+         * @param solutionSet
+         *            The string representation of the solution set after the episode, or null if the changes are
+         *            given
+         * @param added
+         *            The solutions added since the previous episode
+         * @param removed
+         *            The solutions removed since the previous episode
+         * @param episodeReturn
+         *            The return of the episode
+         */
+        public Task(final int episode, final String solutionSet, final Collection<Solution> added,
+                final Collection<Solution> removed, final double[] episodeReturn) {
+            this.episode = episode;
+            this.solutionSet = solutionSet;
+            this.added = added;
+            this.removed = removed;
+            this.episodeReturn = episodeReturn;
+        }
+    }
+
+    /** The task marking that no more episodes will be submitted */
+    private static final Task END = new Task(-1, null, null, null, null);
+
+    /** The engine that keeps the metrics up to date */
+    private final MetricEngine mMetricEngine;
+    /** The sink receiving the metrics */
+    private final Sink mSink;
+    /** The episodes waiting for evaluation */
+    private final BlockingQueue<Task> mQueue;
+    /** The threads evaluating the indicators */
+    private final ExecutorService mIndicatorExecutor;
+    /** The thread taking the episodes from the queue */
+    private final Thread mThread;
+
+    /** The first failure of the pipeline thread, or null if there was none */
+    private volatile RuntimeException mFailure = null;
+
+    /**
+     * Creates and starts a pipeline.
+     *
+     * @param metricEngine
+     *            The engine that keeps the metrics up to date, which may not be used elsewhere until the pipeline is
+     *            closed
+     * @param capacity
+     *            The amount of episodes that can be waiting for evaluation before submitting blocks
+     * @param numThreads
+     *            The amount of threads evaluating the indicators
+     * @param sink
+     *            The sink receiving the metrics
+     */
+    public MetricPipeline(final MetricEngine metricEngine, final int capacity, final int numThreads, final Sink sink) {
+        if (capacity < 1 || numThreads < 1) {
+            throw new InvalidParameterException("The pipeline requires a capacity and at least one thread");
+        }
+
+        mMetricEngine = metricEngine;
+        mSink = sink;
+        mQueue = new ArrayBlockingQueue<>(capacity);
+        mIndicatorExecutor = Executors.newFixedThreadPool(numThreads);
+        mMetricEngine.setExecutor(mIndicatorExecutor);
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                evaluateEpisodes();
+            }
+        }, "Metric pipeline");
+        mThread.start();
+    }
+
+    /**
+     * Queues an episode for evaluation. Blocks while the queue is full.
+     *
+     * @param episode
+     *            The episode
+     * @param solutionSet
+     *            The string representation of the solution set after the episode
+     * @param episodeReturn
+     *            The return of the episode, which may not be modified afterwards
+     */
+    public void submit(final int episode, final String solutionSet, final double[] episodeReturn) {
+        submit(new Task(episode, solutionSet, null, null, episodeReturn));
+    }
+
+    /**
+     * Queues an episode for evaluation by the changes to the solution set since the previously submitted episode.
+     * Blocks while the queue is full.
+     *
+     * @param episode
+     *            The episode
+     * @param added
+     *            The solutions added since the previous episode, which may not be modified afterwards
+     * @param removed
+     *            The solutions removed since the previous episode, which may not be modified afterwards
+     * @param episodeReturn
+     *            The return of the episode, which may not be modified afterwards
+     */
+    public void submit(final int episode, final Collection<Solution> added, final Collection<Solution> removed,
+            final double[] episodeReturn) {
+        submit(new Task(episode, null, added, removed, episodeReturn));
+    }
+
+    /**
+     * Queues a task. Blocks while the queue is full.
+     *
+     * @param task
+     *            The task to queue
+     */
+    private void submit(final Task task) {
+        checkFailure();
+        try {
+            mQueue.put(task);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Waits until all submitted episodes have been evaluated and stops the threads of the pipeline.
+     */
+    public void close() {
+        try {
+            mQueue.put(END);
+            mThread.join();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            mIndicatorExecutor.shutdownNow();
+            mMetricEngine.setExecutor(null);
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Takes the episodes from the queue in order and evaluates them until the end is reached. After a failure the
+     * remaining episodes are skipped so that submitting never blocks indefinitely.
+     */
+    private void evaluateEpisodes() {
+        while (true) {
+            final Task task;
+            try {
+                task = mQueue.take();
+            } catch (final InterruptedException ex) {
+                mFailure = new RuntimeException(ex);
+                return;
+            }
+
+            if (task == END) {
+                return;
+            }
+            if (mFailure != null) {
+                continue;
+            }
+
+            try {
+                final long startTime = EventTrace.begin();
+                final boolean changed = (task.solutionSet != null ? mMetricEngine.update(task.solutionSet)
+                        : mMetricEngine.update(task.added, task.removed));
+                if (changed) {
+                    EventTrace.metricEvaluation(startTime, task.episode,
+                            mMetricEngine.getOverallNondominatedVectorGeneration());
+                }
+                mSink.onMetrics(task.episode, mMetricEngine, task.episodeReturn);
+            } catch (final RuntimeException ex) {
+                mFailure = ex;
+            }
+        }
+    }
+
+    /**
+     * Rethrows a failure of the pipeline thread on the calling thread.
+     */
+    private void checkFailure() {
+        final RuntimeException failure = mFailure;
+        if (failure != null) {
+            throw new RuntimeException("Evaluating the metrics failed", failure);
+        }
+    }
+
+}
@@ -0,0 +1,401 @@
+package nl.uva.morlb.rg.experiment;
+
+import nl.uva.morlb.rg.experiment.model.ColumnarSolutionSet;
+
+/**
+ * A KD-tree over the solutions of a solution set that finds the nearest solution to a query. The tree splits the
+ * solutions at the median of the objective with the largest extent and keeps the bounding box of every node, so that a
+ * query only visits the nodes that could contain a solution nearer than the best one found so far. Building takes
+ * O(n log n) and a query typically O(log n) for the few objectives of the benchmark. The distances are calculated with
+ * the same arithmetic as the brute force loops in {@link Judge}, so the results are equal.
+ */
+public class NearestNeighbourIndex {
+
+    /**
+     * The distances that can be used to find the nearest solution
+     */
+    public enum Distance {
+
+        /** The sum of absolute differences per objective, as used by the spacing metric */
+        MANHATTAN {
+            @Override
+            double distance(final double[] queryValues, final int query, final double[] values, final int offset,
+                    final int numObjectives) {
+                double distance = 0;
+                for (int dim = 0; dim < numObjectives; ++dim) {
+                    distance += Math.abs(queryValues[query + dim] - values[offset + dim]);
+                }
+                return distance;
+            }
+
+            @Override
+            double lowerBound(final double[] queryValues, final int query, final double[] boxMin,
+                    final double[] boxMax, final int box, final int numObjectives) {
+                double bound = 0;
+                for (int dim = 0; dim < numObjectives; ++dim) {
+                    final double value = queryValues[query + dim];
+                    if (value < boxMin[box + dim]) {
+                        bound += boxMin[box + dim] - value;
+                    } else if (value > boxMax[box + dim]) {
+                        bound += value - boxMax[box + dim];
+                    }
+                }
+                return bound;
+            }
+        },
+
+        /**
+         * The smallest epsilon that has to be added to a solution for it to weakly dominate the query, as used by the
+         * additive epsilon indicator
+         */
+        ADDITIVE_EPSILON {
+            @Override
+            double distance(final double[] queryValues, final int query, final double[] values, final int offset,
+                    final int numObjectives) {
+                return Judge.additiveEpsilon(values, offset, queryValues, query, numObjectives);
+            }
+
+            @Override
+            double lowerBound(final double[] queryValues, final int query, final double[] boxMin,
+                    final double[] boxMax, final int box, final int numObjectives) {
+                // The highest solution possible in the box needs the smallest epsilon
+                return Judge.additiveEpsilon(boxMax, box, queryValues, query, numObjectives);
+            }
+        };
+
+        /**
+         * Calculates the distance between a query and a solution.
+         *
+         * @param queryValues
+         *            The values containing the query
+         * @param query
+         *            The offset of the query in its values
+         * @param values
+         *            The values containing the solution
+         * @param offset
+         *            The offset of the solution in its values
+         * @param numObjectives
+         *            The amount of objectives to compare
+         *
+         * @return The distance
+         */
+        abstract double distance(double[] queryValues, int query, double[] values, int offset, int numObjectives);
+
+        /**
+         * Calculates a distance that is at most the distance between a query and any solution within a box.
+         *
+         * @param queryValues
+         *            The values containing the query
+         * @param query
+         *            The offset of the query in its values
+         * @param boxMin
+         *            The values containing the lowest corner of the box
+         * @param boxMax
+         *            The values containing the highest corner of the box
+         * @param box
+         *            The offset of the box in its corners
+         * @param numObjectives
+         *            The amount of objectives to compare
+         *
+         * @return The lower bound on the distance
+         */
+        abstract double lowerBound(double[] queryValues, int query, double[] boxMin, double[] boxMax, int box,
+                int numObjectives);
+    }
+
+    /** The maximum amount of solutions in a leaf, which are compared one by one */
+    private static final int MAX_LEAF_SIZE = 8;
+
+    /** The solutions in the index */
+    private final ColumnarSolutionSet mSolutionSet;
+    /** The amount of objectives of the solutions */
+    private final int mNumObjectives;
+
+    /** The indices of the solutions, ordered such that every node covers a consecutive range */
+    private final int[] mOrder;
+    /** The first position in the order per node */
+    private final int[] mStart;
+    /** The position after the last one in the order per node */
+    private final int[] mEnd;
+    /** The left child per node, or -1 for a leaf */
+    private final int[] mLeft;
+    /** The right child per node, or -1 for a leaf */
+    private final int[] mRight;
+    /** The lowest value per objective of the solutions in each node, one node after the other */
+    private final double[] mBoxMin;
+    /** The highest value per objective of the solutions in each node, one node after the other */
+    private final double[] mBoxMax;
+    /** The amount of nodes in the tree */
+    private int mNumNodes = 0;
+
+    /**
+     * Builds an index over the solutions of a solution set.
+     *
+     * @param solutionSet
+     *            The solutions to index
+     */
+    public NearestNeighbourIndex(final ColumnarSolutionSet solutionSet) {
+        mSolutionSet = solutionSet;
+        mNumObjectives = solutionSet.getNumObjectives();
+
+        final int numSolutions = solutionSet.getNumSolutions();
+        mOrder = new int[numSolutions];
+        for (int i = 0; i < numSolutions; ++i) {
+            mOrder[i] = i;
+        }
+
+        // Every node holds at least one solution and every split creates two nodes
+        final int maxNodes = Math.max(1, 2 * numSolutions);
+        mStart = new int[maxNodes];
+        mEnd = new int[maxNodes];
+        mLeft = new int[maxNodes];
+        mRight = new int[maxNodes];
+        mBoxMin = new double[maxNodes * mNumObjectives];
+        mBoxMax = new double[maxNodes * mNumObjectives];
+
+        if (numSolutions > 0) {
+            build(0, numSolutions);
+        }
+    }
+
+    /**
+     * Builds the node for a range of the order, splitting it further if it holds too many solutions.
+     *
+     * @param start
+     *            The first position in the order
+     * @param end
+     *            The position after the last one in the order
+     *
+     * @return The index of the node
+     */
+    private int build(final int start, final int end) {
+        final int node = mNumNodes++;
+        mStart[node] = start;
+        mEnd[node] = end;
+        mLeft[node] = -1;
+        mRight[node] = -1;
+
+        // Find the bounding box and the objective along which it is widest
+        final double[] values = mSolutionSet.getValues();
+        final int box = node * mNumObjectives;
+        int splitDim = 0;
+        double widest = 0;
+        for (int dim = 0; dim < mNumObjectives; ++dim) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; ++i) {
+                final double value = values[mSolutionSet.getOffset(mOrder[i]) + dim];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            mBoxMin[box + dim] = min;
+            mBoxMax[box + dim] = max;
+
+            if (max - min > widest) {
+                widest = max - min;
+                splitDim = dim;
+            }
+        }
+
+        // Small nodes and nodes of equal solutions are not split
+        if (end - start <= MAX_LEAF_SIZE || !(widest > 0)) {
+            return node;
+        }
+
+        final int median = (start + end) / 2;
+        select(start, end, median, splitDim);
+        mLeft[node] = build(start, median);
+        mRight[node] = build(median, end);
+        return node;
+    }
+
+    /**
+     * Reorders a range of the order so that the solution at the given position has the value it would have when
+     * sorted on an objective, with lower values before it and higher values after it.
+     *
+     * @param start
+     *            The first position in the order
+     * @param end
+     *            The position after the last one in the order
+     * @param position
+     *            The position to put the right solution at
+     * @param dim
+     *            The objective to order on
+     */
+    private void select(final int start, final int end, final int position, final int dim) {
+        int low = start;
+        int high = end - 1;
+        while (low < high) {
+            final double pivot = value(mOrder[(low + high) >>> 1], dim);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (value(mOrder[i], dim) < pivot) {
+                    ++i;
+                }
+                while (value(mOrder[j], dim) > pivot) {
+                    --j;
+                }
+                if (i <= j) {
+                    final int swap = mOrder[i];
+                    mOrder[i++] = mOrder[j];
+                    mOrder[j--] = swap;
+                }
+            }
+
+            if (position <= j) {
+                high = j;
+            } else if (position >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param solution
+     *            The index of the solution
+     * @param dim
+     *            The objective
+     *
+     * @return The value of the solution for the objective
+     */
+    private double value(final int solution, final int dim) {
+        return mSolutionSet.getValue(solution, dim);
+    }
+
+    /**
+     * Finds the distance from a query to the nearest solution in the index.
+     *
+     * @param queryValues
+     *            The values containing the query
+     * @param query
+     *            The offset of the query in its values
+     * @param distance
+     *            The distance to use
+     *
+     * @return The distance to the nearest solution, or positive infinity if there are none
+     */
+    public double nearestDistance(final double[] queryValues, final int query, final Distance distance) {
+        return nearestDistance(queryValues, query, -1, distance, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Finds the distance from a query to the nearest solution in the index, unless it is below a given bound. The
+     * search stops as soon as a solution below the bound is found, which is useful when only distances at or above the
+     * bound matter, e.g. when taking the maximum over several queries.
+     *
+     * @param queryValues
+     *            The values containing the query
+     * @param query
+     *            The offset of the query in its values
+     * @param distance
+     *            The distance to use
+     * @param stopBound
+     *            The distance below which the exact nearest distance is not needed
+     *
+     * @return The distance to the nearest solution if that is at least the bound, or otherwise a distance to a
+     *         solution below the bound
+     */
+    public double nearestDistance(final double[] queryValues, final int query, final Distance distance,
+            final double stopBound) {
+        return nearestDistance(queryValues, query, -1, distance, stopBound);
+    }
+
+    /**
+     * Finds the distance from a solution in the index to the nearest other solution in the index.
+     *
+     * @param solution
+     *            The index of the solution in the indexed solution set
+     * @param distance
+     *            The distance to use
+     *
+     * @return The distance to the nearest other solution, or positive infinity if there are none
+     */
+    public double nearestDistance(final int solution, final Distance distance) {
+        return nearestDistance(mSolutionSet.getValues(), mSolutionSet.getOffset(solution), solution, distance,
+                Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Finds the distance from a query to the nearest solution in the index, skipping one solution.
+     *
+     * @param queryValues
+     *            The values containing the query
+     * @param query
+     *            The offset of the query in its values
+     * @param exclude
+     *            The index of the solution to skip, or -1 to skip none
+     * @param distance
+     *            The distance to use
+     * @param stopBound
+     *            The distance below which the search may stop
+     *
+     * @return The distance to the nearest solution, or positive infinity if there are none
+     */
+    private double nearestDistance(final double[] queryValues, final int query, final int exclude,
+            final Distance distance, final double stopBound) {
+        if (mNumNodes == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return search(0, queryValues, query, exclude, distance, stopBound, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Searches a node for a solution nearer to the query than the best one found so far.
+     *
+     * @param node
+     *            The node to search
+     * @param queryValues
+     *            The values containing the query
+     * @param query
+     *            The offset of the query in its values
+     * @param exclude
+     *            The index of the solution to skip, or -1 to skip none
+     * @param distance
+     *            The distance to use
+     * @param stopBound
+     *            The distance below which the search may stop
+     * @param best
+     *            The distance to the nearest solution found so far
+     *
+     * @return The distance to the nearest solution found after searching the node
+     */
+    private double search(final int node, final double[] queryValues, final int query, final int exclude,
+            final Distance distance, final double stopBound, final double best) {
+        double nearest = best;
+
+        if (mLeft[node] == -1) {
+            final double[] values = mSolutionSet.getValues();
+            for (int i = mStart[node]; i < mEnd[node] && !(nearest < stopBound); ++i) {
+                if (mOrder[i] != exclude) {
+                    nearest = Math.min(nearest, distance.distance(queryValues, query, values,
+                            mSolutionSet.getOffset(mOrder[i]), mNumObjectives));
+                }
+            }
+            return nearest;
+        }
+
+        // Visit the child that is likely nearest first so that the other one can more often be skipped
+        final int left = mLeft[node];
+        final int right = mRight[node];
+        final double leftBound = distance.lowerBound(queryValues, query, mBoxMin, mBoxMax, left * mNumObjectives,
+                mNumObjectives);
+        final double rightBound = distance.lowerBound(queryValues, query, mBoxMin, mBoxMax, right * mNumObjectives,
+                mNumObjectives);
+        final int first = (leftBound <= rightBound ? left : right);
+        final int second = (first == left ? right : left);
+        final double secondBound = (first == left ? rightBound : leftBound);
+
+        if (Math.min(leftBound, rightBound) < nearest) {
+            nearest = search(first, queryValues, query, exclude, distance, stopBound, nearest);
+        }
+        if (secondBound < nearest && !(nearest < stopBound)) {
+            nearest = search(second, queryValues, query, exclude, distance, stopBound, nearest);
+        }
+        return nearest;
+    }
+
+}
@@ -0,0 +1,134 @@
+package nl.uva.morlb.rg.experiment.model;
+
+import java.security.InvalidParameterException;
+
+/**
+ * An immutable solution set of which the values are stored in a single primitive array, one solution after the other.
+ * Unlike {@link SolutionSet}, reading values does not copy them, which makes it suitable for metrics that visit every
+ * value many times.
+ */
+public class ColumnarSolutionSet {
+
+    /** The amount of objectives solutions have values for */
+    private final int mNumObjectives;
+
+    /** The amount of solutions in the set */
+    private final int mNumSolutions;
+
+    /** The values of all solutions, where solution i starts at index i * mNumObjectives */
+    private final double[] mValues;
+
+    /**
+     * Creates a columnar copy of a solution set.
+     *
+     * @param solutionSet
+     *            The solution set to copy
+     */
+    public ColumnarSolutionSet(final SolutionSet solutionSet) {
+        mNumObjectives = solutionSet.getNumObjectives();
+        mNumSolutions = solutionSet.getNumSolutions();
+        mValues = new double[mNumSolutions * mNumObjectives];
+
+        int offset = 0;
+        for (final Solution solution : solutionSet.getSolutions()) {
+            solution.copyValues(mValues, offset);
+            offset += mNumObjectives;
+        }
+    }
+
+    /**
+     * Creates a solution set around the given values without copying them. The values may not be modified afterwards.
+     *
+     * @param numObjectives
+     *            The amount of objectives solutions have values for
+     * @param values
+     *            The values of all solutions, one solution after the other
+     * @param numSolutions
+     *            The amount of solutions to take from the start of the values
+     */
+    public ColumnarSolutionSet(final int numObjectives, final double[] values, final int numSolutions) {
+        if (numObjectives < 1 || numSolutions < 0 || numSolutions * numObjectives > values.length) {
+            throw new InvalidParameterException("The values do not contain the given amount of solutions");
+        }
+
+        mNumObjectives = numObjectives;
+        mNumSolutions = numSolutions;
+        mValues = values;
+    }
+
+    /**
+     * Gets a single value of a solution.
+     *
+     * @param solution
+     *            The index of the solution
+     * @param dim
+     *            The objective of the value
+     *
+     * @return The value
+     */
+    public double getValue(final int solution, final int dim) {
+        return mValues[solution * mNumObjectives + dim];
+    }
+
+    /**
+     * Gets the index in the backing values at which a solution starts.
+     *
+     * @param solution
+     *            The index of the solution
+     *
+     * @return The offset of the solution in {@link #getValues()}
+     */
+    public int getOffset(final int solution) {
+        return solution * mNumObjectives;
+    }
+
+    /**
+     * @return The backing values of all solutions, one solution after the other, which may not be modified
+     */
+    public double[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * Creates a solution object for a solution in the set.
+     *
+     * @param solution
+     *            The index of the solution
+     *
+     * @return A solution with a copy of the values
+     */
+    public Solution getSolution(final int solution) {
+        final double[] values = new double[mNumObjectives];
+        System.arraycopy(mValues, solution * mNumObjectives, values, 0, mNumObjectives);
+        return new Solution(values);
+    }
+
+    /**
+     * @return The number of objectives solutions have values for
+     */
+    public int getNumObjectives() {
+        return mNumObjectives;
+    }
+
+    /**
+     * @return The cardinality of the solution set
+     */
+    public int getNumSolutions() {
+        return mNumSolutions;
+    }
+
+    /**
+     * Creates a regular solution set containing the same solutions.
+     *
+     * @return The solution set
+     */
+    public SolutionSet toSolutionSet() {
+        final SolutionSet solutionSet = new SolutionSet(mNumObjectives);
+        for (int i = 0; i < mNumSolutions; ++i) {
+            solutionSet.addSolution(getSolution(i));
+        }
+
+        return solutionSet;
+    }
+
+}
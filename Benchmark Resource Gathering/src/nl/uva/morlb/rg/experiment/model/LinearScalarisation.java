@@ -39,6 +39,25 @@ public class LinearScalarisation extends Scalarisation {
         return scalar;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * Calculates the dot product of the values and weights.
+     */
+    @Override
+    public double scalarise(final double[] values, final int offset, final double[] weights) {
+        if (offset + weights.length > values.length) {
+            throw new InvalidParameterException("Values must contain as many rewards as there are weights");
+        }
+
+        double scalar = 0;
+        for (int i = 0; i < weights.length; ++i) {
+            scalar += values[offset + i] * weights[i];
+        }
+
+        return scalar;
+    }
+
     /**
      * {inheritDoc}
      * 
@@ -58,4 +77,113 @@ public class LinearScalarisation extends Scalarisation {
         return randomWeightVector;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * Spreads the weight vectors uniformly over the simplex, i.e. all weights are non-negative and sum to one
+     */
+    @Override
+    public double[][] quasiRandomWeightVectors(final int numVectors) {
+        final double[][] weightVectors = quasiRandomWeightVectors(numVectors, mNumValues);
+
+        // Normalising exponentially distributed weights gives a uniform distribution over the simplex
+        for (final double[] weightVector : weightVectors) {
+            double sum = 0;
+            for (int i = 0; i < mNumValues; ++i) {
+                weightVector[i] = -Math.log(weightVector[i]);
+                sum += weightVector[i];
+            }
+            for (int i = 0; i < mNumValues; ++i) {
+                weightVector[i] /= sum;
+            }
+        }
+
+        return weightVectors;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Calculates the matrix product of the weight vectors and the solutions, keeping the maximum per weight vector.
+     */
+    @Override
+    public double[] scalariseMaxima(final ColumnarSolutionSet solutionSet, final double[][] weightVectors) {
+        if (solutionSet.getNumObjectives() != mNumValues) {
+            throw new InvalidParameterException("Solutions must have as many values as this function accepts");
+        }
+        final int numSolutions = solutionSet.getNumSolutions();
+        final double[] values = solutionSet.getValues();
+
+        // Lay the weight vectors out after each other like the values of the solutions
+        final double[] weights = new double[weightVectors.length * mNumValues];
+        for (int vector = 0; vector < weightVectors.length; ++vector) {
+            if (weightVectors[vector].length != mNumValues) {
+                throw new InvalidParameterException("Weight vectors must have as many weights as there are values");
+            }
+            System.arraycopy(weightVectors[vector], 0, weights, vector * mNumValues, mNumValues);
+        }
+
+        final double[] maxima = new double[weightVectors.length];
+        for (int vector = 0; vector < weightVectors.length; ++vector) {
+            final int weightOffset = vector * mNumValues;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int offset = 0; offset < numSolutions * mNumValues; offset += mNumValues) {
+                double scalar = 0;
+                for (int i = 0; i < mNumValues; ++i) {
+                    scalar += values[offset + i] * weights[weightOffset + i];
+                }
+                max = Math.max(max, scalar);
+            }
+            maxima[vector] = max;
+        }
+
+        return maxima;
+    }
+
+    /**
+     * Creates the weight vectors on a regular lattice over the simplex, i.e. all vectors consisting of non-negative
+     * multiples of 1 / divisions that sum to one.
+     * 
+     * @param numValues
+     *            The dimensions of the weight vectors
+     * @param divisions
+     *            The amount of steps between 0 and 1 for each weight
+     * @return The lattice weight vectors
+     */
+    public static double[][] simplexLattice(final int numValues, final int divisions) {
+        if (numValues < 1 || divisions < 1) {
+            throw new InvalidParameterException("The lattice requires at least one value and one division");
+        }
+
+        // The amount of ways to spread the divisions over the values
+        long numVectors = 1;
+        for (int i = 1; i < numValues; ++i) {
+            numVectors = numVectors * (divisions + i) / i;
+        }
+
+        final double[][] weightVectors = new double[(int) numVectors][numValues];
+        final int[] counts = new int[numValues];
+        counts[numValues - 1] = divisions;
+        for (int vector = 0; vector < weightVectors.length; ++vector) {
+            for (int i = 0; i < numValues; ++i) {
+                weightVectors[vector][i] = (double) counts[i] / divisions;
+            }
+
+            // Move to the next composition of the divisions by moving one unit from the last value
+            int last = numValues - 1;
+            while (last > 0 && counts[last] == 0) {
+                --last;
+            }
+            if (last == 0) {
+                break;
+            }
+            final int remaining = counts[last] - 1;
+            counts[last] = 0;
+            ++counts[last - 1];
+            counts[numValues - 1] = remaining;
+        }
+
+        return weightVectors;
+    }
+
 }
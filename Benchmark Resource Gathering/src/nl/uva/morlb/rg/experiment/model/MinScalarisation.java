@@ -33,6 +33,21 @@ public class MinScalarisation extends Scalarisation {
         return sum + 10 * min + values[0] * weights[0];
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double scalarise(final double[] values, final int offset, final double[] weights) {
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        for (int i = 1; i < weights.length; ++i) {
+            sum += weights[i] * values[offset + i];
+            min = Math.min(min, values[offset + i]);
+        }
+
+        return sum + 10 * min + values[offset] * weights[0];
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -41,4 +56,12 @@ public class MinScalarisation extends Scalarisation {
         return randomWeightVector(mNumValues);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double[][] quasiRandomWeightVectors(final int numVectors) {
+        return quasiRandomWeightVectors(numVectors, mNumValues);
+    }
+
 }
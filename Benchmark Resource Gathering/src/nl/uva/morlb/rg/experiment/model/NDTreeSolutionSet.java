@@ -0,0 +1,487 @@
+package nl.uva.morlb.rg.experiment.model;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A solution set that only keeps non-dominated solutions, backed by an ND-tree. Every node of the tree bounds the
+ * solutions below it by their ideal and nadir points, which lets dominance tests and the eviction of dominated
+ * solutions skip whole subtrees. Exact duplicates are found through a hash index, which also remembers the order in
+ * which solutions were added so that the solutions are listed in the same order as a regular solution set pruned of
+ * its dominated solutions. (See A. Jaszkiewicz and T. Lust: ND-Tree-Based Update: A Fast Algorithm for the Dynamic
+ * Nondominance Problem, IEEE Transactions on Evolutionary Computation, vol. 22, no. 5, pp. 778-791, 2018)
+ */
+public class NDTreeSolutionSet extends SolutionSet {
+
+    /** The maximum amount of solutions in a leaf before it is split */
+    private static final int MAX_LEAF_SIZE = 20;
+
+    /** The values of the solutions in the set by solution, in the order they were added */
+    private final Map<Solution, double[]> mIndex = new LinkedHashMap<>();
+
+    /** The root of the tree, or null if the set is empty */
+    private Node mRoot;
+
+    /** The list of solutions returned until the set changes, or null if it has to be recreated */
+    private List<Solution> mSolutionList;
+
+    /**
+     * Creates an empty solution set with a given amount of objectives.
+     *
+     * @param numObjectives
+     *            The amount of objectives a solution has
+     */
+    public NDTreeSolutionSet(final int numObjectives) {
+        super(numObjectives);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Solutions that are dominated by the set are not added, while solutions in the set that are dominated by the new
+     * one are removed.
+     */
+    @Override
+    public boolean addSolution(final Solution solution) {
+        if (solution.getNumObjectives() != getNumObjectives()) {
+            throw new InvalidParameterException(
+                    "The number of objectives in the solution must match that of the solution set");
+        }
+
+        if (mIndex.containsKey(solution)) {
+            return false;
+        }
+
+        final double[] values = solution.getValues();
+        if (mRoot != null) {
+            if (isDominated(mRoot, values)) {
+                return false;
+            }
+            if (evictDominated(mRoot, values)) {
+                mRoot = null;
+            }
+        }
+
+        mIndex.put(solution, values);
+        mSolutionList = null;
+        if (mRoot == null) {
+            mRoot = new Node(values);
+        }
+        insert(mRoot, solution, values);
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Does nothing as dominated solutions are never kept.
+     */
+    @Override
+    public void pruneDominatedSolutions() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDominated(final Solution solution) {
+        return (mRoot != null && isDominated(mRoot, solution.getValues()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NDTreeSolutionSet copy() {
+        final NDTreeSolutionSet copy = new NDTreeSolutionSet(getNumObjectives());
+        copy.addSolutionSet(this);
+        return copy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Solution> getSolutions() {
+        if (mSolutionList == null) {
+            mSolutionList = Collections.unmodifiableList(new ArrayList<>(mIndex.keySet()));
+        }
+        return mSolutionList;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNumSolutions() {
+        return mIndex.size();
+    }
+
+    /**
+     * Checks if the solutions below a node contain one that is at least as good in every objective as the given values
+     * without being equal to them.
+     *
+     * @param node
+     *            The node to check
+     * @param values
+     *            The values to check
+     *
+     * @return True iff the values are dominated
+     */
+    private static boolean isDominated(final Node node, final double[] values) {
+        // No solution can dominate the values if the best possible one does not
+        if (!weaklyDominates(node.ideal, values)) {
+            return false;
+        }
+
+        // Every solution dominates the values if the worst possible one does
+        if (weaklyDominates(node.nadir, values) && !isEqual(node.nadir, values)) {
+            return true;
+        }
+
+        if (node.isLeaf()) {
+            for (final double[] other : node.points) {
+                if (weaklyDominates(other, values) && !isEqual(other, values)) {
+                    return true;
+                }
+            }
+        } else {
+            for (final Node child : node.children) {
+                if (isDominated(child, values)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the solutions below a node that are dominated by the given values.
+     *
+     * @param node
+     *            The node to remove the solutions from
+     * @param values
+     *            The values of the new solution, which are not in the set
+     *
+     * @return True iff the node no longer contains any solutions
+     */
+    private boolean evictDominated(final Node node, final double[] values) {
+        // No solution can be dominated if even the worst possible one is not
+        if (!weaklyDominates(values, node.nadir)) {
+            return false;
+        }
+
+        // All solutions are dominated if even the best possible one is
+        if (weaklyDominates(values, node.ideal)) {
+            removeAll(node);
+            return true;
+        }
+
+        if (node.isLeaf()) {
+            for (int i = node.points.size() - 1; i >= 0; --i) {
+                if (weaklyDominates(values, node.points.get(i))) {
+                    remove(node.solutions.remove(i));
+                    node.points.remove(i);
+                }
+            }
+            return node.points.isEmpty();
+        }
+
+        for (int i = node.children.size() - 1; i >= 0; --i) {
+            if (evictDominated(node.children.get(i), values)) {
+                node.children.remove(i);
+            }
+        }
+
+        if (node.children.size() == 1) {
+            // Skip the node that no longer splits anything
+            final Node child = node.children.get(0);
+            node.children = child.children;
+            node.points = child.points;
+            node.solutions = child.solutions;
+        }
+
+        return (node.children != null && node.children.isEmpty());
+    }
+
+    /**
+     * Removes all solutions below a node from the index.
+     *
+     * @param node
+     *            The node to remove the solutions of
+     */
+    private void removeAll(final Node node) {
+        if (node.isLeaf()) {
+            for (final Solution solution : node.solutions) {
+                remove(solution);
+            }
+        } else {
+            for (final Node child : node.children) {
+                removeAll(child);
+            }
+        }
+    }
+
+    /**
+     * Removes a solution from the index.
+     *
+     * @param solution
+     *            The solution to remove
+     */
+    private void remove(final Solution solution) {
+        mIndex.remove(solution);
+        mSolutionList = null;
+    }
+
+    /**
+     * Inserts a solution into the leaf below a node that is closest to it, splitting the leaf when it becomes too
+     * large.
+     *
+     * @param root
+     *            The node to insert the solution below
+     * @param solution
+     *            The solution to insert
+     * @param values
+     *            The values of the solution
+     */
+    private void insert(final Node root, final Solution solution, final double[] values) {
+        Node node = root;
+        while (true) {
+            node.include(values);
+            if (node.isLeaf()) {
+                node.solutions.add(solution);
+                node.points.add(values);
+                if (node.points.size() > MAX_LEAF_SIZE) {
+                    split(node);
+                }
+                return;
+            }
+
+            Node closest = null;
+            double closestDistance = Double.POSITIVE_INFINITY;
+            for (final Node child : node.children) {
+                final double distance = child.distanceToMidpoint(values);
+                if (distance < closestDistance) {
+                    closest = child;
+                    closestDistance = distance;
+                }
+            }
+            node = closest;
+        }
+    }
+
+    /**
+     * Turns a leaf into a node with one leaf per objective plus one. The first solutions of the new leaves are the
+     * ones furthest away from the others, after which the remaining solutions go to the leaf closest to them.
+     *
+     * @param node
+     *            The leaf to split
+     */
+    private void split(final Node node) {
+        final List<double[]> points = node.points;
+        final List<Solution> solutions = node.solutions;
+        final int numPoints = points.size();
+        final int numChildren = Math.min(getNumObjectives() + 1, numPoints);
+
+        final List<Node> children = new ArrayList<>(numChildren);
+        final boolean[] assigned = new boolean[numPoints];
+
+        // Pick the seeds of the children, each being the solution furthest away from the previous seeds
+        final double[] distanceSums = new double[numPoints];
+        int seed = 0;
+        double largestSum = -1;
+        for (int i = 0; i < numPoints; ++i) {
+            for (int j = 0; j < numPoints; ++j) {
+                distanceSums[i] += distance(points.get(i), points.get(j));
+            }
+            if (distanceSums[i] > largestSum) {
+                largestSum = distanceSums[i];
+                seed = i;
+            }
+        }
+        Arrays.fill(distanceSums, 0);
+
+        while (true) {
+            final Node child = new Node(points.get(seed));
+            child.include(points.get(seed));
+            child.points.add(points.get(seed));
+            child.solutions.add(solutions.get(seed));
+            children.add(child);
+            assigned[seed] = true;
+
+            if (children.size() == numChildren) {
+                break;
+            }
+
+            largestSum = -1;
+            final int previousSeed = seed;
+            for (int i = 0; i < numPoints; ++i) {
+                if (!assigned[i]) {
+                    distanceSums[i] += distance(points.get(i), points.get(previousSeed));
+                    if (distanceSums[i] > largestSum) {
+                        largestSum = distanceSums[i];
+                        seed = i;
+                    }
+                }
+            }
+        }
+
+        // Add the other solutions to the closest child
+        for (int i = 0; i < numPoints; ++i) {
+            if (assigned[i]) {
+                continue;
+            }
+
+            final double[] values = points.get(i);
+            Node closest = null;
+            double closestDistance = Double.POSITIVE_INFINITY;
+            for (final Node child : children) {
+                final double distance = child.distanceToMidpoint(values);
+                if (distance < closestDistance) {
+                    closest = child;
+                    closestDistance = distance;
+                }
+            }
+
+            closest.include(values);
+            closest.points.add(values);
+            closest.solutions.add(solutions.get(i));
+        }
+
+        node.children = children;
+        node.points = null;
+        node.solutions = null;
+    }
+
+    /**
+     * Checks if the first values are at least as large as the second in every objective.
+     *
+     * @param values
+     *            The first values
+     * @param other
+     *            The second values
+     *
+     * @return True iff the first values weakly dominate the second
+     */
+    private static boolean weaklyDominates(final double[] values, final double[] other) {
+        for (int dim = 0; dim < values.length; ++dim) {
+            if (values[dim] < other[dim]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if two value arrays are equal in the same way as {@link Solution#equals(Object)}.
+     *
+     * @param values
+     *            The first values
+     * @param other
+     *            The second values
+     *
+     * @return True iff all values are equal
+     */
+    private static boolean isEqual(final double[] values, final double[] other) {
+        return Arrays.equals(values, other);
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between two value arrays.
+     *
+     * @param values
+     *            The first values
+     * @param other
+     *            The second values
+     *
+     * @return The squared distance
+     */
+    private static double distance(final double[] values, final double[] other) {
+        double distance = 0;
+        for (int dim = 0; dim < values.length; ++dim) {
+            final double difference = values[dim] - other[dim];
+            distance += difference * difference;
+        }
+
+        return distance;
+    }
+
+    /**
+     * A node of the tree, which is either a leaf with solutions or has child nodes
+     */
+    private static class Node {
+
+        /** The largest value per objective of the solutions below the node, possibly larger after removals */
+        private final double[] ideal;
+
+        /** The smallest value per objective of the solutions below the node, possibly smaller after removals */
+        private final double[] nadir;
+
+        /** The children of the node, or null if it is a leaf */
+        private List<Node> children;
+
+        /** The values of the solutions in the leaf, or null if the node has children */
+        private List<double[]> points = new ArrayList<>();
+
+        /** The solutions in the leaf, or null if the node has children */
+        private List<Solution> solutions = new ArrayList<>();
+
+        /**
+         * Creates an empty leaf with bounds at the given values.
+         *
+         * @param values
+         *            The values of the first solution that will be added
+         */
+        public Node(final double[] values) {
+            ideal = values.clone();
+            nadir = values.clone();
+        }
+
+        /**
+         * @return True iff the node contains solutions directly
+         */
+        public boolean isLeaf() {
+            return (children == null);
+        }
+
+        /**
+         * Widens the bounds of the node to include the given values.
+         *
+         * @param values
+         *            The values to include
+         */
+        public void include(final double[] values) {
+            for (int dim = 0; dim < values.length; ++dim) {
+                ideal[dim] = Math.max(ideal[dim], values[dim]);
+                nadir[dim] = Math.min(nadir[dim], values[dim]);
+            }
+        }
+
+        /**
+         * Calculates the squared Euclidean distance between the given values and the middle of the bounds.
+         *
+         * @param values
+         *            The values to calculate the distance for
+         *
+         * @return The squared distance
+         */
+        public double distanceToMidpoint(final double[] values) {
+            double distance = 0;
+            for (int dim = 0; dim < values.length; ++dim) {
+                final double difference = values[dim] - (ideal[dim] + nadir[dim]) / 2;
+                distance += difference * difference;
+            }
+
+            return distance;
+        }
+    }
+
+}
@@ -28,6 +28,24 @@ public abstract class Scalarisation {
      */
     public abstract double scalarise(final double[] values, final double[] weights);
 
+    /**
+     * Scalarises multi-objective rewards stored within a larger array, such as the values of a
+     * {@link ColumnarSolutionSet}, into a single reward given the weights.
+     * 
+     * @param values
+     *            The array containing the rewards to scalarise
+     * @param offset
+     *            The index in the values at which the rewards start
+     * @param weights
+     *            The weights used to perform scalarisation, of which the length determines the amount of rewards
+     * @return The scalarised reward
+     */
+    public double scalarise(final double[] values, final int offset, final double[] weights) {
+        final double[] rewards = new double[weights.length];
+        System.arraycopy(values, offset, rewards, 0, rewards.length);
+        return scalarise(rewards, weights);
+    }
+
     /**
      * Returns a random weight according to the distribution over weights that's belonging to the scalarisation
      * function. This distribution is uniform by default.
@@ -62,6 +80,95 @@ public abstract class Scalarisation {
      */
     public abstract double[] randomWeightVector();
 
+    /**
+     * Returns weight vectors that cover the space of weights evenly, taken from a Halton sequence. Unlike random
+     * weight vectors, the same vectors are returned on every call and averages over them converge faster.
+     * 
+     * @param numVectors
+     *            The amount of weight vectors to create
+     * @param dimensions
+     *            The dimensions of the weight vectors
+     * @return The weight vectors with values in (0, 1)
+     */
+    protected double[][] quasiRandomWeightVectors(final int numVectors, final int dimensions) {
+        final double[][] weightVectors = new double[numVectors][dimensions];
+
+        // Each dimension uses the radical inverse in a different prime base
+        int base = 1;
+        for (int i = 0; i < dimensions; ++i) {
+            base = nextPrime(base);
+            for (int vector = 0; vector < numVectors; ++vector) {
+                // The sequence starts at 1 as the radical inverse of 0 is 0
+                int index = vector + 1;
+                double value = 0;
+                double fraction = 1.0 / base;
+                while (index > 0) {
+                    value += fraction * (index % base);
+                    index /= base;
+                    fraction /= base;
+                }
+                weightVectors[vector][i] = value;
+            }
+        }
+
+        return weightVectors;
+    }
+
+    /**
+     * Returns weight vectors that cover the distribution over weights evenly and can be input into the scalarise
+     * method
+     * 
+     * @param numVectors
+     *            The amount of weight vectors to create
+     * @return The weight vectors
+     */
+    public abstract double[][] quasiRandomWeightVectors(final int numVectors);
+
+    /**
+     * Finds the highest scalarised value within a solution set for each of the given weight vectors. All weight
+     * vectors are scored against all solutions in one pass over the primitive values.
+     * 
+     * @param solutionSet
+     *            The solutions to scalarise
+     * @param weightVectors
+     *            The weight vectors to scalarise the solutions with
+     * @return The highest scalarised value per weight vector, or negative infinity if there are no solutions
+     */
+    public double[] scalariseMaxima(final ColumnarSolutionSet solutionSet, final double[][] weightVectors) {
+        final double[] values = solutionSet.getValues();
+        final double[] maxima = new double[weightVectors.length];
+        for (int vector = 0; vector < weightVectors.length; ++vector) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int sol = 0; sol < solutionSet.getNumSolutions(); ++sol) {
+                max = Math.max(max, scalarise(values, solutionSet.getOffset(sol), weightVectors[vector]));
+            }
+            maxima[vector] = max;
+        }
+
+        return maxima;
+    }
+
+    /**
+     * Finds the smallest prime larger than the given number.
+     * 
+     * @param number
+     *            The number to start from
+     * @return The next prime
+     */
+    private static int nextPrime(final int number) {
+        int candidate = number + 1;
+        while (true) {
+            boolean isPrime = candidate > 1;
+            for (int divisor = 2; divisor * divisor <= candidate && isPrime; ++divisor) {
+                isPrime = (candidate % divisor != 0);
+            }
+            if (isPrime) {
+                return candidate;
+            }
+            ++candidate;
+        }
+    }
+
     /**
      * Returns the minimum value a weight can take in the scalarisation function
      * 
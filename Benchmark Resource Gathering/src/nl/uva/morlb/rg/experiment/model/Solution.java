@@ -28,6 +28,18 @@ public class Solution {
         return mValues.clone();
     }
 
+    /**
+     * Copies the coordinates of the solution into an array.
+     * 
+     * @param destination
+     *            The array to copy into
+     * @param offset
+     *            The index in the destination at which to start
+     */
+    void copyValues(final double[] destination, final int offset) {
+        System.arraycopy(mValues, 0, destination, offset, mValues.length);
+    }
+
     /**
      * @return The amount of objectives the solution has a value for
      */
@@ -78,7 +78,7 @@ public class SolutionSet {
      *            The solution set to add
      */
     public void addSolutionSet(final SolutionSet solutionSet) {
-        for (final Solution solution : solutionSet.mSolutions) {
+        for (final Solution solution : solutionSet.getSolutions()) {
             addSolution(solution);
         }
     }
@@ -128,6 +128,64 @@ public class SolutionSet {
         return false;
     }
 
+    /**
+     * Checks if this solution set contains the same solutions as the given one, allowing a small difference per
+     * objective. The counterparts are looked up in both directions, as with a difference allowed several solutions
+     * of one set may have the same counterpart in the other set.
+     *
+     * @param other
+     *            The solution set to compare
+     * @param epsilon
+     *            The maximum absolute difference per objective for two solutions to be considered equal
+     *
+     * @return True iff both sets have the same size and every solution of either set has an equal counterpart in the
+     *         other set
+     */
+    public boolean isEquivalent(final SolutionSet other, final double epsilon) {
+        if (other.mNumObjectives != mNumObjectives || other.getNumSolutions() != getNumSolutions()) {
+            return false;
+        }
+
+        return hasCounterparts(getSolutions(), other.getSolutions(), epsilon)
+                && hasCounterparts(other.getSolutions(), getSolutions(), epsilon);
+    }
+
+    /**
+     * Checks if every solution in a list has a counterpart in another list, allowing a small difference per objective
+     *
+     * @param solutions
+     *            The solutions to look up
+     * @param otherSolutions
+     *            The solutions to look the counterparts up in
+     * @param epsilon
+     *            The maximum absolute difference per objective for two solutions to be considered equal
+     *
+     * @return True iff every solution has an equal counterpart in the other list
+     */
+    private boolean hasCounterparts(final List<Solution> solutions, final List<Solution> otherSolutions,
+            final double epsilon) {
+        solutionCheck:
+        for (final Solution solution : solutions) {
+            final double[] values = solution.getValues();
+
+            otherCheck:
+            for (final Solution otherSolution : otherSolutions) {
+                final double[] otherValues = otherSolution.getValues();
+                for (int dim = 0; dim < mNumObjectives; ++dim) {
+                    if (Math.abs(values[dim] - otherValues[dim]) > epsilon) {
+                        continue otherCheck;
+                    }
+                }
+
+                continue solutionCheck;
+            }
+
+            return false;
+        }
+
+        return true;
+    }
+
     /**
      * Creates a copy of this solution set.
      *
@@ -169,11 +227,15 @@ public class SolutionSet {
      */
     @Override
     public String toString() {
-        String str = "";
-        for (int i = 0; i < mSolutions.size(); ++i) {
-            str += (i != 0 ? "," : "") + mSolutions.get(i);
+        final List<Solution> solutions = getSolutions();
+        final StringBuilder str = new StringBuilder();
+        for (int i = 0; i < solutions.size(); ++i) {
+            if (i != 0) {
+                str.append(',');
+            }
+            str.append(solutions.get(i));
         }
-        return str;
+        return str.toString();
     }
 
 }
@@ -0,0 +1,408 @@
+package nl.uva.morlb.rg.experiment.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact encoding of solution sets for the messages between agents and experiments, as an alternative to the human
+ * readable {@link SolutionSet#toString()}. The values are sent as binary doubles, base64 encoded to pass the text
+ * channel of RL-Glue. The experiment asks for the solution set with the sequence number of the last message it
+ * received, after which the agent only sends the solutions that were removed and added since then. When the sequence
+ * numbers do not match, e.g. after the experiment restarted, the full solution set is sent instead.
+ *
+ * A message consists of the kind ({@link #FULL} or {@link #DELTA}), its sequence number, for deltas the sequence
+ * number it is based on, and the amount of objectives. A full message is followed by the amount of solutions and their
+ * values. A delta message is followed by the amount of removed solutions and their ascending positions in the base set,
+ * and then the amount of added solutions and their values. The set after a delta holds the remaining solutions of the
+ * base set in their original order followed by the added ones.
+ */
+public class SolutionSetCodec {
+
+    /** The message requesting an encoded solution set, optionally followed by a space and the base sequence number */
+    public static final String REQUEST = "getEncodedSolutionSet";
+
+    /** The kind of message holding the full solution set */
+    private static final byte FULL = 0;
+    /** The kind of message holding the changes relative to an earlier message */
+    private static final byte DELTA = 1;
+
+    /** The characters used by base64 */
+    private static final char[] BASE64_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .toCharArray();
+
+    /**
+     * Encodes the solution sets of an agent. Every experiment should be answered by its own encoder.
+     */
+    public static class Encoder {
+
+        /** The solutions as the experiment knows them after the last message */
+        private final List<Solution> mSent = new ArrayList<>();
+        /** The sequence number of the last message, or -1 if none was sent */
+        private int mSequence = -1;
+
+        /**
+         * Checks if a message is a request for an encoded solution set.
+         *
+         * @param message
+         *            The message
+         *
+         * @return True iff the message should be answered with {@link #encode(SolutionSet, String)}
+         */
+        public static boolean isRequest(final String message) {
+            return message.equals(REQUEST) || message.startsWith(REQUEST + " ");
+        }
+
+        /**
+         * Encodes a solution set in answer to a request. Only the changes are encoded if the request is based on the
+         * last message and that is smaller than encoding the full set.
+         *
+         * @param solutionSet
+         *            The current solution set
+         * @param request
+         *            The request of the experiment
+         *
+         * @return The encoded solution set
+         */
+        public String encode(final SolutionSet solutionSet, final String request) {
+            final int baseSequence = (request.length() > REQUEST.length() ? Integer.parseInt(request.substring(
+                    REQUEST.length() + 1).trim()) : -1);
+            final int numObjectives = solutionSet.getNumObjectives();
+            final List<Solution> solutions = solutionSet.getSolutions();
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                if (baseSequence == mSequence && mSequence != -1 && !mSent.isEmpty()
+                        && mSent.get(0).getNumObjectives() == numObjectives) {
+                    // Find the positions of the sent solutions that are gone and the solutions that are new
+                    final Set<Solution> current = new HashSet<>(solutions);
+                    final Set<Solution> sent = new HashSet<>(mSent);
+                    final List<Integer> removed = new ArrayList<>();
+                    for (int i = 0; i < mSent.size(); ++i) {
+                        if (!current.contains(mSent.get(i))) {
+                            removed.add(i);
+                        }
+                    }
+                    final List<Solution> added = new ArrayList<>();
+                    for (final Solution solution : solutions) {
+                        if (!sent.contains(solution)) {
+                            added.add(solution);
+                        }
+                    }
+
+                    final long deltaSize = 4L * removed.size() + 8L * numObjectives * added.size();
+                    if (deltaSize < 8L * numObjectives * solutions.size()) {
+                        out.writeByte(DELTA);
+                        out.writeInt(++mSequence);
+                        out.writeInt(baseSequence);
+                        out.writeInt(numObjectives);
+                        out.writeInt(removed.size());
+                        for (final int position : removed) {
+                            out.writeInt(position);
+                        }
+                        out.writeInt(added.size());
+                        writeSolutions(out, added);
+
+                        // Mirror the changes the experiment will apply
+                        for (int i = removed.size() - 1; i >= 0; --i) {
+                            mSent.remove((int) removed.get(i));
+                        }
+                        mSent.addAll(added);
+                        return encodeBase64(bytes.toByteArray());
+                    }
+                }
+
+                out.writeByte(FULL);
+                out.writeInt(++mSequence);
+                out.writeInt(numObjectives);
+                out.writeInt(solutions.size());
+                writeSolutions(out, solutions);
+            } catch (final IOException ex) {
+                // Writing to memory does not fail
+                throw new RuntimeException(ex);
+            }
+
+            mSent.clear();
+            mSent.addAll(solutions);
+            return encodeBase64(bytes.toByteArray());
+        }
+
+        /**
+         * Writes the values of solutions one after the other.
+         *
+         * @param out
+         *            The output to write to
+         * @param solutions
+         *            The solutions to write
+         *
+         * @throws IOException
+         *             When writing fails
+         */
+        private static void writeSolutions(final DataOutputStream out, final List<Solution> solutions)
+                throws IOException {
+            for (final Solution solution : solutions) {
+                for (final double value : solution.getValues()) {
+                    out.writeDouble(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the solution sets sent by an agent, keeping track of the changes between them.
+     */
+    public static class Decoder {
+
+        /** The solutions after the last message */
+        private final List<Solution> mSolutions = new ArrayList<>();
+        /** The amount of objectives of the solutions, or 0 if no message was received */
+        private int mNumObjectives = 0;
+        /** The sequence number of the last message, or -1 if none was received */
+        private int mSequence = -1;
+
+        /** The solutions added by the last message */
+        private List<Solution> mAdded = Collections.emptyList();
+        /** The solutions removed by the last message */
+        private List<Solution> mRemoved = Collections.emptyList();
+
+        /**
+         * @return The message to send to the agent to receive the next solution set
+         */
+        public String getRequest() {
+            return (mSequence == -1 ? REQUEST : REQUEST + " " + mSequence);
+        }
+
+        /**
+         * Decodes a message of the agent, updating the solution set and the changes.
+         *
+         * @param message
+         *            The encoded solution set
+         *
+         * @return True iff the solution set changed
+         */
+        public boolean decode(final String message) {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(decodeBase64(message)));
+            try {
+                final byte kind = in.readByte();
+                final int sequence = in.readInt();
+
+                if (kind == DELTA) {
+                    final int baseSequence = in.readInt();
+                    final int numObjectives = in.readInt();
+                    if (baseSequence != mSequence || numObjectives != mNumObjectives) {
+                        throw new InvalidParameterException("The changes are based on a different solution set");
+                    }
+
+                    // Remove from the back so that the positions of the others remain valid
+                    final int[] removed = new int[in.readInt()];
+                    for (int i = 0; i < removed.length; ++i) {
+                        removed[i] = in.readInt();
+                    }
+                    mRemoved = new ArrayList<>(removed.length);
+                    for (int i = removed.length - 1; i >= 0; --i) {
+                        mRemoved.add(mSolutions.remove(removed[i]));
+                    }
+                    Collections.reverse(mRemoved);
+
+                    mAdded = readSolutions(in, numObjectives, in.readInt());
+                    mSolutions.addAll(mAdded);
+
+                } else if (kind == FULL) {
+                    final int numObjectives = in.readInt();
+                    final List<Solution> solutions = readSolutions(in, numObjectives, in.readInt());
+
+                    // Determine the changes relative to the previous solution set
+                    final Map<Solution, Boolean> previous = new HashMap<>();
+                    for (final Solution solution : mSolutions) {
+                        previous.put(solution, Boolean.FALSE);
+                    }
+                    mAdded = new ArrayList<>();
+                    for (final Solution solution : solutions) {
+                        if (previous.containsKey(solution)) {
+                            previous.put(solution, Boolean.TRUE);
+                        } else {
+                            mAdded.add(solution);
+                        }
+                    }
+                    mRemoved = new ArrayList<>();
+                    for (final Solution solution : mSolutions) {
+                        if (!previous.get(solution)) {
+                            mRemoved.add(solution);
+                        }
+                    }
+
+                    mSolutions.clear();
+                    mSolutions.addAll(solutions);
+                    mNumObjectives = numObjectives;
+
+                } else {
+                    throw new InvalidParameterException("Unknown solution set message kind: " + kind);
+                }
+
+                mSequence = sequence;
+            } catch (final IOException ex) {
+                throw new InvalidParameterException("Malformed solution set message: " + ex.getMessage());
+            }
+
+            return !mAdded.isEmpty() || !mRemoved.isEmpty();
+        }
+
+        /**
+         * Reads the values of solutions stored one after the other.
+         *
+         * @param in
+         *            The input to read from
+         * @param numObjectives
+         *            The amount of values per solution
+         * @param numSolutions
+         *            The amount of solutions to read
+         *
+         * @return The solutions
+         *
+         * @throws IOException
+         *             When the input ends early
+         */
+        private static List<Solution> readSolutions(final DataInputStream in, final int numObjectives,
+                final int numSolutions) throws IOException {
+            final List<Solution> solutions = new ArrayList<>(numSolutions);
+            for (int i = 0; i < numSolutions; ++i) {
+                final double[] values = new double[numObjectives];
+                for (int dim = 0; dim < numObjectives; ++dim) {
+                    values[dim] = in.readDouble();
+                }
+                solutions.add(new Solution(values));
+            }
+            return solutions;
+        }
+
+        /**
+         * @return The current solution set
+         */
+        public SolutionSet getSolutionSet() {
+            final SolutionSet solutionSet = new SolutionSet(mNumObjectives);
+            for (final Solution solution : mSolutions) {
+                solutionSet.addSolution(solution);
+            }
+            return solutionSet;
+        }
+
+        /**
+         * @return The amount of solutions in the current solution set
+         */
+        public int getNumSolutions() {
+            return mSolutions.size();
+        }
+
+        /**
+         * @return The solutions added by the last message
+         */
+        public List<Solution> getAdded() {
+            return Collections.unmodifiableList(mAdded);
+        }
+
+        /**
+         * @return The solutions removed by the last message
+         */
+        public List<Solution> getRemoved() {
+            return Collections.unmodifiableList(mRemoved);
+        }
+    }
+
+    /**
+     * Encodes bytes as base64 text.
+     *
+     * @param bytes
+     *            The bytes to encode
+     *
+     * @return The base64 text, padded with '=' to a multiple of four characters
+     */
+    static String encodeBase64(final byte[] bytes) {
+        final StringBuilder text = new StringBuilder((bytes.length + 2) / 3 * 4);
+        for (int i = 0; i < bytes.length; i += 3) {
+            final int remaining = Math.min(3, bytes.length - i);
+            int group = (bytes[i] & 0xFF) << 16;
+            if (remaining > 1) {
+                group |= (bytes[i + 1] & 0xFF) << 8;
+            }
+            if (remaining > 2) {
+                group |= bytes[i + 2] & 0xFF;
+            }
+
+            text.append(BASE64_CHARACTERS[(group >> 18) & 0x3F]);
+            text.append(BASE64_CHARACTERS[(group >> 12) & 0x3F]);
+            text.append(remaining > 1 ? BASE64_CHARACTERS[(group >> 6) & 0x3F] : '=');
+            text.append(remaining > 2 ? BASE64_CHARACTERS[group & 0x3F] : '=');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Decodes base64 text to bytes.
+     *
+     * @param text
+     *            The base64 text, padded with '=' to a multiple of four characters
+     *
+     * @return The decoded bytes
+     */
+    static byte[] decodeBase64(final String text) {
+        if (text.length() % 4 != 0) {
+            throw new InvalidParameterException("Base64 text must consist of groups of four characters");
+        }
+
+        int padding = 0;
+        while (padding < 2 && padding < text.length() && text.charAt(text.length() - 1 - padding) == '=') {
+            ++padding;
+        }
+        final byte[] bytes = new byte[text.length() / 4 * 3 - padding];
+
+        int position = 0;
+        for (int i = 0; i < text.length(); i += 4) {
+            int group = 0;
+            for (int j = 0; j < 4; ++j) {
+                final char character = text.charAt(i + j);
+                group <<= 6;
+                if (character != '=') {
+                    group |= base64Value(character);
+                }
+            }
+
+            for (int shift = 16; shift >= 0 && position < bytes.length; shift -= 8) {
+                bytes[position++] = (byte) (group >> shift);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param character
+     *            A base64 character
+     *
+     * @return The six bits the character represents
+     */
+    private static int base64Value(final char character) {
+        if (character >= 'A' && character <= 'Z') {
+            return character - 'A';
+        } else if (character >= 'a' && character <= 'z') {
+            return character - 'a' + 26;
+        } else if (character >= '0' && character <= '9') {
+            return character - '0' + 52;
+        } else if (character == '+') {
+            return 62;
+        } else if (character == '/') {
+            return 63;
+        }
+        throw new InvalidParameterException("Invalid base64 character: " + character);
+    }
+
+}
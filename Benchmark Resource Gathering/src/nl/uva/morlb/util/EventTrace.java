@@ -0,0 +1,170 @@
+package nl.uva.morlb.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A trace of timed events during runs, modelled after flight recorder events: every event carries its start time,
+ * duration, thread and a few fields describing it. To be able to correlate the events with garbage collection, the
+ * total amount and duration of collections at the end of each event are included as well. Like the logging of
+ * {@link Log}, tracing is toggled by a constant so that the calls are empty when it is disabled.
+ */
+public class EventTrace {
+
+    /** Whether events should be traced */
+    public static final boolean T = false;
+
+    private static final String TRACE_FILE_NAME = "events "
+            + new SimpleDateFormat("yyyy-MM-dd HH-mm-ss").format(new Date()) + ".txt";
+    private static final long TRACE_START = System.nanoTime();
+    private static final List<GarbageCollectorMXBean> sCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private static PrintWriter sTraceOut;
+
+    /**
+     * Gets the start time of an event to pass when it is committed.
+     *
+     * @return The current time in nanoseconds, or 0 when tracing is disabled
+     */
+    public static long begin() {
+        return (T ? System.nanoTime() : 0);
+    }
+
+    /**
+     * Traces the start of an episode.
+     *
+     * @param episode
+     *            The index of the episode
+     */
+    public static void episodeStart(final int episode) {
+        if (T) {
+            final long time = System.nanoTime();
+            commit("EpisodeStart", time, time, "episode=" + episode);
+        }
+    }
+
+    /**
+     * Traces the end of an episode.
+     *
+     * @param startTime
+     *            The time at which the episode started
+     * @param episode
+     *            The index of the episode
+     * @param numSteps
+     *            The amount of steps performed in the episode
+     * @param episodeReturn
+     *            The return vector of the episode
+     */
+    public static void episodeEnd(final long startTime, final int episode, final int numSteps,
+            final double[] episodeReturn) {
+        if (T) {
+            commit("EpisodeEnd", startTime, System.nanoTime(), "episode=" + episode + " steps=" + numSteps
+                    + " return=" + Arrays.toString(episodeReturn).replace(" ", ""));
+        }
+    }
+
+    /**
+     * Traces the pruning of a solution set to its convex coverage set.
+     *
+     * @param startTime
+     *            The time at which the pruning started
+     * @param inputSize
+     *            The amount of solutions before pruning
+     * @param outputSize
+     *            The amount of solutions after pruning
+     */
+    public static void cprune(final long startTime, final int inputSize, final int outputSize) {
+        if (T) {
+            commit("CPrune", startTime, System.nanoTime(), "input=" + inputSize + " output=" + outputSize);
+        }
+    }
+
+    /**
+     * Traces the calculation of a hypervolume.
+     *
+     * @param startTime
+     *            The time at which the calculation started
+     * @param numSolutions
+     *            The amount of solutions in the evaluated set
+     * @param hypervolume
+     *            The resulting hypervolume
+     */
+    public static void hypervolume(final long startTime, final int numSolutions, final double hypervolume) {
+        if (T) {
+            commit("Hypervolume", startTime, System.nanoTime(), "solutions=" + numSolutions + " hypervolume="
+                    + hypervolume);
+        }
+    }
+
+    /**
+     * Traces the evaluation of all metrics for a solution set.
+     *
+     * @param startTime
+     *            The time at which the evaluation started
+     * @param episode
+     *            The episode after which the solution set was retrieved
+     * @param numSolutions
+     *            The amount of solutions in the evaluated set
+     */
+    public static void metricEvaluation(final long startTime, final int episode, final int numSolutions) {
+        if (T) {
+            commit("MetricEvaluation", startTime, System.nanoTime(), "episode=" + episode + " solutions="
+                    + numSolutions);
+        }
+    }
+
+    /**
+     * Writes an event to the trace file.
+     *
+     * @param name
+     *            The type of the event
+     * @param startTime
+     *            The time at which the event started in nanoseconds
+     * @param endTime
+     *            The time at which the event ended in nanoseconds
+     * @param fields
+     *            The fields describing the event
+     */
+    private static void commit(final String name, final long startTime, final long endTime, final String fields) {
+        long gcCount = 0;
+        long gcTime = 0;
+        for (final GarbageCollectorMXBean collector : sCollectors) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcTime += Math.max(0, collector.getCollectionTime());
+        }
+
+        final String event = String.format("%.3fms %s %s duration=%.3fms gcCount=%d gcTime=%dms %s",
+                (startTime - TRACE_START) / 1e6, Thread.currentThread().getName(), name,
+                (endTime - startTime) / 1e6, gcCount, gcTime, fields);
+
+        synchronized (EventTrace.class) {
+            try {
+                if (sTraceOut == null) {
+                    sTraceOut = new PrintWriter(new BufferedWriter(new FileWriter(new File(TRACE_FILE_NAME), true)));
+                    Runtime.getRuntime().addShutdownHook(new Thread() {
+                        @Override
+                        public void run() {
+                            synchronized (EventTrace.class) {
+                                sTraceOut.flush();
+                            }
+                        }
+                    });
+                }
+            } catch (final IOException ex) {
+                ex.printStackTrace();
+                return;
+            }
+
+            sTraceOut.println(event);
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package nl.uva.morlb.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds that can be recorded into from multiple threads without locking. Values are
+ * counted in logarithmic buckets that are each split into linear sub-buckets, which bounds the relative error of the
+ * reported percentiles regardless of the magnitude of the values.
+ */
+public class LatencyHistogram {
+
+    /** The amount of bits determining the sub-bucket, i.e. 16 sub-buckets per power of two */
+    private static final int SUB_BUCKET_BITS = 4;
+    /** The amount of sub-buckets per power of two */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** The amount of buckets needed to cover all non-negative long values */
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    /** The name of the measured operation */
+    private final String mName;
+    /** The amount of recorded values per bucket */
+    private final AtomicLongArray mCounts = new AtomicLongArray(NUM_BUCKETS);
+    /** The amount of recorded values */
+    private final AtomicLong mTotalCount = new AtomicLong();
+    /** The sum of the recorded values */
+    private final AtomicLong mTotalTime = new AtomicLong();
+    /** The largest recorded value */
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param name
+     *            The name of the measured operation
+     */
+    public LatencyHistogram(final String name) {
+        mName = name;
+    }
+
+    /**
+     * Records the time passed since a start time obtained from {@link Metrics#start()}. Does nothing when metrics are
+     * disabled.
+     *
+     * @param startTime
+     *            The start time in nanoseconds
+     */
+    public void stop(final long startTime) {
+        if (Metrics.M) {
+            record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos
+     *            The latency in nanoseconds
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        mCounts.incrementAndGet(getBucket(value));
+        mTotalCount.incrementAndGet();
+        mTotalTime.addAndGet(value);
+
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Determines the bucket of a value.
+     *
+     * @param value
+     *            The non-negative value
+     *
+     * @return The index of the bucket
+     */
+    private static int getBucket(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Determines the middle of the range of values counted in a bucket.
+     *
+     * @param bucket
+     *            The index of the bucket
+     *
+     * @return The representative value of the bucket
+     */
+    private static long getBucketValue(final int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+
+        final int exponent = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKET_COUNT;
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((1L << exponent) | (subBucket * width)) + width / 2;
+    }
+
+    /**
+     * Estimates the value below which the given fraction of the recorded values lie.
+     *
+     * @param percentile
+     *            The percentile in the range [0,100]
+     *
+     * @return The estimated value in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long totalCount = mTotalCount.get();
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+        long count = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; ++bucket) {
+            count += mCounts.get(bucket);
+            if (count >= target) {
+                return Math.min(getBucketValue(bucket), mMax.get());
+            }
+        }
+
+        return mMax.get();
+    }
+
+    /**
+     * @return The amount of recorded values
+     */
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * @return The mean of the recorded values in nanoseconds
+     */
+    public double getMean() {
+        final long totalCount = mTotalCount.get();
+        return (totalCount == 0 ? 0 : (double) mTotalTime.get() / totalCount);
+    }
+
+    /**
+     * @return The largest recorded value in nanoseconds
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently may be partially lost.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < NUM_BUCKETS; ++bucket) {
+            mCounts.set(bucket, 0);
+        }
+        mTotalCount.set(0);
+        mTotalTime.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Summarises the histogram with its count, mean and percentiles in microseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s count=%d mean=%.2fus p50=%.2fus p90=%.2fus p99=%.2fus max=%.2fus", mName,
+                getCount(), getMean() / 1000, getPercentile(50) / 1000.0, getPercentile(90) / 1000.0,
+                getPercentile(99) / 1000.0, getMax() / 1000.0);
+    }
+
+}
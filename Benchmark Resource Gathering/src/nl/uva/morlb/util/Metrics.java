@@ -0,0 +1,191 @@
+package nl.uva.morlb.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and counters for the hot paths of the agents and environment. Like the debug logging of
+ * {@link Log}, everything is toggled by a constant so that the measurements are reduced to empty calls that the JIT
+ * removes when disabled.
+ */
+public class Metrics {
+
+    /** Whether metrics should be recorded */
+    public static final boolean M = false;
+
+    /** The latency of environment steps */
+    public static final LatencyHistogram ENV_STEP = new LatencyHistogram("env_step");
+    /** The latency of agent steps */
+    public static final LatencyHistogram AGENT_STEP = new LatencyHistogram("agent_step");
+    /** The latency of convex hull pruning */
+    public static final LatencyHistogram CPRUNE = new LatencyHistogram("cprune");
+    /** The latency of hypervolume calculations */
+    public static final LatencyHistogram HYPERVOLUME = new LatencyHistogram("hypervolume");
+    /** The latency of MOMCTS tree walk steps */
+    public static final LatencyHistogram TREE_WALK = new LatencyHistogram("tree_walk");
+
+    /** The amount of episodes started */
+    public static final Counter EPISODES = new Counter("episodes");
+    /** The amount of environment steps performed */
+    public static final Counter STEPS = new Counter("steps");
+    /** The amount of MOMCTS tree nodes added */
+    public static final Counter TREE_NODES = new Counter("tree_nodes");
+    /** The amount of Q table entries added */
+    public static final Counter Q_TABLE_ENTRIES = new Counter("q_table_entries");
+
+    /** All histograms in the order they are reported */
+    private static final LatencyHistogram[] sHistograms = { ENV_STEP, AGENT_STEP, CPRUNE, HYPERVOLUME, TREE_WALK };
+    /** All counters in the order they are reported */
+    private static final Counter[] sCounters = { EPISODES, STEPS, TREE_NODES, Q_TABLE_ENTRIES };
+
+    /** The executor periodically writing snapshots, or null if none are written */
+    private static ScheduledExecutorService sDumpExecutor;
+    /** The file the snapshots are written to */
+    private static PrintWriter sDumpOut;
+
+    /**
+     * Gets the start time of a measurement to pass to {@link LatencyHistogram#stop(long)}.
+     *
+     * @return The current time in nanoseconds, or 0 when metrics are disabled
+     */
+    public static long start() {
+        return (M ? System.nanoTime() : 0);
+    }
+
+    /**
+     * Creates a textual snapshot of all histograms and counters.
+     *
+     * @return The snapshot
+     */
+    public static String snapshot() {
+        final StringBuilder snapshot = new StringBuilder();
+        snapshot.append("Metrics at ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+        for (final Counter counter : sCounters) {
+            snapshot.append('\n').append(counter);
+        }
+        for (final LatencyHistogram histogram : sHistograms) {
+            snapshot.append('\n').append(histogram);
+        }
+
+        return snapshot.toString();
+    }
+
+    /**
+     * Starts appending a snapshot to a file at a fixed interval. Does nothing when metrics are disabled.
+     *
+     * @param file
+     *            The file to append the snapshots to
+     * @param intervalMillis
+     *            The time between snapshots in milliseconds
+     */
+    public static synchronized void startDumping(final File file, final long intervalMillis) {
+        if (!M) {
+            return;
+        }
+
+        stopDumping();
+        try {
+            sDumpOut = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+        } catch (final IOException ex) {
+            Log.e("Could not open the metrics file " + file + ": " + ex.getMessage());
+            return;
+        }
+
+        sDumpExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "Metrics dump");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sDumpExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                dump();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic snapshots after writing a final one.
+     */
+    public static synchronized void stopDumping() {
+        if (sDumpExecutor == null) {
+            return;
+        }
+
+        sDumpExecutor.shutdownNow();
+        sDumpExecutor = null;
+        dump();
+        sDumpOut.close();
+        sDumpOut = null;
+    }
+
+    /**
+     * Appends a snapshot to the dump file.
+     */
+    private static synchronized void dump() {
+        if (sDumpOut != null) {
+            sDumpOut.println(snapshot());
+            sDumpOut.println();
+            sDumpOut.flush();
+        }
+    }
+
+    /**
+     * A count that can be increased from multiple threads without locking.
+     */
+    public static class Counter {
+
+        /** The name of the counted event */
+        private final String mName;
+        /** The current count */
+        private final AtomicLong mCount = new AtomicLong();
+
+        /**
+         * Creates a counter starting at zero.
+         *
+         * @param name
+         *            The name of the counted event
+         */
+        public Counter(final String name) {
+            mName = name;
+        }
+
+        /**
+         * Increases the count by one. Does nothing when metrics are disabled.
+         */
+        public void increment() {
+            if (M) {
+                mCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return The current count
+         */
+        public long get() {
+            return mCount.get();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return mName + " " + mCount.get();
+        }
+    }
+
+}
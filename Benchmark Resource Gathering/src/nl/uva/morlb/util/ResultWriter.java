@@ -0,0 +1,379 @@
+package nl.uva.morlb.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.InvalidParameterException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes the results of episodes asynchronously. Results are placed in a ring buffer and a writer thread appends them
+ * in batches to a CSV file and to a binary file, so that the thread running the episodes never waits for disk or
+ * console output unless the buffer is full. Both files are flushed whenever a batch of results has been collected or
+ * the flush interval has passed, whichever comes first.
+ *
+ * The binary file starts with a header holding {@link #BINARY_MAGIC}, the format version, the amount of metric columns
+ * followed by their names and the amount of return columns. Every batch is then stored as a block with the amount of
+ * results followed by each column in turn: the run ids and episodes as ints, then every metric and return as doubles.
+ */
+public class ResultWriter {
+
+    /** The number identifying the binary result format */
+    public static final int BINARY_MAGIC = 0x4D524C52;
+    /** The version of the binary result format */
+    public static final int BINARY_VERSION = 1;
+
+    /** The default amount of results the buffer can hold */
+    public static final int DEFAULT_CAPACITY = 4096;
+    /** The default amount of results after which the files are flushed */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    /** The default time in milliseconds after which buffered results are flushed */
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    /**
+     * The result of a single episode
+     */
+    private static class Result {
+
+        /** The run the episode belongs to */
+        public final int runId;
+        /** The episode */
+        public final int episode;
+        /** The value per metric column */
+        public final double[] metrics;
+        /** The value per return column */
+        public final double[] episodeReturn;
+
+        /**
+         * Creates a result.
+         *
+         * @param runId
+         *            The run the episode belongs to
+         * @param episode
+         *            The episode
+         * @param metrics
+         *            The value per metric column
+         * @param episodeReturn
+         *            The value per return column
+         */
+        public Result(final int runId, final int episode, final double[] metrics, final double[] episodeReturn) {
+            this.runId = runId;
+            this.episode = episode;
+            this.metrics = metrics;
+            this.episodeReturn = episodeReturn;
+        }
+    }
+
+    /** The names of the metric columns */
+    private final String[] mMetricNames;
+    /** The amount of return columns */
+    private final int mNumReturns;
+    /** Whether the results are printed to the console as well */
+    private final boolean mEcho;
+    /** The amount of results after which the files are flushed */
+    private final int mBatchSize;
+    /** The time in nanoseconds after which buffered results are flushed */
+    private final long mFlushInterval;
+
+    /** The CSV output */
+    private final PrintWriter mCsvOut;
+    /** The binary output */
+    private final DataOutputStream mBinaryOut;
+
+    /** The ring buffer of results waiting to be written */
+    private final Result[] mBuffer;
+    /** The position of the oldest result in the buffer */
+    private int mHead = 0;
+    /** The amount of results in the buffer */
+    private int mSize = 0;
+    /** Whether no more results will be added */
+    private boolean mClosed = false;
+    /** The lock guarding the buffer */
+    private final ReentrantLock mLock = new ReentrantLock();
+    /** Signalled when a batch of results is ready or the writer is closed */
+    private final Condition mBatchReady = mLock.newCondition();
+    /** Signalled when results have been taken from the buffer */
+    private final Condition mNotFull = mLock.newCondition();
+
+    /** The thread writing the results */
+    private final Thread mThread;
+    /** The first failure to write, or null if there was none */
+    private volatile IOException mFailure = null;
+
+    /**
+     * Creates a writer with the default buffer size and flush settings.
+     *
+     * @param fileName
+     *            The name of the files without extension, to which .csv and .bin are appended
+     * @param metricNames
+     *            The names of the metric columns
+     * @param numReturns
+     *            The amount of return columns
+     * @param echo
+     *            Whether the results should be printed to the console as well
+     *
+     * @throws IOException
+     *             When the files could not be created
+     */
+    public ResultWriter(final String fileName, final String[] metricNames, final int numReturns, final boolean echo)
+            throws IOException {
+        this(fileName, metricNames, numReturns, echo, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Creates a writer and starts its thread.
+     *
+     * @param fileName
+     *            The name of the files without extension, to which .csv and .bin are appended
+     * @param metricNames
+     *            The names of the metric columns
+     * @param numReturns
+     *            The amount of return columns
+     * @param echo
+     *            Whether the results should be printed to the console as well
+     * @param capacity
+     *            The amount of results the buffer can hold before adding results blocks
+     * @param batchSize
+     *            The amount of results after which the files are flushed
+     * @param flushInterval
+     *            The time in milliseconds after which buffered results are flushed
+     *
+     * @throws IOException
+     *             When the files could not be created
+     */
+    public ResultWriter(final String fileName, final String[] metricNames, final int numReturns, final boolean echo,
+            final int capacity, final int batchSize, final long flushInterval) throws IOException {
+        if (capacity < 1 || batchSize < 1 || batchSize > capacity || flushInterval < 1) {
+            throw new InvalidParameterException("The batch size must be positive and fit in the buffer");
+        }
+
+        mMetricNames = metricNames.clone();
+        mNumReturns = numReturns;
+        mEcho = echo;
+        mBatchSize = batchSize;
+        mFlushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        mBuffer = new Result[capacity];
+
+        mCsvOut = new PrintWriter(new BufferedWriter(new FileWriter(fileName + ".csv")));
+        mBinaryOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName + ".bin")));
+        writeHeaders();
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeResults();
+            }
+        }, "Result writer");
+        mThread.start();
+    }
+
+    /**
+     * Writes the column names to the CSV file and the header to the binary file.
+     *
+     * @throws IOException
+     *             When the binary file could not be written
+     */
+    private void writeHeaders() throws IOException {
+        final StringBuilder header = new StringBuilder("run,episode");
+        for (final String metricName : mMetricNames) {
+            header.append(',').append(metricName);
+        }
+        for (int i = 0; i < mNumReturns; ++i) {
+            header.append(",return").append(i);
+        }
+        mCsvOut.println(header);
+
+        mBinaryOut.writeInt(BINARY_MAGIC);
+        mBinaryOut.writeInt(BINARY_VERSION);
+        mBinaryOut.writeInt(mMetricNames.length);
+        for (final String metricName : mMetricNames) {
+            mBinaryOut.writeUTF(metricName);
+        }
+        mBinaryOut.writeInt(mNumReturns);
+    }
+
+    /**
+     * Adds the result of an episode to be written. Blocks only while the buffer is full.
+     *
+     * @param runId
+     *            The run the episode belongs to
+     * @param episode
+     *            The episode
+     * @param metrics
+     *            The value per metric column, which may not be modified afterwards
+     * @param episodeReturn
+     *            The value per return column, which may not be modified afterwards
+     */
+    public void write(final int runId, final int episode, final double[] metrics, final double[] episodeReturn) {
+        if (metrics.length != mMetricNames.length || episodeReturn.length != mNumReturns) {
+            throw new InvalidParameterException("The result must have a value for every column");
+        }
+        checkFailure();
+
+        mLock.lock();
+        try {
+            if (mClosed) {
+                throw new IllegalStateException("The result writer has been closed");
+            }
+            while (mSize == mBuffer.length) {
+                mNotFull.await();
+            }
+
+            mBuffer[(mHead + mSize) % mBuffer.length] = new Result(runId, episode, metrics, episodeReturn);
+            ++mSize;
+            if (mSize >= mBatchSize) {
+                mBatchReady.signal();
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all remaining results, closes the files and stops the writer thread.
+     *
+     * @throws IOException
+     *             When results could not be written
+     */
+    public void close() throws IOException {
+        mLock.lock();
+        try {
+            mClosed = true;
+            mBatchReady.signal();
+        } finally {
+            mLock.unlock();
+        }
+
+        try {
+            mThread.join();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+
+        mCsvOut.close();
+        mBinaryOut.close();
+        if (mFailure != null) {
+            throw mFailure;
+        }
+    }
+
+    /**
+     * Takes batches of results from the buffer and writes them until the writer is closed.
+     */
+    private void writeResults() {
+        long flushDeadline = System.nanoTime() + mFlushInterval;
+        while (true) {
+            final Result[] batch;
+            final boolean closed;
+
+            mLock.lock();
+            try {
+                // Wait until a batch is ready, the flush interval has passed or the writer is closed
+                long remaining = flushDeadline - System.nanoTime();
+                while (mSize < mBatchSize && !mClosed && remaining > 0) {
+                    remaining = mBatchReady.awaitNanos(remaining);
+                }
+
+                batch = new Result[mSize];
+                for (int i = 0; i < batch.length; ++i) {
+                    batch[i] = mBuffer[(mHead + i) % mBuffer.length];
+                    mBuffer[(mHead + i) % mBuffer.length] = null;
+                }
+                mHead = (mHead + batch.length) % mBuffer.length;
+                mSize = 0;
+                closed = mClosed;
+                mNotFull.signalAll();
+            } catch (final InterruptedException ex) {
+                mFailure = new IOException("The result writer was interrupted", ex);
+                return;
+            } finally {
+                mLock.unlock();
+            }
+
+            if (batch.length > 0 && mFailure == null) {
+                try {
+                    writeBatch(batch);
+                } catch (final IOException ex) {
+                    mFailure = ex;
+                }
+            }
+            flushDeadline = System.nanoTime() + mFlushInterval;
+
+            if (closed) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of results to both files and flushes them.
+     *
+     * @param batch
+     *            The results to write
+     *
+     * @throws IOException
+     *             When the binary file could not be written
+     */
+    private void writeBatch(final Result[] batch) throws IOException {
+        final StringBuilder lines = new StringBuilder();
+        for (final Result result : batch) {
+            lines.append(result.runId).append(',').append(result.episode);
+            for (final double metric : result.metrics) {
+                lines.append(',').append(metric);
+            }
+            for (final double value : result.episodeReturn) {
+                lines.append(',').append(value);
+            }
+            lines.append('\n');
+        }
+        mCsvOut.write(lines.toString());
+        mCsvOut.flush();
+        if (mCsvOut.checkError()) {
+            throw new IOException("Writing the CSV results failed");
+        }
+        if (mEcho) {
+            System.out.print(lines);
+        }
+
+        // The binary block stores the results column by column
+        mBinaryOut.writeInt(batch.length);
+        for (final Result result : batch) {
+            mBinaryOut.writeInt(result.runId);
+        }
+        for (final Result result : batch) {
+            mBinaryOut.writeInt(result.episode);
+        }
+        for (int column = 0; column < mMetricNames.length; ++column) {
+            for (final Result result : batch) {
+                mBinaryOut.writeDouble(result.metrics[column]);
+            }
+        }
+        for (int column = 0; column < mNumReturns; ++column) {
+            for (final Result result : batch) {
+                mBinaryOut.writeDouble(result.episodeReturn[column]);
+            }
+        }
+        mBinaryOut.flush();
+    }
+
+    /**
+     * Rethrows a failure of the writer thread on the calling thread.
+     */
+    private void checkFailure() {
+        final IOException failure = mFailure;
+        if (failure != null) {
+            throw new RuntimeException("Writing the results failed", failure);
+        }
+    }
+
+}